@@ -45,6 +45,10 @@ const int daylightOffset_sec = 0;
 //-- Settings ---------------------------------------------------------------------
 
 bool cameraSettingsChanged = true;
+// version of the last settings received - sent back, so that the server omits unchanged settings
+uint32_t settingsVersion = 0;
+// delay until the next image - from the workflow settings or adjusted by the server to spread the uploads or to back off
+int delayMs = 20000;
 
 JsonDocument settings;
 JsonDocument workflowSettings;
@@ -87,6 +91,8 @@ void setup() {
   Serial.begin(115200);
   pinMode(BOARD_LED, OUTPUT);
   pinMode(FLASH_GPIO_NUM, OUTPUT);
+  workflowSettings["pause"] = false;
+  workflowSettings["delayMs"] = 20000;
   
   initWiFi();
   blinkLedOk();
@@ -95,9 +101,8 @@ void setup() {
 }
 
 void loop() {
+  // pause is kept from the last received workflow settings
   workflowSettings["restart"] = false;
-  workflowSettings["pause"] = false;
-  workflowSettings["delayMs"] = 20000;
   uploadStatus();
 
   if (cameraSettingsChanged) {
@@ -117,7 +122,7 @@ void loop() {
   if (!workflowSettings["pause"]) {
     shootAndSend();
   }
-  delay(workflowSettings["delayMs"]);
+  delay(delayMs);
 }
 
 void shootAndSend() {
@@ -176,11 +181,19 @@ void sendPhotoViaHttp(camera_fb_t* frameBuffer, char* timeLabel) {
   HTTPClient http;
   http.begin(urlBuffer);
   http.addHeader("Content-Type", MIME_TYPE_JPEG);
+  if (settingsVersion > 0) {
+    http.addHeader("X-Settings-Version", String(settingsVersion));
+  }
   int httpResponseCode = http.POST(frameBuffer->buf, frameBuffer->len);
   JsonDocument jsonResponse;
   if (httpResponseCode == 200) {
     parseAndStoreSettings(http.getString());
     blinkLedOk();
+  } else if (httpResponseCode == 429) {
+    // server overloaded - the reply contains the delay to back off
+    uploadImageErrors++;
+    parseAndStoreSettings(http.getString());
+    blinkLedError();
   } else {
     uploadImageErrors++;
     Serial.printf(">>> HTTP Response code = %d\n", httpResponseCode);
@@ -200,6 +213,9 @@ void uploadStatus() {
   data["cameraInitErrors"] = cameraInitErrors;
   data["uploadImageErrors"] = uploadImageErrors;
   data["uploadStatusErrors"] = uploadStatusErrors;
+  if (settingsVersion > 0) {
+    data["settingsVersion"] = settingsVersion;
+  }
   char jsonCharBuffer[256];
   serializeJson(data, jsonCharBuffer);
   Serial.printf(">>> PUT URL = \"%s\" %s\n", TARGET_URL_STATUS, jsonCharBuffer);
@@ -223,11 +239,23 @@ void parseAndStoreSettings(String jsonString) {
     //S Serial.print(">>> settings = ");
     //S Serial.println(jsonString);
     settings = parseJson(jsonString);
-    workflowSettings = settings["workflow"];
-    flashLedForPicture = workflowSettings["flashLedForPicture"];
-    flashDurationMs = workflowSettings["flashDurationMs"];
-    blinkOnSuccess = workflowSettings["blinkOnSuccess"];
-    blinkOnFailure = workflowSettings["blinkOnFailure"];
+    if (settings["version"]) {
+      settingsVersion = settings["version"];
+    }
+    // the workflow settings are only sent, when they are not the ones of our version
+    if (settings["workflow"]) {
+      workflowSettings = settings["workflow"];
+      flashLedForPicture = workflowSettings["flashLedForPicture"];
+      flashDurationMs = workflowSettings["flashDurationMs"];
+      blinkOnSuccess = workflowSettings["blinkOnSuccess"];
+      blinkOnFailure = workflowSettings["blinkOnFailure"];
+    }
+    // without an adjusted delay, the camera returns to its normal cadence
+    if (settings["delayMs"].is<int>()) {
+      delayMs = settings["delayMs"];
+    } else {
+      delayMs = workflowSettings["delayMs"];
+    }
     if (settings["camera"]) {
       cameraSettingsChanged = true;
       cameraSettings = settings["camera"];
@@ -6,7 +6,7 @@ import com.giraone.camera.service.model.FileInfo;
 import com.giraone.camera.service.model.FileInfoQuery;
 import com.giraone.camera.service.model.Status;
 import com.giraone.camera.service.model.timelapse.TimelapseCommand;
-import com.giraone.camera.service.model.timelapse.TimelapseResult;
+import com.giraone.camera.service.model.timelapse.TimelapseJob;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpHeaders;
@@ -28,6 +28,7 @@ public class FileViewService {
 
     private static final Duration DURATION_WAIT_SINGLE = Duration.ofSeconds(20);
     private static final Duration DURATION_WAIT_LIST = Duration.ofSeconds(60);
+    private static final String X_HEADER_ERROR = "X-Files-Error";
 
     private static final Logger LOGGER = LoggerFactory.getLogger(FileViewService.class);
 
@@ -156,10 +157,18 @@ public class FileViewService {
         selectedItems.forEach(this::deleteVideo);
     }
 
-    public Mono<TimelapseResult> makeTimelapseVideo(TimelapseCommand timelapseCommand) {
-        return webClient().post().uri("/video/create-timelapse")
+    public Mono<TimelapseJob> makeTimelapseVideo(TimelapseCommand timelapseCommand) {
+        return webClient().post().uri("/video/timelapse-jobs")
             .body(BodyInserters.fromValue(timelapseCommand))
-            .exchangeToMono(clientResponse -> clientResponse.bodyToMono(TimelapseResult.class));
+            .exchangeToMono(clientResponse -> clientResponse.statusCode().is2xxSuccessful()
+                ? clientResponse.bodyToMono(TimelapseJob.class)
+                : clientResponse.releaseBody().then(Mono.<TimelapseJob>error(new IllegalStateException(
+                clientResponse.headers().asHttpHeaders().getFirst(X_HEADER_ERROR)))));
+    }
+
+    public Mono<TimelapseJob> getTimelapseJob(String jobId) {
+        return webClient().get().uri("/video/timelapse-jobs/{jobId}", jobId)
+            .exchangeToMono(clientResponse -> clientResponse.bodyToMono(TimelapseJob.class));
     }
 
     public Mono<String> downloadSelectedImages(List<String> imageNames) {
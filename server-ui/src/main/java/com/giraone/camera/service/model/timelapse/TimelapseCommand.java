@@ -5,5 +5,11 @@ import java.util.List;
 public record TimelapseCommand(String outputFilename,
                                List<String> inputFileNames,
                                /** Modulo select of images. 1 = Use every images, 2 = use every second image. **/ int select,
-                               /** Frame rate (10-30) **/ int frameRate) {
+                               /** Frame rate (10-30) **/ int frameRate,
+                               /** One image per this number of minutes of capture time, 0 = not used. **/ int minutesPerFrame,
+                               /** Evenly distributed images up to this number, 0 = not used. **/ int targetFrames) {
+
+    public TimelapseCommand(String outputFilename, List<String> inputFileNames, int select, int frameRate) {
+        this(outputFilename, inputFileNames, select, frameRate, 0, 0);
+    }
 }
@@ -0,0 +1,8 @@
+package com.giraone.camera.service.model.timelapse;
+
+import java.time.LocalDateTime;
+
+public record TimelapseJob(String id, TimelapseJobState state, String outputFilename, int frames, int framesEncoded,
+                           int progressPercent, LocalDateTime created, LocalDateTime started, LocalDateTime finished,
+                           String error) {
+}
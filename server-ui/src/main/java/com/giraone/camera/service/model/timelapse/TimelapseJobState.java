@@ -0,0 +1,9 @@
+package com.giraone.camera.service.model.timelapse;
+
+public enum TimelapseJobState {
+    QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED;
+
+    public boolean isFinished() {
+        return this == SUCCEEDED || this == FAILED || this == CANCELLED;
+    }
+}
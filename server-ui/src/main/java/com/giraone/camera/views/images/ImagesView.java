@@ -5,7 +5,8 @@ import com.giraone.camera.service.FileViewService;
 import com.giraone.camera.service.model.FileInfo;
 import com.giraone.camera.service.model.Status;
 import com.giraone.camera.service.model.timelapse.TimelapseCommand;
-import com.giraone.camera.service.model.timelapse.TimelapseResult;
+import com.giraone.camera.service.model.timelapse.TimelapseJob;
+import com.giraone.camera.service.model.timelapse.TimelapseJobState;
 import com.giraone.camera.views.MainLayout;
 import com.giraone.camera.views.components.GridFileInfo;
 import com.giraone.camera.views.components.TextPromptDialog;
@@ -29,6 +30,7 @@ import com.vaadin.flow.component.textfield.TextField;
 import com.vaadin.flow.data.value.ValueChangeMode;
 import com.vaadin.flow.router.PageTitle;
 import com.vaadin.flow.router.Route;
+import com.vaadin.flow.shared.Registration;
 import com.vaadin.flow.spring.annotation.SpringComponent;
 import jakarta.annotation.security.PermitAll;
 import org.slf4j.Logger;
@@ -50,6 +52,9 @@ public class ImagesView extends VerticalLayout {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ImagesView.class);
 
+    private static final Duration DURATION_WAIT_JOB = Duration.ofSeconds(10);
+    private static final int POLL_INTERVAL_MS = 2000;
+
     private final GridFileInfo gridFileInfo;
     private final TextField filterText = new TextField();
     private VerticalLayout gridWithToolbar;
@@ -67,6 +72,7 @@ public class ImagesView extends VerticalLayout {
 
     private FileInfo currentItem = null;
     private boolean firstDisplay = true;
+    private int activeTimelapsePolls = 0;
 
     public ImagesView(FileViewService fileViewService, ApplicationProperties applicationProperties) {
 
@@ -360,10 +366,10 @@ public class ImagesView extends VerticalLayout {
         String outputVideoName = names.get(0).replace(".jpg", ".mp4");
         TimelapseCommand timelapseCommand = new TimelapseCommand(outputVideoName, names, 1, 10);
         try {
-            TimelapseResult result = fileViewService.makeTimelapseVideo(timelapseCommand).block(Duration.ofSeconds(120));
-            if (result != null) {
-                Notification notification = Notification.show(result.toString());
-                notification.addThemeVariants(NotificationVariant.LUMO_PRIMARY);
+            TimelapseJob job = fileViewService.makeTimelapseVideo(timelapseCommand).block(DURATION_WAIT_JOB);
+            if (job != null) {
+                Notification.show("Creating video \"" + job.outputFilename() + "\" ...");
+                pollTimelapseJob(job.id());
             } else {
                 showError("Timeout for makeTimelapseVideo!");
             }
@@ -373,6 +379,42 @@ public class ImagesView extends VerticalLayout {
         }
     }
 
+    // The video is created in the background - its job is polled, until it is finished.
+    private void pollTimelapseJob(String jobId) {
+        final UI ui = UI.getCurrent();
+        final Registration[] registration = new Registration[1];
+        activeTimelapsePolls++;
+        ui.setPollInterval(POLL_INTERVAL_MS);
+        registration[0] = ui.addPollListener(event -> {
+            final TimelapseJob job = fetchTimelapseJob(jobId);
+            if (job != null && !job.state().isFinished()) {
+                return;
+            }
+            registration[0].remove();
+            if (--activeTimelapsePolls == 0) {
+                ui.setPollInterval(-1);
+            }
+            if (job == null) {
+                showError("Timelapse job " + jobId + " not found!");
+            } else if (job.state() == TimelapseJobState.SUCCEEDED) {
+                Notification notification = Notification.show("Video \"" + job.outputFilename() + "\" created.");
+                notification.addThemeVariants(NotificationVariant.LUMO_SUCCESS);
+            } else {
+                showError("Video \"" + job.outputFilename() + "\" " + job.state()
+                    + (job.error() != null ? ": " + job.error() : ""));
+            }
+        });
+    }
+
+    private TimelapseJob fetchTimelapseJob(String jobId) {
+        try {
+            return fileViewService.getTimelapseJob(jobId).block(DURATION_WAIT_JOB);
+        } catch (Exception e) {
+            LOGGER.warn("fetchTimelapseJob {} failed!", jobId, e);
+            return null;
+        }
+    }
+
     private void showError(String text) {
         Notification notification = new Notification();
         notification.addThemeVariants(NotificationVariant.LUMO_ERROR);
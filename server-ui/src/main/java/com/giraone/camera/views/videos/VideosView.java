@@ -35,6 +35,7 @@ import org.springframework.context.annotation.Scope;
 import org.vaadin.lineawesome.LineAwesomeIcon;
 
 import java.time.Duration;
+import java.time.ZoneOffset;
 import java.util.List;
 import java.util.Set;
 import java.util.function.Supplier;
@@ -233,20 +234,31 @@ public class VideosView extends VerticalLayout {
     private void displayFile(FileInfo fileInfo) {
         currentItem = fileInfo;
         String url = applicationProperties.getHostUrl() + "/videos/" + fileInfo.fileName();
-        openFileViewer(url, fileInfo.fileName() + "  (" + fileInfo.infos() + ", " + fileInfo.sizeInBytes() + " Bytes)");
+        openFileViewer(url, fileInfo.fileName() + "  (" + fileInfo.infos() + ", " + fileInfo.sizeInBytes() + " Bytes)",
+            buildStoryboardUrl(fileInfo));
     }
 
-    private void openFileViewer(String url, String label) {
+    private void openFileViewer(String url, String label, String storyboardUrl) {
         displayForm.setVisible(true);
         if (firstDisplay) {
             // for some reason on the first image, we have to wait a little before we can load the image
-            UI.getCurrent().getPage().executeJs("setTimeout(loadVideo,500,$0,$1)", url, label);
+            UI.getCurrent().getPage().executeJs("setTimeout(loadVideo,500,$0,$1,$2)", url, label, storyboardUrl);
             firstDisplay = false;
         } else {
-            UI.getCurrent().getPage().executeJs("loadVideo($0,$1)", url, label);
+            UI.getCurrent().getPage().executeJs("loadVideo($0,$1,$2)", url, label, storyboardUrl);
         }
     }
 
+    // The storyboard index for the hover previews. The version parameter bypasses the browser cache, when a video,
+    // e.g. a daily timelapse, was written again.
+    private String buildStoryboardUrl(FileInfo fileInfo) {
+        final String fileName = fileInfo.fileName();
+        final int lastDotIndex = fileName.lastIndexOf('.');
+        final String baseName = lastDotIndex > 0 ? fileName.substring(0, lastDotIndex) : fileName;
+        return applicationProperties.getHostUrl() + "/video-storyboards/" + baseName + ".json?v="
+            + fileInfo.lastModified().toEpochSecond(ZoneOffset.UTC);
+    }
+
     private void viewPreviousFile() {
         final int size = gridFileInfo.getItemsSize();
         if (size == 0) {
@@ -1,6 +1,6 @@
 function loadImage(url, text) {
   document.getElementById('imageViewerIFrame').contentWindow.loadUrl(url, text);
 }
-function loadVideo(url, text) {
-  document.getElementById('videoViewerIFrame').contentWindow.loadUrl(url, text);
+function loadVideo(url, text, storyboardUrl) {
+  document.getElementById('videoViewerIFrame').contentWindow.loadUrl(url, text, storyboardUrl);
 }
\ No newline at end of file
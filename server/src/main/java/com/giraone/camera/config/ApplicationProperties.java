@@ -18,6 +18,132 @@ public class ApplicationProperties {
      * If true, generate thumbnails for uploaded images.
      */
     private boolean generateThumbnails;
+    /**
+     * If true, watch the storage directories for changes made outside the service and update the file index.
+     */
+    private boolean watchStorage = true;
+    /**
+     * Directory layout of the images: FLAT stores all images in one directory, CAMERA_DAY in one directory per camera
+     * and day ({@code IMAGES/<camera>/<yyyy-MM-dd>/}). After a change, the existing images are moved in the background.
+     */
+    private ImagesLayout imagesLayout = ImagesLayout.FLAT;
+    /**
+     * Number of threads creating thumbnails in the background.
+     */
+    private int thumbnailWorkers = 2;
+    /**
+     * Maximum number of thumbnail requests waiting for a worker. Further requests are dropped.
+     */
+    private int thumbnailQueueCapacity = 1000;
+    /**
+     * Number of threads creating thumbnails during a rebuild. 0 uses one thread per available processor.
+     */
+    private int thumbnailRebuildWorkers = 0;
+    /**
+     * How image thumbnails are created: SUBSAMPLING decodes the image at a reduced resolution, IMAGING_KIT uses the
+     * full decode of the imaging-kit provider.
+     */
+    private ThumbnailEngine thumbnailEngine = ThumbnailEngine.SUBSAMPLING;
+    /**
+     * How video thumbnails are created: KEYFRAME decodes only the key frame at {@link #videoThumbnailPosition} and lets
+     * ffmpeg write the JPEG, FILTER analyses the first frames with the ffmpeg thumbnail filter. KEYFRAME needs MP4
+     * videos - other videos always use FILTER.
+     */
+    private VideoThumbnailMode videoThumbnailMode = VideoThumbnailMode.KEYFRAME;
+    /**
+     * Position of the key frame used as video thumbnail as a fraction of the duration: 0.0 = start, 1.0 = end.
+     */
+    private double videoThumbnailPosition = 0.1;
+    /**
+     * Number of frames in the storyboard sprite of a video, that is used for scrub previews. 0 = no storyboards.
+     */
+    private int storyboardTiles = 25;
+    /**
+     * Cache-Control max-age for downloaded images, videos and thumbnails. They do not change after they are written.
+     */
+    private long cacheMaxAgeSeconds = 2592000L;
+    /**
+     * Number of files read ahead, while a ZIP download or an AVI export is streamed.
+     */
+    private int zipReadAheadFiles = 4;
+    /**
+     * If true, downloads are read into pooled direct buffers, which are released after they are written.
+     * If false, a new heap buffer is allocated for each chunk.
+     */
+    private boolean readBuffersPooled = true;
+    /**
+     * If true, the read chunk size is adapted to the file size - small files are read at once, large files in larger
+     * chunks. If false, all files are read in chunks of 64 KB.
+     */
+    private boolean readChunkAdaptive = true;
+    /**
+     * Number of chunks, that are read in parallel or buffered ahead, while a file is streamed. 1 reads one chunk at a
+     * time. Memory per download is up to this number times the chunk size.
+     */
+    private int readAheadChunks = 4;
+    /**
+     * If true, full downloads of images and videos are sent with zero-copy (sendfile), when the server supports it.
+     * Range requests are always streamed from the read buffers.
+     */
+    private boolean zeroCopyDownloads = true;
+    /**
+     * Maximum number of timelapse videos encoded at the same time - each one is a CPU intensive ffmpeg process.
+     */
+    private int timelapseMaxConcurrentJobs = 1;
+    /**
+     * Maximum number of timelapse jobs waiting for encoding. Further jobs are rejected.
+     */
+    private int timelapseMaxQueuedJobs = 20;
+    /**
+     * Number of finished timelapse jobs, whose state is kept for polling.
+     */
+    private int timelapseJobHistory = 100;
+    /**
+     * Maximum run time of a timelapse job in minutes. The ffmpeg processes of a job, that runs longer, are killed and
+     * the job fails. 0 means no limit.
+     */
+    private int timelapseJobTimeoutMinutes = 60;
+    /**
+     * Number of ffmpeg processes, that encode the segments of one timelapse video in parallel. The segments are joined
+     * without re-encoding. 1 encodes the whole video in one process, 0 uses the number of CPUs.
+     */
+    private int timelapseSegmentParallelism = 1;
+    /**
+     * Minimum number of frames of a segment - shorter videos are encoded with fewer or without segments.
+     */
+    private int timelapseSegmentMinFrames = 500;
+    /**
+     * The libx264 preset (ultrafast ... veryslow) for timelapse videos.
+     */
+    private String timelapsePreset = "medium";
+    /**
+     * The libx264 constant rate factor (0-51, lower is better quality) for timelapse videos.
+     */
+    private int timelapseCrf = 23;
+    /**
+     * Frame rate of the incremental daily timelapse videos.
+     */
+    private int dailyTimelapseFrameRate = 10;
+    /**
+     * Number of days, for which the encoded segments of a daily timelapse are kept, so that late images can still be
+     * appended. The published videos are not deleted.
+     */
+    private int dailyTimelapseSegmentRetentionDays = 7;
+    /**
+     * If true, the delay sent to a camera after an image upload is adjusted, so that the uploads of all cameras are
+     * spread evenly over their period instead of arriving at the same time.
+     */
+    private boolean uploadStaggering = true;
+    /**
+     * Maximum number of image uploads, whose content is stored at the same time. Cameras are slowed down from half of
+     * it and further uploads are rejected with 429. 0 = no limit.
+     */
+    private int uploadMaxInFlight = 64;
+    /**
+     * Minimum free space of the storage in MB. Cameras are slowed down below twice of it and uploads are rejected
+     * with 429 below it. 0 = no limit.
+     */
+    private int uploadMinFreeDiskMb = 1024;
 
     public boolean isShowConfigOnStartup() {
         return showConfigOnStartup;
@@ -35,11 +161,263 @@ public class ApplicationProperties {
         this.generateThumbnails = generateThumbnails;
     }
 
+    public boolean isWatchStorage() {
+        return watchStorage;
+    }
+
+    public void setWatchStorage(boolean watchStorage) {
+        this.watchStorage = watchStorage;
+    }
+
+    public ImagesLayout getImagesLayout() {
+        return imagesLayout;
+    }
+
+    public void setImagesLayout(ImagesLayout imagesLayout) {
+        this.imagesLayout = imagesLayout;
+    }
+
+    public int getThumbnailWorkers() {
+        return thumbnailWorkers;
+    }
+
+    public void setThumbnailWorkers(int thumbnailWorkers) {
+        this.thumbnailWorkers = thumbnailWorkers;
+    }
+
+    public int getThumbnailQueueCapacity() {
+        return thumbnailQueueCapacity;
+    }
+
+    public void setThumbnailQueueCapacity(int thumbnailQueueCapacity) {
+        this.thumbnailQueueCapacity = thumbnailQueueCapacity;
+    }
+
+    public int getThumbnailRebuildWorkers() {
+        return thumbnailRebuildWorkers;
+    }
+
+    public void setThumbnailRebuildWorkers(int thumbnailRebuildWorkers) {
+        this.thumbnailRebuildWorkers = thumbnailRebuildWorkers;
+    }
+
+    public ThumbnailEngine getThumbnailEngine() {
+        return thumbnailEngine;
+    }
+
+    public void setThumbnailEngine(ThumbnailEngine thumbnailEngine) {
+        this.thumbnailEngine = thumbnailEngine;
+    }
+
+    public VideoThumbnailMode getVideoThumbnailMode() {
+        return videoThumbnailMode;
+    }
+
+    public void setVideoThumbnailMode(VideoThumbnailMode videoThumbnailMode) {
+        this.videoThumbnailMode = videoThumbnailMode;
+    }
+
+    public double getVideoThumbnailPosition() {
+        return videoThumbnailPosition;
+    }
+
+    public void setVideoThumbnailPosition(double videoThumbnailPosition) {
+        this.videoThumbnailPosition = videoThumbnailPosition;
+    }
+
+    public int getStoryboardTiles() {
+        return storyboardTiles;
+    }
+
+    public void setStoryboardTiles(int storyboardTiles) {
+        this.storyboardTiles = storyboardTiles;
+    }
+
+    public long getCacheMaxAgeSeconds() {
+        return cacheMaxAgeSeconds;
+    }
+
+    public void setCacheMaxAgeSeconds(long cacheMaxAgeSeconds) {
+        this.cacheMaxAgeSeconds = cacheMaxAgeSeconds;
+    }
+
+    public int getZipReadAheadFiles() {
+        return zipReadAheadFiles;
+    }
+
+    public void setZipReadAheadFiles(int zipReadAheadFiles) {
+        this.zipReadAheadFiles = zipReadAheadFiles;
+    }
+
+    public boolean isReadBuffersPooled() {
+        return readBuffersPooled;
+    }
+
+    public void setReadBuffersPooled(boolean readBuffersPooled) {
+        this.readBuffersPooled = readBuffersPooled;
+    }
+
+    public boolean isReadChunkAdaptive() {
+        return readChunkAdaptive;
+    }
+
+    public void setReadChunkAdaptive(boolean readChunkAdaptive) {
+        this.readChunkAdaptive = readChunkAdaptive;
+    }
+
+    public int getReadAheadChunks() {
+        return readAheadChunks;
+    }
+
+    public void setReadAheadChunks(int readAheadChunks) {
+        this.readAheadChunks = readAheadChunks;
+    }
+
+    public boolean isZeroCopyDownloads() {
+        return zeroCopyDownloads;
+    }
+
+    public void setZeroCopyDownloads(boolean zeroCopyDownloads) {
+        this.zeroCopyDownloads = zeroCopyDownloads;
+    }
+
+    public int getTimelapseMaxConcurrentJobs() {
+        return timelapseMaxConcurrentJobs;
+    }
+
+    public void setTimelapseMaxConcurrentJobs(int timelapseMaxConcurrentJobs) {
+        this.timelapseMaxConcurrentJobs = timelapseMaxConcurrentJobs;
+    }
+
+    public int getTimelapseMaxQueuedJobs() {
+        return timelapseMaxQueuedJobs;
+    }
+
+    public void setTimelapseMaxQueuedJobs(int timelapseMaxQueuedJobs) {
+        this.timelapseMaxQueuedJobs = timelapseMaxQueuedJobs;
+    }
+
+    public int getTimelapseJobHistory() {
+        return timelapseJobHistory;
+    }
+
+    public void setTimelapseJobHistory(int timelapseJobHistory) {
+        this.timelapseJobHistory = timelapseJobHistory;
+    }
+
+    public int getTimelapseJobTimeoutMinutes() {
+        return timelapseJobTimeoutMinutes;
+    }
+
+    public void setTimelapseJobTimeoutMinutes(int timelapseJobTimeoutMinutes) {
+        this.timelapseJobTimeoutMinutes = timelapseJobTimeoutMinutes;
+    }
+
+    public int getTimelapseSegmentParallelism() {
+        return timelapseSegmentParallelism;
+    }
+
+    public void setTimelapseSegmentParallelism(int timelapseSegmentParallelism) {
+        this.timelapseSegmentParallelism = timelapseSegmentParallelism;
+    }
+
+    public int getTimelapseSegmentMinFrames() {
+        return timelapseSegmentMinFrames;
+    }
+
+    public void setTimelapseSegmentMinFrames(int timelapseSegmentMinFrames) {
+        this.timelapseSegmentMinFrames = timelapseSegmentMinFrames;
+    }
+
+    public String getTimelapsePreset() {
+        return timelapsePreset;
+    }
+
+    public void setTimelapsePreset(String timelapsePreset) {
+        this.timelapsePreset = timelapsePreset;
+    }
+
+    public int getTimelapseCrf() {
+        return timelapseCrf;
+    }
+
+    public void setTimelapseCrf(int timelapseCrf) {
+        this.timelapseCrf = timelapseCrf;
+    }
+
+    public int getDailyTimelapseFrameRate() {
+        return dailyTimelapseFrameRate;
+    }
+
+    public void setDailyTimelapseFrameRate(int dailyTimelapseFrameRate) {
+        this.dailyTimelapseFrameRate = dailyTimelapseFrameRate;
+    }
+
+    public int getDailyTimelapseSegmentRetentionDays() {
+        return dailyTimelapseSegmentRetentionDays;
+    }
+
+    public void setDailyTimelapseSegmentRetentionDays(int dailyTimelapseSegmentRetentionDays) {
+        this.dailyTimelapseSegmentRetentionDays = dailyTimelapseSegmentRetentionDays;
+    }
+
+    public boolean isUploadStaggering() {
+        return uploadStaggering;
+    }
+
+    public void setUploadStaggering(boolean uploadStaggering) {
+        this.uploadStaggering = uploadStaggering;
+    }
+
+    public int getUploadMaxInFlight() {
+        return uploadMaxInFlight;
+    }
+
+    public void setUploadMaxInFlight(int uploadMaxInFlight) {
+        this.uploadMaxInFlight = uploadMaxInFlight;
+    }
+
+    public int getUploadMinFreeDiskMb() {
+        return uploadMinFreeDiskMb;
+    }
+
+    public void setUploadMinFreeDiskMb(int uploadMinFreeDiskMb) {
+        this.uploadMinFreeDiskMb = uploadMinFreeDiskMb;
+    }
+
     @Override
     public String toString() {
         return "ApplicationProperties{" +
             "showConfigOnStartup=" + showConfigOnStartup +
             ", generateThumbnails=" + generateThumbnails +
+            ", watchStorage=" + watchStorage +
+            ", imagesLayout=" + imagesLayout +
+            ", thumbnailWorkers=" + thumbnailWorkers +
+            ", thumbnailQueueCapacity=" + thumbnailQueueCapacity +
+            ", thumbnailRebuildWorkers=" + thumbnailRebuildWorkers +
+            ", thumbnailEngine=" + thumbnailEngine +
+            ", videoThumbnailMode=" + videoThumbnailMode +
+            ", videoThumbnailPosition=" + videoThumbnailPosition +
+            ", storyboardTiles=" + storyboardTiles +
+            ", cacheMaxAgeSeconds=" + cacheMaxAgeSeconds +
+            ", zipReadAheadFiles=" + zipReadAheadFiles +
+            ", readBuffersPooled=" + readBuffersPooled +
+            ", readChunkAdaptive=" + readChunkAdaptive +
+            ", readAheadChunks=" + readAheadChunks +
+            ", zeroCopyDownloads=" + zeroCopyDownloads +
+            ", timelapseMaxConcurrentJobs=" + timelapseMaxConcurrentJobs +
+            ", timelapseMaxQueuedJobs=" + timelapseMaxQueuedJobs +
+            ", timelapseJobHistory=" + timelapseJobHistory +
+            ", timelapseJobTimeoutMinutes=" + timelapseJobTimeoutMinutes +
+            ", timelapseSegmentParallelism=" + timelapseSegmentParallelism +
+            ", timelapseSegmentMinFrames=" + timelapseSegmentMinFrames +
+            ", timelapsePreset='" + timelapsePreset + '\'' +
+            ", timelapseCrf=" + timelapseCrf +
+            ", dailyTimelapseFrameRate=" + dailyTimelapseFrameRate +
+            ", dailyTimelapseSegmentRetentionDays=" + dailyTimelapseSegmentRetentionDays +
+            ", uploadStaggering=" + uploadStaggering +
+            ", uploadMaxInFlight=" + uploadMaxInFlight +
+            ", uploadMinFreeDiskMb=" + uploadMinFreeDiskMb +
             '}';
     }
 
@@ -49,4 +427,16 @@ public class ApplicationProperties {
             LOGGER.info(this.toString());
         }
     }
+
+    public enum ImagesLayout {
+        FLAT, CAMERA_DAY
+    }
+
+    public enum ThumbnailEngine {
+        SUBSAMPLING, IMAGING_KIT
+    }
+
+    public enum VideoThumbnailMode {
+        KEYFRAME, FILTER
+    }
 }
@@ -0,0 +1,19 @@
+package com.giraone.camera.config;
+
+import com.giraone.camera.service.FileService;
+import com.giraone.camera.service.StorageLayout;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class StorageConfiguration {
+
+    /**
+     * The layout of the images directory - used by the file service and by the video service, that reads the images
+     * of a timelapse by name.
+     */
+    @Bean(destroyMethod = "close")
+    public StorageLayout imagesLayout(ApplicationProperties applicationProperties) {
+        return new StorageLayout(FileService.IMAGES_BASE, applicationProperties.getImagesLayout());
+    }
+}
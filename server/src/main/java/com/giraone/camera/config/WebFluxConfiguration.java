@@ -0,0 +1,22 @@
+package com.giraone.camera.config;
+
+import com.giraone.camera.controller.DownloadBodyHttpMessageWriter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+
+@Configuration
+public class WebFluxConfiguration implements WebFluxConfigurer {
+
+    private final MeterRegistry meterRegistry;
+
+    public WebFluxConfiguration(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+        configurer.customCodecs().register(new DownloadBodyHttpMessageWriter(meterRegistry));
+    }
+}
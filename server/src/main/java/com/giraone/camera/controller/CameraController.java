@@ -1,19 +1,29 @@
 package com.giraone.camera.controller;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.giraone.camera.config.ApplicationProperties;
+import com.giraone.camera.service.CameraSettingsService;
 import com.giraone.camera.service.FileService;
+import com.giraone.camera.service.UploadAdmission;
+import com.giraone.camera.service.UploadScheduler;
 import com.giraone.camera.service.api.CameraStatus;
 import com.giraone.camera.service.api.Settings;
 import com.giraone.camera.service.api.Status;
 import com.giraone.camera.service.model.FileInfo;
-import com.giraone.camera.service.model.FileInfoAndContent;
 import com.giraone.camera.service.model.FileInfoOrder;
 import com.giraone.camera.service.model.FileInfoQuery;
+import com.giraone.camera.service.model.ThumbnailRebuildProgress;
+import com.giraone.camera.service.video.DailyTimelapseService;
+import com.giraone.camera.service.video.TimelapseJobService;
 import com.giraone.camera.service.video.model.TimelapseCommand;
+import com.giraone.camera.service.video.model.TimelapseJob;
+import com.giraone.camera.service.video.model.TimelapseJobState;
 import com.giraone.camera.service.video.model.TimelapseResult;
-import com.giraone.camera.util.ObjectMapperBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -29,14 +39,17 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
-import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 @SuppressWarnings("unused")
 @RestController
@@ -44,29 +57,32 @@ public class CameraController {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CameraController.class);
 
-    private static final Path SETTINGS_FILE_PATH = Path.of("../camera-settings.json");
     private static final String X_HEADER_ERROR = "X-Files-Error";
-
-    private static final ObjectMapper objectMapper = ObjectMapperBuilder.build();
-
-    // Cached settings
-    private Settings currentSettings = new Settings();
-    private String cameraSettingsJsonString;
-    private boolean cameraSettingsChanged = false;
+    private static final String AVI_MEDIA_TYPE = "video/x-msvideo";
+    private static final String X_HEADER_SETTINGS_VERSION = "X-Settings-Version";
 
     private final FileService fileService;
+    private final CameraSettingsService cameraSettingsService;
+    private final UploadScheduler uploadScheduler;
+    private final UploadAdmission uploadAdmission;
+    private final TimelapseJobService timelapseJobService;
+    private final DailyTimelapseService dailyTimelapseService;
+    private final ApplicationProperties applicationProperties;
+    private final CacheControl cacheControl;
 
     @SuppressWarnings("unused")
-    public CameraController(FileService fileService) {
+    public CameraController(FileService fileService, CameraSettingsService cameraSettingsService,
+                            UploadScheduler uploadScheduler, UploadAdmission uploadAdmission,
+                            TimelapseJobService timelapseJobService, DailyTimelapseService dailyTimelapseService,
+                            ApplicationProperties applicationProperties) {
         this.fileService = fileService;
-        try {
-            final String content = Files.readString(SETTINGS_FILE_PATH);
-            currentSettings = objectMapper.readValue(content, Settings.class);
-            cameraSettingsJsonString = objectMapper.writeValueAsString(currentSettings.getCamera());
-        } catch (Exception e) {
-            LOGGER.error("Cannot read settings file \"{}\"! Using default", SETTINGS_FILE_PATH, e);
-        }
-        cameraSettingsJsonString = getCameraSettingsJson(currentSettings);
+        this.cameraSettingsService = cameraSettingsService;
+        this.uploadScheduler = uploadScheduler;
+        this.uploadAdmission = uploadAdmission;
+        this.timelapseJobService = timelapseJobService;
+        this.dailyTimelapseService = dailyTimelapseService;
+        this.applicationProperties = applicationProperties;
+        this.cacheControl = CacheControl.maxAge(applicationProperties.getCacheMaxAgeSeconds(), TimeUnit.SECONDS).cachePublic();
     }
 
     //-- SETTINGS / STATUS ---------------------------------------------------------------------------------------------
@@ -74,70 +90,125 @@ public class CameraController {
     @SuppressWarnings("unused")
     @GetMapping("settings")
     ResponseEntity<Settings> getSettings() {
-        LOGGER.info("Passing settings: {}", currentSettings);
-        return ResponseEntity.ok(currentSettings);
+        final Settings settings = cameraSettingsService.getSettings();
+        LOGGER.info("Passing settings: {}", settings);
+        return ResponseEntity.ok(settings);
     }
 
     @PutMapping("settings")
     ResponseEntity<Status> storeSettings(@RequestBody Settings settings) {
         LOGGER.info("Storing settings: {}", settings);
-        currentSettings = settings;
-        final String newCameraSettings = getCameraSettingsJson(currentSettings);
-        if (!cameraSettingsJsonString.equals(newCameraSettings)) {
-            cameraSettingsChanged = true;
+        try {
+            cameraSettingsService.storeSettings(settings);
+        } catch (Exception e) {
+            LOGGER.error("Cannot write settings!", e);
+            return ResponseEntity.internalServerError().body(new Status(false, e.getMessage()));
         }
+        return ResponseEntity.ok(new Status(true, null));
+    }
+
+    @SuppressWarnings("unused")
+    @GetMapping("settings-profiles")
+    Map<String, Settings> getSettingsProfiles() {
+        return cameraSettingsService.getProfiles();
+    }
+
+    @SuppressWarnings("unused")
+    @GetMapping("settings-profiles/{cameraName}")
+    ResponseEntity<Settings> getSettingsProfile(@PathVariable String cameraName) {
+        return ResponseEntity.of(cameraSettingsService.getSettings(cameraName));
+    }
+
+    @SuppressWarnings("unused")
+    @PutMapping("settings-profiles/{cameraName}")
+    ResponseEntity<Status> storeSettingsProfile(@PathVariable String cameraName, @RequestBody Settings settings) {
+        LOGGER.info("Storing settings of camera {}: {}", cameraName, settings);
         try {
-            String content = objectMapper.writeValueAsString(settings);
-            Files.writeString(SETTINGS_FILE_PATH, content);
+            cameraSettingsService.storeSettings(cameraName, settings);
+        } catch (IllegalArgumentException iae) {
+            return ResponseEntity.badRequest().body(new Status(false, iae.getMessage()));
         } catch (Exception e) {
-            LOGGER.error("Cannot write settings file \"{}\"!", SETTINGS_FILE_PATH, e);
+            LOGGER.error("Cannot write settings of camera {}!", cameraName, e);
             return ResponseEntity.internalServerError().body(new Status(false, e.getMessage()));
         }
         return ResponseEntity.ok(new Status(true, null));
     }
 
+    @SuppressWarnings("unused")
+    @DeleteMapping("settings-profiles/{cameraName}")
+    ResponseEntity<Status> deleteSettingsProfile(@PathVariable String cameraName) {
+        LOGGER.info("Deleting settings of camera {}", cameraName);
+        try {
+            return cameraSettingsService.deleteSettings(cameraName)
+                ? ResponseEntity.ok(new Status(true, null))
+                : ResponseEntity.notFound().build();
+        } catch (Exception e) {
+            LOGGER.error("Cannot write settings of camera {}!", cameraName, e);
+            return ResponseEntity.internalServerError().body(new Status(false, e.getMessage()));
+        }
+    }
+
     @SuppressWarnings("unused")
     @PutMapping("status")
-    ResponseEntity<Settings> uploadStatus(@RequestBody CameraStatus status) {
+    ResponseEntity<byte[]> uploadStatus(@RequestBody CameraStatus status) {
         LOGGER.info("Camera status = {}", status);
-        final Settings settingsToReturn = new Settings(currentSettings.getStatus(), currentSettings.getWorkflow(), null);
-        updateSettings(settingsToReturn, status.imageCounter());
-        return ResponseEntity.ok(settingsToReturn);
+        final int delayMs = cameraSettingsService.getDelayMs(status.cameraName());
+        final int backoffDelayMs = uploadAdmission.backoffDelayMs(delayMs);
+        return settingsReply(HttpStatus.OK, cameraSettingsService.reply(status.cameraName(), status.imageCounter(),
+            status.settingsVersion(), backoffDelayMs != delayMs ? backoffDelayMs : null));
     }
 
     //-- IMAGES --------------------------------------------------------------------------------------------------------
 
     @SuppressWarnings("unused")
     @PostMapping(value = "images/{filename}", consumes = {MediaType.IMAGE_JPEG_VALUE, MediaType.IMAGE_PNG_VALUE})
-    Mono<ResponseEntity<Settings>> uploadImage(@PathVariable String filename,
-                                               @RequestBody Flux<ByteBuffer> content,
-                                               @RequestHeader("Content-Length") Optional<String> contentLengthString) {
-
-        final Settings settingsToReturn = new Settings(currentSettings.getStatus(), currentSettings.getWorkflow(), null);
+    Mono<ResponseEntity<byte[]>> uploadImage(@PathVariable String filename,
+                                             @RequestBody Flux<ByteBuffer> content,
+                                             @RequestHeader("Content-Length") Optional<String> contentLengthString,
+                                             @RequestHeader(X_HEADER_SETTINGS_VERSION) Optional<Long> settingsVersion) {
+
+        final String cameraName = CameraSettingsService.cameraNameOfImage(filename);
+        if (!uploadAdmission.tryAcquire()) {
+            // the content is not read - the camera retries after the backoff delay
+            final int delayMs = uploadAdmission.backoffDelayMs(cameraSettingsService.getDelayMs(cameraName));
+            return Mono.just(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(TimeUnit.MILLISECONDS.toSeconds(delayMs)))
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(CameraSettingsService.errorReply("Server overloaded!", delayMs)));
+        }
         final long contentLength = contentLengthString.orElse("-1").transform(Long::parseLong);
-        return fileService.storeFile(FileService.Media.IMAGES, filename, content, contentLength)
+        // deferred, so that the admitted upload is released in any case
+        return Mono.defer(() -> fileService.storeFile(FileService.Media.IMAGES, filename, content, contentLength))
             .map(fileInfo -> {
-                updateSettings(settingsToReturn, 1);
-                return ResponseEntity.ok(settingsToReturn);
+                // while the server is under pressure, the period of all cameras is stretched
+                final int delayMs = cameraSettingsService.getDelayMs(cameraName);
+                final int backoffDelayMs = uploadAdmission.backoffDelayMs(delayMs);
+                Integer replyDelayMs = uploadScheduler.nextDelayMs(cameraName, backoffDelayMs);
+                if (replyDelayMs == null && backoffDelayMs != delayMs) {
+                    replyDelayMs = backoffDelayMs;
+                }
+                return settingsReply(HttpStatus.OK,
+                    cameraSettingsService.reply(cameraName, 1, settingsVersion.orElse(null), replyDelayMs));
             })
-            .onErrorResume(IllegalArgumentException.class, iae -> Mono.just(ResponseEntity.badRequest()
-                .body(new Settings(new Status(false, iae.getMessage())))))
-            .onErrorResume(Exception.class, exc -> Mono.just(ResponseEntity.status(HttpStatusCode.valueOf(503))
-                .body(new Settings(new Status(false, exc.getMessage())))));
+            .onErrorResume(IllegalArgumentException.class, iae -> Mono.just(settingsReply(HttpStatus.BAD_REQUEST,
+                CameraSettingsService.errorReply(iae.getMessage()))))
+            .onErrorResume(Exception.class, exc -> Mono.just(settingsReply(HttpStatus.SERVICE_UNAVAILABLE,
+                CameraSettingsService.errorReply(exc.getMessage()))))
+            .doFinally(signalType -> uploadAdmission.release());
     }
 
     @SuppressWarnings("unused")
     @CrossOrigin
     @GetMapping("images/{filename}")
-    ResponseEntity<Flux<ByteBuffer>> downloadImage(@PathVariable String filename) {
-        return downloadOriginal(FileService.Media.IMAGES, filename);
+    ResponseEntity<DownloadBody> downloadImage(@PathVariable String filename, @RequestHeader HttpHeaders headers) {
+        return downloadOriginal(FileService.Media.IMAGES, filename, headers);
     }
 
     @SuppressWarnings("unused")
     @CrossOrigin
     @GetMapping("image-thumbs/{filename}")
-    ResponseEntity<Flux<ByteBuffer>> downloadImageThumb(@PathVariable String filename) {
-        return downloadThumb(FileService.Media.IMAGES, filename);
+    ResponseEntity<Flux<DataBuffer>> downloadImageThumb(@PathVariable String filename, @RequestHeader HttpHeaders headers) {
+        return downloadThumb(FileService.Media.IMAGES, filename, headers);
     }
 
     @SuppressWarnings("unused")
@@ -162,18 +233,19 @@ public class CameraController {
 
     @SuppressWarnings("unused")
     @GetMapping("image-infos")
-    List<FileInfo> listImageFiles(
+    Mono<List<FileInfo>> listImageFiles(
         @RequestParam(required = false) String prefixFilter,
         @RequestParam(required = false, defaultValue = "0") int offset,
         @RequestParam(required = false, defaultValue = "50") int limit,
         @RequestParam(required = false, defaultValue = "fileName") String orderAttribute,
         @RequestParam(required = false, defaultValue = "false") boolean orderDesc
     ) {
-        final List<FileInfo> ret = fileService.listFileInfos(FileService.Media.IMAGES,
-            new FileInfoQuery(prefixFilter, offset, limit, new FileInfoOrder(orderAttribute, orderDesc)));
-        LOGGER.info("listImageFiles prefix={}, offset={}, limit={}, order={}/{} ==> count={}",
-            prefixFilter, offset, limit, orderAttribute, orderDesc, ret.size());
-        return ret;
+        // The infos of new images are read from their files - blocking I/O
+        return Mono.fromCallable(() -> fileService.listFileInfos(FileService.Media.IMAGES,
+                new FileInfoQuery(prefixFilter, offset, limit, new FileInfoOrder(orderAttribute, orderDesc))))
+            .subscribeOn(Schedulers.boundedElastic())
+            .doOnNext(ret -> LOGGER.info("listImageFiles prefix={}, offset={}, limit={}, order={}/{} ==> count={}",
+                prefixFilter, offset, limit, orderAttribute, orderDesc, ret.size()));
     }
 
     @SuppressWarnings("unused")
@@ -186,20 +258,29 @@ public class CameraController {
 
     @SuppressWarnings("unused")
     @GetMapping("image/rebuild-thumbnails")
-    int rebuildImageThumbnails() {
+    ThumbnailRebuildProgress rebuildImageThumbnails() {
         return fileService.rebuildThumbnails(FileService.Media.IMAGES);
     }
 
+    @SuppressWarnings("unused")
+    @GetMapping("image/rebuild-thumbnails/progress")
+    ThumbnailRebuildProgress rebuildImageThumbnailsProgress() {
+        return fileService.getRebuildThumbnailsProgress(FileService.Media.IMAGES);
+    }
+
     @SuppressWarnings("unused")
     @GetMapping("image/rebuild-meta")
-    int rebuildImageMeta() {
-        return fileService.rebuildMeta(FileService.Media.IMAGES);
+    Mono<Integer> rebuildImageMeta() {
+        return Mono.fromCallable(() -> fileService.rebuildMeta(FileService.Media.IMAGES))
+            .subscribeOn(Schedulers.boundedElastic());
     }
 
     @SuppressWarnings("unused")
-    @PostMapping("image/download-as-zip")
-    Flux<ByteBuffer> downloadImagesAsZip(@RequestBody Flux<String> fileNames) {
-        return fileService.downloadImagesAsZip(fileNames);
+    @PostMapping(value = "image/download-as-zip", produces = "application/zip")
+    ResponseEntity<Flux<ByteBuffer>> downloadImagesAsZip(@RequestBody Flux<String> fileNames) {
+        return ResponseEntity.ok()
+            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"images.zip\"")
+            .body(fileService.downloadImagesAsZip(fileNames));
     }
 
     //-- VIDEOS --------------------------------------------------------------------------------------------------------
@@ -222,15 +303,42 @@ public class CameraController {
     @SuppressWarnings("unused")
     @CrossOrigin
     @GetMapping("videos/{filename}")
-    ResponseEntity<Flux<ByteBuffer>> downloadVideo(@PathVariable String filename) {
-        return downloadOriginal(FileService.Media.VIDEOS, filename);
+    ResponseEntity<DownloadBody> downloadVideo(@PathVariable String filename, @RequestHeader HttpHeaders headers) {
+        return downloadOriginal(FileService.Media.VIDEOS, filename, headers);
     }
 
     @SuppressWarnings("unused")
     @CrossOrigin
     @GetMapping("video-thumbs/{filename}")
-    ResponseEntity<Flux<ByteBuffer>> downloadVideoThumb(@PathVariable String filename) {
-        return downloadThumb(FileService.Media.VIDEOS, filename);
+    ResponseEntity<Flux<DataBuffer>> downloadVideoThumb(@PathVariable String filename, @RequestHeader HttpHeaders headers) {
+        return downloadThumb(FileService.Media.VIDEOS, filename, headers);
+    }
+
+    /**
+     * Download the storyboard of a video for scrub previews: the sprite "{name}.jpg" or its index as "{name}.vtt"
+     * (WebVTT) or "{name}.json".
+     */
+    @SuppressWarnings("unused")
+    @CrossOrigin
+    @GetMapping("video-storyboards/{filename}")
+    ResponseEntity<Flux<DataBuffer>> downloadVideoStoryboard(@PathVariable String filename,
+                                                             @RequestHeader HttpHeaders headers) {
+        final FileInfo fileInfo;
+        try {
+            fileInfo = fileService.getStoryboardInfo(filename);
+        } catch (NoSuchFileException nsfe) {
+            return ResponseEntity.notFound().header(X_HEADER_ERROR, nsfe.getMessage()).build();
+        } catch (IOException | IllegalArgumentException exc) {
+            return ResponseEntity.badRequest().header(X_HEADER_ERROR, exc.getMessage()).build();
+        }
+        if (HttpCacheSupport.isNotModified(headers, fileInfo)) {
+            return notModified(fileInfo);
+        }
+        final long contentLength = fileInfo.getSizeInBytes();
+        return HttpCacheSupport.withValidators(ResponseEntity.ok(), fileInfo, cacheControl)
+            .header(HttpHeaders.CONTENT_TYPE, fileInfo.getMediaType())
+            .header(HttpHeaders.CONTENT_LENGTH, Long.toString(contentLength))
+            .body(fileService.readStoryboard(filename, contentLength));
     }
 
     @SuppressWarnings("unused")
@@ -255,15 +363,17 @@ public class CameraController {
 
     @SuppressWarnings("unused")
     @GetMapping("video-infos")
-    List<FileInfo> listVideoFiles(
+    Mono<List<FileInfo>> listVideoFiles(
         @RequestParam(required = false) String prefixFilter,
         @RequestParam(required = false, defaultValue = "0") int offset,
         @RequestParam(required = false, defaultValue = "50") int limit,
         @RequestParam(required = false, defaultValue = "fileName") String orderAttribute,
         @RequestParam(required = false, defaultValue = "false") boolean orderDesc
     ) {
-        return fileService.listFileInfos(FileService.Media.VIDEOS,
-            new FileInfoQuery(prefixFilter, offset, limit, new FileInfoOrder(orderAttribute, orderDesc)));
+        // The infos of new videos are read by ffprobe - the process is awaited
+        return Mono.fromCallable(() -> fileService.listFileInfos(FileService.Media.VIDEOS,
+                new FileInfoQuery(prefixFilter, offset, limit, new FileInfoOrder(orderAttribute, orderDesc))))
+            .subscribeOn(Schedulers.boundedElastic());
     }
 
     @SuppressWarnings("unused")
@@ -272,80 +382,205 @@ public class CameraController {
         return fileService.countFileInfos(FileService.Media.VIDEOS, prefixFilter);
     }
 
+    /**
+     * Create a timelapse video and wait for it. The job is queued like the ones of "video/timelapse-jobs".
+     */
     @SuppressWarnings("unused")
     @PostMapping(value = "video/create-timelapse")
     Mono<TimelapseResult> createTimelapseVideo(@RequestBody TimelapseCommand timelapseCommand) {
-        return fileService.createTimelapseVideo(timelapseCommand);
+        final TimelapseJob job;
+        try {
+            job = timelapseJobService.submit(timelapseCommand);
+        } catch (IllegalArgumentException | RejectedExecutionException exc) {
+            LOGGER.warn("createTimelapseVideo failed! {}", exc.getMessage());
+            return Mono.just(new TimelapseResult(false, null));
+        }
+        return timelapseJobService.completion(job.id())
+            .map(finished -> finished.state() == TimelapseJobState.SUCCEEDED
+                ? new TimelapseResult(true, finished.outputFilename())
+                : new TimelapseResult(false, null));
+    }
+
+    /**
+     * Export the images of a timelapse as MJPEG AVI - a quick preview, that is streamed while the images are read.
+     * The selection parameters are the same as for "video/timelapse-jobs", the output file name is the download name.
+     */
+    @SuppressWarnings("unused")
+    @PostMapping(value = "video/export-timelapse-avi", produces = AVI_MEDIA_TYPE)
+    Mono<ResponseEntity<Flux<ByteBuffer>>> exportTimelapseAvi(@RequestBody TimelapseCommand timelapseCommand) {
+        // The images are selected by their file attributes - blocking I/O
+        return Mono.fromCallable(() -> fileService.exportTimelapseAvi(timelapseCommand))
+            .subscribeOn(Schedulers.boundedElastic())
+            .map(video -> ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\""
+                    + aviFileName(timelapseCommand.outputFilename()) + "\"")
+                .header(HttpHeaders.CONTENT_LENGTH, Long.toString(video.length()))
+                .body(video.content()))
+            .onErrorResume(IllegalArgumentException.class, iae -> Mono.just(ResponseEntity.badRequest()
+                .header(X_HEADER_ERROR, iae.getMessage()).<Flux<ByteBuffer>>build()))
+            .onErrorResume(IOException.class, ioe -> Mono.just(ResponseEntity.unprocessableEntity()
+                .header(X_HEADER_ERROR, ioe.getMessage()).<Flux<ByteBuffer>>build()));
+    }
+
+    @SuppressWarnings("unused")
+    @PostMapping(value = "video/timelapse-jobs")
+    ResponseEntity<TimelapseJob> submitTimelapseJob(@RequestBody TimelapseCommand timelapseCommand) {
+        try {
+            return ResponseEntity.accepted().body(timelapseJobService.submit(timelapseCommand));
+        } catch (IllegalArgumentException iae) {
+            return ResponseEntity.badRequest().header(X_HEADER_ERROR, iae.getMessage()).build();
+        } catch (RejectedExecutionException ree) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(X_HEADER_ERROR, "Too many timelapse jobs queued!").build();
+        }
+    }
+
+    @SuppressWarnings("unused")
+    @GetMapping("video/timelapse-jobs")
+    List<TimelapseJob> listTimelapseJobs() {
+        return timelapseJobService.list();
+    }
+
+    @SuppressWarnings("unused")
+    @GetMapping("video/timelapse-jobs/{jobId}")
+    ResponseEntity<TimelapseJob> getTimelapseJob(@PathVariable String jobId) {
+        return ResponseEntity.of(timelapseJobService.get(jobId));
+    }
+
+    @SuppressWarnings("unused")
+    @DeleteMapping("video/timelapse-jobs/{jobId}")
+    ResponseEntity<TimelapseJob> cancelTimelapseJob(@PathVariable String jobId) {
+        return ResponseEntity.of(timelapseJobService.cancel(jobId));
+    }
+
+    /**
+     * Refresh the daily timelapse video of a camera by appending the images, that were added since the last refresh.
+     * The refresh is a timelapse job, that is polled with "video/timelapse-jobs/{jobId}".
+     */
+    @SuppressWarnings("unused")
+    @PostMapping("video/daily-timelapses/{camera}")
+    ResponseEntity<TimelapseJob> refreshDailyTimelapse(@PathVariable String camera,
+                                                       @RequestParam(required = false) String day) {
+        try {
+            return ResponseEntity.accepted().body(dailyTimelapseService.refresh(camera, day));
+        } catch (IllegalArgumentException iae) {
+            return ResponseEntity.badRequest().header(X_HEADER_ERROR, iae.getMessage()).build();
+        } catch (RejectedExecutionException ree) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(X_HEADER_ERROR, "Too many timelapse jobs queued!").build();
+        }
     }
 
     @SuppressWarnings("unused")
     @GetMapping("video/rebuild-thumbnails")
-    int rebuildVideoThumbnails() {
+    ThumbnailRebuildProgress rebuildVideoThumbnails() {
         return fileService.rebuildThumbnails(FileService.Media.VIDEOS);
     }
 
+    @SuppressWarnings("unused")
+    @GetMapping("video/rebuild-thumbnails/progress")
+    ThumbnailRebuildProgress rebuildVideoThumbnailsProgress() {
+        return fileService.getRebuildThumbnailsProgress(FileService.Media.VIDEOS);
+    }
+
     @SuppressWarnings("unused")
     @GetMapping("video/rebuild-meta")
-    int rebuildVideoMeta() {
-        return fileService.rebuildMeta(FileService.Media.VIDEOS);
+    Mono<Integer> rebuildVideoMeta() {
+        // ffprobe is run for each video - the processes are awaited
+        return Mono.fromCallable(() -> fileService.rebuildMeta(FileService.Media.VIDEOS))
+            .subscribeOn(Schedulers.boundedElastic());
     }
 
     //------------------------------------------------------------------------------------------------------------------
 
-    private ResponseEntity<Flux<ByteBuffer>> downloadOriginal(FileService.Media type, String filename) {
+    private ResponseEntity<DownloadBody> downloadOriginal(FileService.Media type, String filename, HttpHeaders requestHeaders) {
 
-        final FileInfoAndContent fileInfoAndContent;
+        final FileInfo fileInfo;
         try {
-            fileInfoAndContent = fileService.downloadFile(type, filename);
+            fileInfo = fileService.getFileInfo(type, filename);
         } catch (NoSuchFileException nsfe) {
             return ResponseEntity.notFound().header(X_HEADER_ERROR, nsfe.getMessage()).build();
-        } catch (IOException ioe) {
-            return ResponseEntity.badRequest().header(X_HEADER_ERROR, ioe.getMessage()).build();
+        } catch (IOException | IllegalArgumentException exc) {
+            return ResponseEntity.badRequest().header(X_HEADER_ERROR, exc.getMessage()).build();
+        }
+        if (HttpCacheSupport.isNotModified(requestHeaders, fileInfo)) {
+            return notModified(fileInfo);
         }
-        final String mediaType = fileInfoAndContent.fileInfo().getMediaType();
-        final long contentLength = fileInfoAndContent.fileInfo().getSizeInBytes();
-        return streamToWebClient(fileInfoAndContent.content(), mediaType, contentLength);
+        final String mediaType = fileInfo.getMediaType();
+        final long totalLength = fileInfo.getSizeInBytes();
+        final List<HttpRangeSupport.ByteRange> ranges;
+        try {
+            // If "If-Range" does not match, the full (changed) content is returned.
+            ranges = HttpRangeSupport.isIfRangeSatisfied(requestHeaders, fileInfo)
+                ? HttpRangeSupport.resolveRanges(requestHeaders, totalLength)
+                : List.of();
+        } catch (IllegalArgumentException iae) {
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                .header(HttpHeaders.CONTENT_RANGE, HttpRangeSupport.BYTES + " */" + totalLength)
+                .header(X_HEADER_ERROR, iae.getMessage())
+                .build();
+        }
+        if (ranges.isEmpty()) {
+            final Supplier<Flux<DataBuffer>> content = () -> fileService.readFile(type, filename, 0, totalLength);
+            return HttpCacheSupport.withValidators(ResponseEntity.ok(), fileInfo, cacheControl)
+                .header(HttpHeaders.ACCEPT_RANGES, HttpRangeSupport.BYTES)
+                .header(HttpHeaders.CONTENT_TYPE, mediaType)
+                .header(HttpHeaders.CONTENT_LENGTH, Long.toString(totalLength))
+                .body(applicationProperties.isZeroCopyDownloads()
+                    ? DownloadBody.zeroCopy(() -> fileService.getFile(type, filename), totalLength, content)
+                    : DownloadBody.streamed(content.get()));
+        }
+        if (ranges.size() == 1) {
+            final HttpRangeSupport.ByteRange range = ranges.get(0);
+            return HttpCacheSupport.withValidators(ResponseEntity.status(HttpStatus.PARTIAL_CONTENT), fileInfo, cacheControl)
+                .header(HttpHeaders.ACCEPT_RANGES, HttpRangeSupport.BYTES)
+                .header(HttpHeaders.CONTENT_TYPE, mediaType)
+                .header(HttpHeaders.CONTENT_RANGE, range.contentRange(totalLength))
+                .header(HttpHeaders.CONTENT_LENGTH, Long.toString(range.length()))
+                .body(DownloadBody.streamed(fileService.readFile(type, filename, range.offset(), range.length())));
+        }
+        final String boundary = HttpRangeSupport.newBoundary();
+        return HttpCacheSupport.withValidators(ResponseEntity.status(HttpStatus.PARTIAL_CONTENT), fileInfo, cacheControl)
+            .header(HttpHeaders.ACCEPT_RANGES, HttpRangeSupport.BYTES)
+            .header(HttpHeaders.CONTENT_TYPE, HttpRangeSupport.MULTIPART_BYTERANGES + boundary)
+            .header(HttpHeaders.CONTENT_LENGTH,
+                Long.toString(HttpRangeSupport.multipartLength(ranges, totalLength, mediaType, boundary)))
+            .body(DownloadBody.streamed(HttpRangeSupport.multipartBody(ranges, totalLength, mediaType, boundary,
+                (offset, length) -> fileService.readFile(type, filename, offset, length))));
     }
 
-    private ResponseEntity<Flux<ByteBuffer>> downloadThumb(FileService.Media type, String filename) {
+    private ResponseEntity<Flux<DataBuffer>> downloadThumb(FileService.Media type, String filename, HttpHeaders requestHeaders) {
 
-        final FileInfoAndContent fileInfoAndContent;
+        final FileInfo fileInfo;
         try {
-            fileInfoAndContent = fileService.downloadThumb(type, filename);
+            fileInfo = fileService.getThumbInfo(type, filename);
         } catch (NoSuchFileException nsfe) {
             return ResponseEntity.notFound().header(X_HEADER_ERROR, nsfe.getMessage()).build();
-        } catch (IOException ioe) {
-            return ResponseEntity.badRequest().header(X_HEADER_ERROR, ioe.getMessage()).build();
+        } catch (IOException | IllegalArgumentException exc) {
+            return ResponseEntity.badRequest().header(X_HEADER_ERROR, exc.getMessage()).build();
         }
-        final String mediaType = fileInfoAndContent.fileInfo().getMediaType();
-        final long contentLength = fileInfoAndContent.fileInfo().getSizeInBytes();
-        return streamToWebClient(fileInfoAndContent.content(), mediaType, contentLength);
-    }
-
-    private void updateSettings(Settings settingsToReturn, int imageCounter) {
-        if (cameraSettingsChanged || imageCounter == 0) {
-            LOGGER.info("Forcing to re-initialize camera settings.");
-            // return camera settings, when they were changed or no image was taken yet
-            settingsToReturn.setCamera(currentSettings.getCamera());
-            cameraSettingsChanged = false;
+        if (HttpCacheSupport.isNotModified(requestHeaders, fileInfo)) {
+            return notModified(fileInfo);
         }
+        final long contentLength = fileInfo.getSizeInBytes();
+        return HttpCacheSupport.withValidators(ResponseEntity.ok(), fileInfo, cacheControl)
+            .header(HttpHeaders.CONTENT_TYPE, fileInfo.getMediaType())
+            .header(HttpHeaders.CONTENT_LENGTH, Long.toString(contentLength))
+            .body(fileService.readThumb(type, filename, contentLength));
     }
 
-    private static ResponseEntity<Flux<ByteBuffer>> streamToWebClient(Flux<ByteBuffer> content, String mediaType, long contentLength) {
+    private <T> ResponseEntity<T> notModified(FileInfo fileInfo) {
+        return HttpCacheSupport.withValidators(ResponseEntity.status(HttpStatus.NOT_MODIFIED), fileInfo, cacheControl).build();
+    }
 
-        return ResponseEntity
-            .ok()
-            .header("Content-Type", mediaType)
-            .header("Content-Length", Long.toString(contentLength))
-            .body(content);
+    // The settings replies are serialized once per settings version by the CameraSettingsService.
+    private static ResponseEntity<byte[]> settingsReply(HttpStatus status, byte[] settings) {
+        return ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON).body(settings);
     }
 
-    private static String getCameraSettingsJson(Settings settings) {
-        try {
-            return objectMapper.writeValueAsString(settings.getCamera());
-        } catch (Exception e) {
-            LOGGER.error("Cannot write camera settings!", e);
-            return null;
-        }
+    private static String aviFileName(String outputFilename) {
+        final String name = outputFilename == null ? "timelapse" : outputFilename.replaceAll("[^a-zA-Z0-9-.]", "");
+        final int lastDotIndex = name.lastIndexOf('.');
+        return (lastDotIndex > 0 ? name.substring(0, lastDotIndex) : name) + ".avi";
     }
 }
\ No newline at end of file
@@ -0,0 +1,32 @@
+package com.giraone.camera.controller;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import reactor.core.publisher.Flux;
+
+import java.nio.file.Path;
+import java.util.function.Supplier;
+
+/**
+ * Response body of a file download, written by {@link DownloadBodyHttpMessageWriter}.
+ * @param zeroCopyFile locates the file to be sent with zero-copy, when the body is written, or null, if the content has
+ *                     to be streamed - the file may have been moved since the request was handled
+ * @param length the number of bytes sent from the file
+ * @param content the streamed content - also used, when the server does not support zero-copy or the file is not
+ *                found anymore
+ */
+public record DownloadBody(Supplier<Path> zeroCopyFile, long length, Supplier<Flux<DataBuffer>> content) {
+
+    /**
+     * A body streamed from read buffers, e.g. a range of a file or a multipart body.
+     */
+    public static DownloadBody streamed(Flux<DataBuffer> content) {
+        return new DownloadBody(null, -1L, () -> content);
+    }
+
+    /**
+     * A complete file, sent with zero-copy (sendfile) if possible.
+     */
+    public static DownloadBody zeroCopy(Supplier<Path> file, long length, Supplier<Flux<DataBuffer>> fallback) {
+        return new DownloadBody(file, length, fallback);
+    }
+}
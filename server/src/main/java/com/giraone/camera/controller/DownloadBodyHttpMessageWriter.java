@@ -0,0 +1,87 @@
+package com.giraone.camera.controller;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.PooledDataBuffer;
+import org.springframework.http.MediaType;
+import org.springframework.http.ReactiveHttpOutputMessage;
+import org.springframework.http.ZeroCopyHttpOutputMessage;
+import org.springframework.http.codec.HttpMessageWriter;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writer for {@link DownloadBody}. Complete files are passed to {@link ZeroCopyHttpOutputMessage} - with Reactor Netty
+ * this is a file region sent with sendfile, so the content is not copied into the JVM. If the response does not
+ * support zero-copy (e.g. with TLS or compression), the body is a range, or the file is not found with its length
+ * anymore - e.g. while it is moved by a migration of the storage layout - the content is streamed from the read
+ * buffers, which find a moved file again. The bytes of both paths are counted in {@code camera.download.bytes}.
+ */
+public class DownloadBodyHttpMessageWriter implements HttpMessageWriter<DownloadBody> {
+
+    private static final String METRIC_NAME = "camera.download.bytes";
+
+    private final Counter zeroCopyCounter;
+    private final Counter streamedCounter;
+
+    public DownloadBodyHttpMessageWriter(MeterRegistry meterRegistry) {
+        this.zeroCopyCounter = Counter.builder(METRIC_NAME)
+            .description("Bytes of downloaded files")
+            .baseUnit("bytes")
+            .tag("mode", "zero-copy")
+            .register(meterRegistry);
+        this.streamedCounter = Counter.builder(METRIC_NAME)
+            .description("Bytes of downloaded files")
+            .baseUnit("bytes")
+            .tag("mode", "streamed")
+            .register(meterRegistry);
+    }
+
+    @Override
+    public List<MediaType> getWritableMediaTypes() {
+        return List.of(MediaType.ALL);
+    }
+
+    @Override
+    public boolean canWrite(ResolvableType elementType, MediaType mediaType) {
+        return DownloadBody.class.isAssignableFrom(elementType.toClass());
+    }
+
+    @Override
+    public Mono<Void> write(Publisher<? extends DownloadBody> inputStream, ResolvableType elementType,
+                            MediaType mediaType, ReactiveHttpOutputMessage message, Map<String, Object> hints) {
+        return Mono.from(inputStream).flatMap(body -> write(body, message));
+    }
+
+    private Mono<Void> write(DownloadBody body, ReactiveHttpOutputMessage message) {
+        if (body.zeroCopyFile() != null && message instanceof ZeroCopyHttpOutputMessage zeroCopyMessage) {
+            final Path file = body.zeroCopyFile().get();
+            if (hasLength(file, body.length())) {
+                return zeroCopyMessage.writeWith(file, 0, body.length())
+                    .doOnSuccess(unused -> zeroCopyCounter.increment(body.length()));
+            }
+        }
+        return message.writeWith(body.content().get()
+            .doOnNext(buffer -> streamedCounter.increment(buffer.readableByteCount()))
+            // buffers, that were read but not written, e.g. on a closed connection
+            .doOnDiscard(PooledDataBuffer.class, DataBufferUtils::release));
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    private static boolean hasLength(Path file, long length) {
+        try {
+            return Files.size(file) == length;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.giraone.camera.controller;
+
+import com.giraone.camera.service.model.FileInfo;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Helper for conditional GET requests (RFC 9110, section 13) on stored files. Stored images, videos and thumbnails
+ * are not modified after they are written, so size and modification time are used as a strong validator and the
+ * meta data is enough to answer "If-None-Match" and "If-Modified-Since" - the file itself is not opened.
+ */
+final class HttpCacheSupport {
+
+    // Hide
+    private HttpCacheSupport() {
+    }
+
+    /**
+     * Strong entity tag built from size and modification time.
+     * @param fileInfo the file meta data
+     * @return quoted entity tag
+     */
+    static String eTagOf(FileInfo fileInfo) {
+        return "\"" + Long.toHexString(fileInfo.getSizeInBytes()) + "-"
+            + Long.toHexString(lastModifiedEpochSecondOf(fileInfo)) + "\"";
+    }
+
+    static long lastModifiedEpochSecondOf(FileInfo fileInfo) {
+        return fileInfo.getLastModifiedEpochSecond();
+    }
+
+    /**
+     * Evaluate "If-None-Match" and - only if it is absent - "If-Modified-Since".
+     * @param headers the request headers
+     * @param fileInfo the current file meta data
+     * @return true, if the client's copy is up to date and 304 should be returned
+     */
+    static boolean isNotModified(HttpHeaders headers, FileInfo fileInfo) {
+        final List<String> ifNoneMatch = headers.getIfNoneMatch();
+        if (!ifNoneMatch.isEmpty()) {
+            final String eTag = eTagOf(fileInfo);
+            // If-None-Match uses the weak comparison
+            return ifNoneMatch.stream().anyMatch(tag -> "*".equals(tag) || eTag.equals(stripWeak(tag)));
+        }
+        final long ifModifiedSince;
+        try {
+            ifModifiedSince = headers.getIfModifiedSince();
+        } catch (IllegalArgumentException iae) {
+            return false;
+        }
+        return ifModifiedSince >= 0 && lastModifiedEpochSecondOf(fileInfo) <= ifModifiedSince / 1000L;
+    }
+
+    /**
+     * Add "ETag", "Last-Modified" and "Cache-Control" to a response.
+     * @param builder the response builder
+     * @param fileInfo the file meta data
+     * @param cacheControl the cache control directives
+     * @return the builder
+     */
+    static <B extends ResponseEntity.HeadersBuilder<B>> B withValidators(B builder, FileInfo fileInfo, CacheControl cacheControl) {
+        return builder
+            .eTag(eTagOf(fileInfo))
+            .lastModified(Instant.ofEpochSecond(lastModifiedEpochSecondOf(fileInfo)))
+            .cacheControl(cacheControl);
+    }
+
+    private static String stripWeak(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+}
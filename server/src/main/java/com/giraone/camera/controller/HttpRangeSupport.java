@@ -0,0 +1,185 @@
+package com.giraone.camera.controller;
+
+import com.giraone.camera.service.model.FileInfo;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.BiFunction;
+
+/**
+ * Helper for HTTP range requests (RFC 9110, section 14) on stored files: parsing of "Range", validation of
+ * "If-Range" and building of "multipart/byteranges" bodies. The content itself is read with the offset/length
+ * read path of {@link com.giraone.camera.service.FluxUtil}.
+ */
+final class HttpRangeSupport {
+
+    static final String BYTES = "bytes";
+    static final String MULTIPART_BYTERANGES = "multipart/byteranges; boundary=";
+    // More parts are answered with the full content - a client never needs that many.
+    static final int MAX_RANGES = 16;
+
+    // Hide
+    private HttpRangeSupport() {
+    }
+
+    /**
+     * A resolved, satisfiable byte range.
+     * @param offset the first byte
+     * @param length number of bytes
+     */
+    record ByteRange(long offset, long length) {
+
+        long last() {
+            return offset + length - 1;
+        }
+
+        String contentRange(long total) {
+            return BYTES + " " + offset + "-" + last() + "/" + total;
+        }
+    }
+
+    /**
+     * Resolve the "Range" header against the file length. Overlapping and adjacent ranges are merged. A header with
+     * more than {@link #MAX_RANGES} parts or with ranges, that add up to more than the file, is ignored, so that one
+     * request cannot read the file many times (RFC 9110 14.2).
+     * @param headers the request headers
+     * @param totalLength the file length
+     * @return the resolved ranges in ascending order - empty, if the full content is to be sent
+     * @throws IllegalArgumentException if the ranges are not satisfiable
+     */
+    static List<ByteRange> resolveRanges(HttpHeaders headers, long totalLength) {
+        final List<HttpRange> httpRanges;
+        try {
+            httpRanges = headers.getRange();
+        } catch (IllegalArgumentException iae) {
+            // RFC 9110 14.2: an invalid "Range" header is ignored - the full content is returned.
+            return List.of();
+        }
+        if (httpRanges.isEmpty() || httpRanges.size() > MAX_RANGES) {
+            return List.of();
+        }
+        if (totalLength == 0) {
+            throw new IllegalArgumentException("Range not satisfiable for empty file");
+        }
+        final List<ByteRange> ranges = new ArrayList<>(httpRanges.size());
+        long requested = 0L;
+        for (HttpRange httpRange : httpRanges) {
+            final long start = httpRange.getRangeStart(totalLength);
+            final long end = httpRange.getRangeEnd(totalLength);
+            // Unsatisfiable ranges are ignored as long as at least one range is satisfiable.
+            if (start < totalLength && end >= start) {
+                ranges.add(new ByteRange(start, end - start + 1));
+                requested += end - start + 1;
+            }
+        }
+        if (ranges.isEmpty()) {
+            throw new IllegalArgumentException("Range not satisfiable: " + HttpRange.toString(httpRanges));
+        }
+        return requested > totalLength ? List.of() : merge(ranges);
+    }
+
+    /**
+     * Check the "If-Range" precondition. Without the header, the range request is always valid.
+     * @param headers the request headers
+     * @param fileInfo the current file meta data
+     * @return true, if the ranges should be served, false if the full content must be sent
+     */
+    static boolean isIfRangeSatisfied(HttpHeaders headers, FileInfo fileInfo) {
+        final String ifRange = headers.getFirst(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("W/")) {
+            // Weak validators are never used for range requests
+            return false;
+        }
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(HttpCacheSupport.eTagOf(fileInfo));
+        }
+        try {
+            final ZonedDateTime date = headers.getFirstZonedDateTime(HttpHeaders.IF_RANGE);
+            return date != null && date.toEpochSecond() == HttpCacheSupport.lastModifiedEpochSecondOf(fileInfo);
+        } catch (IllegalArgumentException iae) {
+            return false;
+        }
+    }
+
+    /**
+     * @param ranges satisfiable ranges in any order
+     * @return the ranges sorted by offset with overlapping and adjacent ranges joined
+     */
+    static List<ByteRange> merge(List<ByteRange> ranges) {
+        final List<ByteRange> sorted = new ArrayList<>(ranges);
+        sorted.sort(Comparator.comparingLong(ByteRange::offset));
+        final List<ByteRange> ret = new ArrayList<>(sorted.size());
+        ByteRange current = sorted.get(0);
+        for (ByteRange next : sorted.subList(1, sorted.size())) {
+            if (next.offset() <= current.last() + 1) {
+                final long last = Math.max(current.last(), next.last());
+                current = new ByteRange(current.offset(), last - current.offset() + 1);
+            } else {
+                ret.add(current);
+                current = next;
+            }
+        }
+        ret.add(current);
+        return ret;
+    }
+
+    static String newBoundary() {
+        return UUID.randomUUID().toString().replace("-", "");
+    }
+
+    /**
+     * Build a "multipart/byteranges" body.
+     * @param ranges the resolved ranges
+     * @param totalLength the file length
+     * @param mediaType the media type of the file
+     * @param boundary the multipart boundary
+     * @param reader function reading a part of the file given offset and length
+     * @return the body content
+     */
+    static Flux<DataBuffer> multipartBody(List<ByteRange> ranges, long totalLength, String mediaType, String boundary,
+                                          BiFunction<Long, Long, Flux<DataBuffer>> reader) {
+        return Flux.fromIterable(ranges)
+            .concatMap(range -> Flux.concat(
+                Flux.just(wrap(partHeader(range, totalLength, mediaType, boundary))),
+                reader.apply(range.offset(), range.length())))
+            .concatWith(Flux.just(wrap(closingBoundary(boundary))));
+    }
+
+    /**
+     * Exact length of the body built by {@link #multipartBody}.
+     */
+    static long multipartLength(List<ByteRange> ranges, long totalLength, String mediaType, String boundary) {
+        long ret = closingBoundary(boundary).length;
+        for (ByteRange range : ranges) {
+            ret += partHeader(range, totalLength, mediaType, boundary).length + range.length();
+        }
+        return ret;
+    }
+
+    private static byte[] partHeader(ByteRange range, long totalLength, String mediaType, String boundary) {
+        return ("\r\n--" + boundary + "\r\n"
+            + HttpHeaders.CONTENT_TYPE + ": " + mediaType + "\r\n"
+            + HttpHeaders.CONTENT_RANGE + ": " + range.contentRange(totalLength) + "\r\n"
+            + "\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static DataBuffer wrap(byte[] bytes) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(bytes);
+    }
+
+    private static byte[] closingBoundary(String boundary) {
+        return ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+}
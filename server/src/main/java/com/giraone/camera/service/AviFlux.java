@@ -0,0 +1,240 @@
+package com.giraone.camera.service;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Streaming MJPEG AVI writer on a {@link Flux} of {@link ByteBuffer}.
+ * <ul>
+ *     <li>The JPEGs are the video frames as they are - nothing is decoded or encoded.</li>
+ *     <li>The sizes of all frames are known in advance, so the headers and the index ({@code idx1}) are computed
+ *     before the first frame is read and the total length is known.</li>
+ *     <li>Only AVI 1.0 is written, so the video is limited to 4 GB - about 40.000 frames of an SVGA camera.</li>
+ *     <li>The content of up to {@code concurrency} upcoming frames is read ahead, each limited to a few chunks.</li>
+ * </ul>
+ */
+public final class AviFlux {
+
+    private static final long MAX_RIFF_SIZE = 0xFFFFFFFFL;
+    private static final int AVIF_HASINDEX = 0x10;
+    private static final int AVIIF_KEYFRAME = 0x10;
+    // RIFF header, hdrl list with avih and strl (strh, strf), movi list header
+    private static final int HEADER_LENGTH = 12 + 12 + 64 + 12 + 64 + 48 + 12;
+    private static final int INDEX_ENTRY_LENGTH = 16;
+    private static final int PREFETCH_CHUNKS_PER_FRAME = 2;
+    private static final int JPEG_HEADER_READ_LENGTH = 64 * 1024;
+
+    // Hide
+    private AviFlux() {
+    }
+
+    /**
+     * One JPEG frame.
+     * @param size the exact number of bytes, that {@code content} will emit
+     * @param content supplier of the JPEG - subscribed to, when the frame is read
+     */
+    public record Frame(long size, Supplier<Flux<ByteBuffer>> content) {
+    }
+
+    /**
+     * @param length the total number of bytes of the video
+     * @param content the video content
+     */
+    public record Video(long length, Flux<ByteBuffer> content) {
+    }
+
+    /**
+     * Build an MJPEG AVI video from the given frames.
+     * @param frames the frames in the order of the video
+     * @param frameRate frames per second
+     * @param width width of the frames
+     * @param height height of the frames
+     * @param concurrency number of frames, whose content is read ahead
+     * @return the video
+     * @throws IllegalArgumentException if there are no frames or the video is larger than 4 GB
+     */
+    public static Video mjpeg(List<Frame> frames, int frameRate, int width, int height, int concurrency) {
+        if (frames.isEmpty()) {
+            throw new IllegalArgumentException("No frames given!");
+        }
+        long moviLength = 4L;
+        long maxFrameSize = 0L;
+        for (Frame frame : frames) {
+            moviLength += 8L + padded(frame.size());
+            maxFrameSize = Math.max(maxFrameSize, frame.size());
+        }
+        final long length = HEADER_LENGTH + moviLength - 4L + 8L + (long) INDEX_ENTRY_LENGTH * frames.size();
+        if (length - 8L > MAX_RIFF_SIZE) {
+            throw new IllegalArgumentException("AVI video with " + frames.size() + " frames is larger than 4 GB!");
+        }
+        final ByteBuffer header = header(frames.size(), frameRate, width, height, maxFrameSize, moviLength, length);
+        final Flux<ByteBuffer> content = Flux.concat(
+            Mono.fromSupplier(header::duplicate),
+            Flux.fromIterable(frames)
+                .flatMapSequential(AviFlux::chunk, Math.max(1, concurrency), PREFETCH_CHUNKS_PER_FRAME),
+            Mono.fromSupplier(() -> index(frames)));
+        return new Video(length, content);
+    }
+
+    /**
+     * Read the size of a JPEG from its frame header - only the start of the file is read.
+     * @param file the JPEG file
+     * @return width and height
+     * @throws IOException if the file cannot be read or is no JPEG
+     */
+    public static int[] jpegSize(Path file) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(JPEG_HEADER_READ_LENGTH);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // read the header completely
+            }
+        }
+        buffer.flip();
+        if (buffer.remaining() < 4 || (buffer.getShort() & 0xFFFF) != 0xFFD8) {
+            throw new IOException("No JPEG: \"" + file + "\"!");
+        }
+        while (buffer.remaining() >= 4) {
+            final int marker = buffer.getShort() & 0xFFFF;
+            final int segmentLength = buffer.getShort() & 0xFFFF;
+            // SOF0 - SOF15 without DHT (C4), JPG (C8) and DAC (CC): precision, height, width
+            if (marker >= 0xFFC0 && marker <= 0xFFCF && marker != 0xFFC4 && marker != 0xFFC8 && marker != 0xFFCC) {
+                if (buffer.remaining() < 5) {
+                    break;
+                }
+                buffer.get();
+                final int height = buffer.getShort() & 0xFFFF;
+                final int width = buffer.getShort() & 0xFFFF;
+                return new int[]{width, height};
+            }
+            if ((marker & 0xFF00) != 0xFF00 || segmentLength < 2 || buffer.remaining() < segmentLength - 2) {
+                break;
+            }
+            buffer.position(buffer.position() + segmentLength - 2);
+        }
+        throw new IOException("No JPEG frame header in \"" + file + "\"!");
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    private static Flux<ByteBuffer> chunk(Frame frame) {
+        final long[] bytesRead = {0L};
+        final ByteBuffer chunkHeader = allocate(8);
+        putFourCC(chunkHeader, "00dc");
+        chunkHeader.putInt((int) frame.size());
+        return Flux.concat(
+            Mono.just(chunkHeader.flip()),
+            frame.content().get().doOnNext(buffer -> bytesRead[0] += buffer.remaining()),
+            Mono.fromCallable(() -> {
+                if (bytesRead[0] != frame.size()) {
+                    throw new IllegalStateException("Frame has " + bytesRead[0] + " bytes instead of "
+                        + frame.size() + "! File changed while exporting?");
+                }
+                // chunks are aligned to 16 bit
+                return allocate((int) (padded(frame.size()) - frame.size()));
+            }).filter(ByteBuffer::hasRemaining));
+    }
+
+    private static ByteBuffer header(int frameCount, int frameRate, int width, int height, long maxFrameSize,
+                                     long moviLength, long length) {
+        final ByteBuffer buffer = allocate(HEADER_LENGTH);
+        putFourCC(buffer, "RIFF");
+        buffer.putInt((int) (length - 8L));
+        putFourCC(buffer, "AVI ");
+
+        putFourCC(buffer, "LIST");
+        buffer.putInt(4 + 64 + 12 + 64 + 48);
+        putFourCC(buffer, "hdrl");
+        putFourCC(buffer, "avih");
+        buffer.putInt(56);
+        buffer.putInt(1_000_000 / frameRate);
+        buffer.putInt((int) Math.min(Integer.MAX_VALUE, maxFrameSize * frameRate));
+        buffer.putInt(0);
+        buffer.putInt(AVIF_HASINDEX);
+        buffer.putInt(frameCount);
+        buffer.putInt(0);
+        buffer.putInt(1);
+        buffer.putInt((int) maxFrameSize);
+        buffer.putInt(width);
+        buffer.putInt(height);
+        buffer.put(new byte[16]);
+
+        putFourCC(buffer, "LIST");
+        buffer.putInt(4 + 64 + 48);
+        putFourCC(buffer, "strl");
+        putFourCC(buffer, "strh");
+        buffer.putInt(56);
+        putFourCC(buffer, "vids");
+        putFourCC(buffer, "MJPG");
+        // flags, priority, language, initial frames
+        buffer.putInt(0);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) 0);
+        buffer.putInt(0);
+        // scale and rate: rate / scale = frames per second
+        buffer.putInt(1);
+        buffer.putInt(frameRate);
+        buffer.putInt(0);
+        buffer.putInt(frameCount);
+        buffer.putInt((int) maxFrameSize);
+        buffer.putInt(-1);
+        buffer.putInt(0);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) width);
+        buffer.putShort((short) height);
+        putFourCC(buffer, "strf");
+        buffer.putInt(40);
+        // BITMAPINFOHEADER
+        buffer.putInt(40);
+        buffer.putInt(width);
+        buffer.putInt(height);
+        buffer.putShort((short) 1);
+        buffer.putShort((short) 24);
+        putFourCC(buffer, "MJPG");
+        buffer.putInt(width * height * 3);
+        buffer.put(new byte[16]);
+
+        putFourCC(buffer, "LIST");
+        buffer.putInt((int) moviLength);
+        putFourCC(buffer, "movi");
+        return buffer.flip();
+    }
+
+    // The offsets are relative to the "movi" four character code.
+    private static ByteBuffer index(List<Frame> frames) {
+        final ByteBuffer buffer = allocate(8 + INDEX_ENTRY_LENGTH * frames.size());
+        putFourCC(buffer, "idx1");
+        buffer.putInt(INDEX_ENTRY_LENGTH * frames.size());
+        long offset = 4L;
+        for (Frame frame : frames) {
+            putFourCC(buffer, "00dc");
+            buffer.putInt(AVIIF_KEYFRAME);
+            buffer.putInt((int) offset);
+            buffer.putInt((int) frame.size());
+            offset += 8L + padded(frame.size());
+        }
+        return buffer.flip();
+    }
+
+    private static long padded(long size) {
+        return size + (size & 1L);
+    }
+
+    private static void putFourCC(ByteBuffer buffer, String fourCC) {
+        buffer.put(fourCC.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,306 @@
+package com.giraone.camera.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.giraone.camera.service.api.Settings;
+import com.giraone.camera.service.api.Status;
+import com.giraone.camera.service.api.WorkflowSettings;
+import com.giraone.camera.util.ObjectMapperBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Settings profiles of the cameras. There is one default profile and optional profiles per camera name
+ * ({@link com.giraone.camera.service.api.CameraStatus#cameraName()}, which is also the file name prefix of its images).
+ * <ul>
+ *     <li>A profile is an immutable snapshot - changes replace it in a concurrent map, so the replies to the
+ *     status and image requests of the cameras are built without locks.</li>
+ *     <li>Each snapshot has a camera settings version, which changes only when the camera settings change.</li>
+ *     <li>The version applied by each camera is tracked per camera, so every camera re-initializes exactly once
+ *     after a change of its camera settings.</li>
+ *     <li>Each snapshot has a version, which is sent to the cameras. A camera, that reports the current version,
+ *     gets a reply without the workflow settings.</li>
+ *     <li>The possible replies of a snapshot are serialized once, when the snapshot is created - so a reply costs
+ *     no serialization.</li>
+ * </ul>
+ */
+@Service
+public class CameraSettingsService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CameraSettingsService.class);
+    private static final ObjectMapper MAPPER = ObjectMapperBuilder.build();
+
+    private static final Path SETTINGS_FILE_PATH = Path.of("../camera-settings.json");
+    private static final Path PROFILES_FILE_PATH = Path.of("../camera-settings-profiles.json");
+    private static final Pattern CAMERA_PATTERN = Pattern.compile("[a-zA-Z0-9]+");
+    private static final int DEFAULT_DELAY_MS = new WorkflowSettings().getDelayMs();
+
+    private final Path settingsFile;
+    private final Path profilesFile;
+    // Seeded with the start time, so that no version of a previous run is reused. Seconds fit into 32 bit for the ESP32.
+    private final AtomicLong versionCounter = new AtomicLong(Instant.now().getEpochSecond());
+    private final Map<String, SettingsProfile> profiles = new ConcurrentHashMap<>();
+    private final Map<String, Long> appliedCameraVersions = new ConcurrentHashMap<>();
+    private volatile SettingsProfile defaultProfile;
+
+    @Autowired
+    public CameraSettingsService() {
+        this(SETTINGS_FILE_PATH, PROFILES_FILE_PATH);
+    }
+
+    CameraSettingsService(Path settingsFile, Path profilesFile) {
+        this.settingsFile = settingsFile;
+        this.profilesFile = profilesFile;
+        Settings settings = new Settings();
+        try {
+            settings = MAPPER.readValue(Files.readString(settingsFile), Settings.class);
+        } catch (Exception e) {
+            LOGGER.error("Cannot read settings file \"{}\"! Using default", settingsFile, e);
+        }
+        this.defaultProfile = newProfile(settings, null);
+        try {
+            final Map<String, Settings> stored = MAPPER.readValue(Files.readString(profilesFile), new TypeReference<>() {
+            });
+            stored.forEach((cameraName, cameraSettings) -> profiles.put(cameraName, newProfile(cameraSettings, null)));
+            LOGGER.info("Settings profiles for cameras {} loaded", profiles.keySet());
+        } catch (NoSuchFileException nsfe) {
+            LOGGER.debug("No settings profiles file \"{}\"", profilesFile);
+        } catch (Exception e) {
+            LOGGER.error("Cannot read settings profiles file \"{}\"!", profilesFile, e);
+        }
+    }
+
+    /**
+     * @return the default settings, used by all cameras without an own profile
+     */
+    public Settings getSettings() {
+        return defaultProfile.settings();
+    }
+
+    /**
+     * @param cameraName the camera name
+     * @return the own settings of the camera, if there is a profile for the camera
+     */
+    public Optional<Settings> getSettings(String cameraName) {
+        return Optional.ofNullable(profiles.get(cameraName)).map(SettingsProfile::settings);
+    }
+
+    /**
+     * @return the own settings of all cameras with a profile, ordered by camera name
+     */
+    public Map<String, Settings> getProfiles() {
+        final Map<String, Settings> ret = new TreeMap<>();
+        profiles.forEach((cameraName, profile) -> ret.put(cameraName, profile.settings()));
+        return ret;
+    }
+
+    /**
+     * Replace the default settings. Cameras without an own profile re-initialize, when the camera settings changed.
+     * @param settings the new settings
+     * @throws IOException if the settings cannot be stored - they are used nevertheless
+     */
+    public synchronized void storeSettings(Settings settings) throws IOException {
+        defaultProfile = newProfile(settings, defaultProfile);
+        Files.writeString(settingsFile, MAPPER.writeValueAsString(settings));
+    }
+
+    /**
+     * Create or replace the profile of a camera.
+     * @param cameraName the camera name
+     * @param settings the new settings of the camera
+     * @throws IOException if the profiles cannot be stored - they are used nevertheless
+     */
+    public synchronized void storeSettings(String cameraName, Settings settings) throws IOException {
+        validateCameraName(cameraName);
+        profiles.put(cameraName, newProfile(settings, effectiveProfile(cameraName)));
+        storeProfiles();
+    }
+
+    /**
+     * Delete the profile of a camera, so that it uses the default settings again.
+     * @param cameraName the camera name
+     * @return true, if there was a profile
+     * @throws IOException if the profiles cannot be stored
+     */
+    public synchronized boolean deleteSettings(String cameraName) throws IOException {
+        if (profiles.remove(cameraName) == null) {
+            return false;
+        }
+        storeProfiles();
+        return true;
+    }
+
+    /**
+     * @param cameraName the camera name, may be null
+     * @return the configured delay between two images of the camera
+     */
+    public int getDelayMs(String cameraName) {
+        final WorkflowSettings workflow = effectiveProfile(cameraName).settings().getWorkflow();
+        return workflow != null ? workflow.getDelayMs() : DEFAULT_DELAY_MS;
+    }
+
+    /**
+     * Build the settings reply to a status or image upload request of a camera with an adjusted delay.
+     * @param cameraName the camera name, may be null
+     * @param imageCounter number of images taken by the camera since its start
+     * @param settingsVersion the settings version, the camera has received last - null, if unknown
+     * @param delayMs the delay of the camera until its next image, overriding the one of the workflow settings -
+     *                null to use the one of the workflow settings
+     * @return the serialized {@link Settings} like {@link #reply(String, int, Long)} with the delay
+     */
+    public byte[] reply(String cameraName, int imageCounter, Long settingsVersion, Integer delayMs) {
+        final byte[] ret = reply(cameraName, imageCounter, settingsVersion);
+        if (delayMs == null) {
+            return ret;
+        }
+        // the cached reply is a JSON object - the delay is appended instead of serializing the reply again
+        final byte[] delay = (",\"delayMs\":" + delayMs + "}").getBytes(StandardCharsets.US_ASCII);
+        final byte[] withDelay = Arrays.copyOf(ret, ret.length - 1 + delay.length);
+        System.arraycopy(delay, 0, withDelay, ret.length - 1, delay.length);
+        return withDelay;
+    }
+
+    /**
+     * Build the settings reply to a status or image upload request of a camera.
+     * @param cameraName the camera name, may be null
+     * @param imageCounter number of images taken by the camera since its start
+     * @param settingsVersion the settings version, the camera has received last - null, if unknown
+     * @return the serialized {@link Settings} with status and version of the camera's profile, the workflow
+     * settings, if the camera has not received the current version and the camera settings, if the camera has
+     * to re-initialize - it has not taken an image yet or it has not applied the current camera settings
+     */
+    public byte[] reply(String cameraName, int imageCounter, Long settingsVersion) {
+        final SettingsProfile profile = effectiveProfile(cameraName);
+        boolean changed = false;
+        if (cameraName != null) {
+            // the first request after a server start does not force a re-initialization
+            final Long appliedVersion = appliedCameraVersions.putIfAbsent(cameraName, profile.cameraVersion());
+            changed = appliedVersion != null && appliedVersion != profile.cameraVersion();
+        }
+        if (changed || imageCounter == 0) {
+            LOGGER.info("Forcing camera {} to re-initialize camera settings of version {}.",
+                cameraName, profile.cameraVersion());
+            if (changed) {
+                appliedCameraVersions.put(cameraName, profile.cameraVersion());
+            }
+            // return camera settings, when they were changed or no image was taken yet
+            return profile.cameraReply();
+        }
+        return settingsVersion != null && settingsVersion == profile.version()
+            ? profile.versionReply()
+            : profile.workflowReply();
+    }
+
+    /**
+     * @param message the error message
+     * @return the serialized {@link Settings} with a failure status
+     */
+    public static byte[] errorReply(String message) {
+        return errorReply(message, null);
+    }
+
+    /**
+     * @param message the error message
+     * @param delayMs the delay of the camera until its next try, may be null
+     * @return the serialized {@link Settings} with a failure status and the delay
+     */
+    public static byte[] errorReply(String message, Integer delayMs) {
+        final Settings settings = new Settings(new Status(false, message));
+        settings.setDelayMs(delayMs);
+        return serialize(settings);
+    }
+
+    /**
+     * Get the camera name from an image file name.
+     * @param fileName file name in the form {@code <camera>-<yyMMdd>-<HHmmss>.jpg}
+     * @return the camera name or null, if the file name has no camera name
+     */
+    public static String cameraNameOfImage(String fileName) {
+        final int index = fileName.indexOf('-');
+        return index > 0 ? fileName.substring(0, index) : null;
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    private SettingsProfile effectiveProfile(String cameraName) {
+        final SettingsProfile profile = cameraName != null ? profiles.get(cameraName) : null;
+        return profile != null ? profile : defaultProfile;
+    }
+
+    // The camera settings version of the previous profile is kept, when the camera settings are unchanged.
+    private SettingsProfile newProfile(Settings settings, SettingsProfile previous) {
+        final long version = versionCounter.incrementAndGet();
+        final String cameraJson = cameraSettingsJson(settings);
+        final long cameraVersion = previous != null && previous.cameraJson().equals(cameraJson)
+            ? previous.cameraVersion()
+            : version;
+        return new SettingsProfile(settings, cameraJson, cameraVersion, version,
+            serialize(replySettings(settings, false, false, version)),
+            serialize(replySettings(settings, true, false, version)),
+            serialize(replySettings(settings, true, true, version)));
+    }
+
+    private static Settings replySettings(Settings settings, boolean withWorkflow, boolean withCamera, long version) {
+        final Settings ret = new Settings(settings.getStatus(),
+            withWorkflow ? settings.getWorkflow() : null, withCamera ? settings.getCamera() : null);
+        ret.setVersion(version);
+        return ret;
+    }
+
+    private void storeProfiles() throws IOException {
+        Files.writeString(profilesFile, MAPPER.writeValueAsString(getProfiles()));
+    }
+
+    private static String cameraSettingsJson(Settings settings) {
+        try {
+            return MAPPER.writeValueAsString(settings.getCamera());
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Cannot write camera settings!", e);
+        }
+    }
+
+    private static byte[] serialize(Settings settings) {
+        try {
+            return MAPPER.writeValueAsBytes(settings);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Cannot write settings!", e);
+        }
+    }
+
+    private static void validateCameraName(String cameraName) {
+        if (cameraName == null || !CAMERA_PATTERN.matcher(cameraName).matches()) {
+            throw new IllegalArgumentException("Invalid camera name \"" + cameraName + "\"!");
+        }
+    }
+
+    /**
+     * An immutable snapshot of the settings of one profile.
+     * @param settings the settings - never changed after creation
+     * @param cameraJson the camera settings as JSON, to detect changes
+     * @param cameraVersion the version of the camera settings
+     * @param version the version of the settings
+     * @param versionReply serialized reply with status and version only
+     * @param workflowReply serialized reply with status, version and workflow settings
+     * @param cameraReply serialized reply with status, version, workflow and camera settings
+     */
+    private record SettingsProfile(Settings settings, String cameraJson, long cameraVersion, long version,
+                                   byte[] versionReply, byte[] workflowReply, byte[] cameraReply) {
+    }
+}
@@ -0,0 +1,334 @@
+package com.giraone.camera.service;
+
+import com.giraone.camera.service.model.FileInfo;
+import com.giraone.camera.service.model.FileInfoQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Stream;
+
+/**
+ * In-memory index of the {@link FileInfo} objects of one storage directory (images or videos).
+ * The keys are the flat file names - the files are found by the {@link StorageLayout} of the directory.
+ * <p>
+ * The index is kept in sorted concurrent structures (one per supported sort attribute) and is updated by
+ * {@link FileService} on store, rename and delete. Changes made outside the service are picked up by a
+ * {@link WatchService}. Pages are read directly from these structures - a modification never causes a copy of the
+ * index: the file name order is paged from the sub map of the prefix, the other orders are walked and filtered by the
+ * prefix or - for a prefix with few entries - its range is sorted.
+ */
+public class FileInfoIndex implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileInfoIndex.class);
+
+    private static final char PREFIX_UPPER_BOUND = '\uFFFF';
+    // A prefix range with at most this share (1/n) of the entries is sorted instead of walking the whole order.
+    private static final int SORTED_RANGE_SHARE = 8;
+
+    private static final Comparator<FileInfo> BY_FILE_NAME = Comparator.comparing(FileInfo::getFileName);
+    private static final Comparator<FileInfo> BY_LAST_MODIFIED = Comparator.comparing(FileInfo::getLastModified)
+        .thenComparing(BY_FILE_NAME);
+    private static final Comparator<FileInfo> BY_SIZE = Comparator.comparingLong(FileInfo::getSizeInBytes)
+        .thenComparing(BY_FILE_NAME);
+
+    private final StorageLayout layout;
+    private final Path directory;
+    private final ConcurrentSkipListMap<String, FileInfo> byFileName = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListSet<FileInfo> byLastModified = new ConcurrentSkipListSet<>(BY_LAST_MODIFIED);
+    private final ConcurrentSkipListSet<FileInfo> bySize = new ConcurrentSkipListSet<>(BY_SIZE);
+
+    private WatchService watchService;
+    private Thread watchThread;
+
+    public FileInfoIndex(StorageLayout layout) {
+        this.layout = layout;
+        this.directory = layout.getDirectory();
+    }
+
+    /**
+     * Scan the directory once and - when {@code watch} is true - start a daemon thread, that keeps the index in step
+     * with changes done outside of the service.
+     * @param watch true, if a {@link WatchService} should be registered
+     */
+    public void start(boolean watch) {
+        if (watch) {
+            // Register before the scan, so that no change between scan and registration is lost.
+            startWatcher();
+        }
+        rescan();
+    }
+
+    @Override
+    public void close() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                LOGGER.warn("Cannot close watch service for \"{}\"!", directory, e);
+            }
+        }
+        if (watchThread != null) {
+            watchThread.interrupt();
+        }
+    }
+
+    public int size() {
+        return byFileName.size();
+    }
+
+    public FileInfo get(String fileName) {
+        return byFileName.get(fileName);
+    }
+
+    public synchronized void put(FileInfo fileInfo) {
+        final FileInfo old = byFileName.put(fileInfo.getFileName(), fileInfo);
+        if (old != null) {
+            byLastModified.remove(old);
+            bySize.remove(old);
+        }
+        byLastModified.add(fileInfo);
+        bySize.add(fileInfo);
+    }
+
+    public synchronized void remove(String fileName) {
+        final FileInfo old = byFileName.remove(fileName);
+        if (old != null) {
+            byLastModified.remove(old);
+            bySize.remove(old);
+        }
+    }
+
+    /**
+     * (Re-)read the file info of a single file. If the file does not exist (anymore), it is removed from the index.
+     * @param fileName the file name
+     */
+    public void refresh(String fileName) {
+        if (isExcluded(fileName)) {
+            return;
+        }
+        final Path file = layout.locate(fileName);
+        if (Files.isRegularFile(file)) {
+            try {
+                put(FileInfo.fromFile(file));
+            } catch (RuntimeException exc) {
+                // The file may have been deleted in between
+                if (exc.getCause() instanceof NoSuchFileException) {
+                    remove(fileName);
+                } else {
+                    LOGGER.warn("Cannot index \"{}\"! {}", file, exc.getMessage());
+                }
+            }
+        } else {
+            remove(fileName);
+        }
+    }
+
+    /**
+     * Replace the index content with a fresh scan of the directory.
+     */
+    public synchronized void rescan() {
+        final long start = System.currentTimeMillis();
+        if (!Files.isDirectory(directory)) {
+            LOGGER.error("Cannot scan directory \"{}\"!", directory);
+            return;
+        }
+        final Set<String> found = new HashSet<>();
+        for (Path path : layout.list(null)) {
+            found.add(path.getFileName().toString());
+            refresh(path.getFileName().toString());
+        }
+        byFileName.keySet().retainAll(found);
+        byLastModified.removeIf(fileInfo -> !byFileName.containsKey(fileInfo.getFileName()));
+        bySize.removeIf(fileInfo -> !byFileName.containsKey(fileInfo.getFileName()));
+        LOGGER.info("Indexed {} files of \"{}\" in {} ms.", byFileName.size(), directory, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Return one page of the index.
+     * @param query prefix, offset, limit and sort order
+     * @return the matching file infos, at most {@code query.limit()} entries
+     */
+    public List<FileInfo> list(FileInfoQuery query) {
+        final String attribute = query.order().attribute();
+        final boolean desc = query.order().desc();
+        final String prefix = normalizePrefix(query.prefixFilter());
+        if ("fileName".equals(attribute) || "infos".equals(attribute)) {
+            // "infos" are not known before the page is built, so the order by file name is used.
+            final NavigableMap<String, FileInfo> range = rangeOf(prefix);
+            return page(desc ? range.descendingMap().values() : range.values(), null, query.offset(), query.limit());
+        }
+        final NavigableSet<FileInfo> ordered = orderedBy(attribute);
+        if (prefix != null) {
+            final List<FileInfo> range = smallRangeOf(prefix);
+            if (range != null) {
+                range.sort(desc ? ordered.comparator().reversed() : ordered.comparator());
+                return page(range, null, query.offset(), query.limit());
+            }
+        }
+        return page(desc ? ordered.descendingSet() : ordered, prefix, query.offset(), query.limit());
+    }
+
+    /**
+     * Count the entries with the given file name prefix.
+     * @param prefixFilter the prefix or null for all entries
+     * @return number of matching entries
+     */
+    public int count(String prefixFilter) {
+        final String prefix = normalizePrefix(prefixFilter);
+        return prefix == null ? byFileName.size() : rangeOf(prefix).size();
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    private NavigableMap<String, FileInfo> rangeOf(String prefix) {
+        return prefix == null ? byFileName : byFileName.subMap(prefix, true, prefix + PREFIX_UPPER_BOUND, false);
+    }
+
+    // The entries of the prefix, if they are few compared with the whole index - otherwise null
+    private List<FileInfo> smallRangeOf(String prefix) {
+        final int max = byFileName.size() / SORTED_RANGE_SHARE;
+        final List<FileInfo> ret = new ArrayList<>();
+        for (FileInfo fileInfo : rangeOf(prefix).values()) {
+            if (ret.size() >= max) {
+                return null;
+            }
+            ret.add(fileInfo);
+        }
+        return ret;
+    }
+
+    private NavigableSet<FileInfo> orderedBy(String attribute) {
+        return switch (attribute) {
+            case "lastModified" -> byLastModified;
+            case "sizeInBytes" -> bySize;
+            default -> throw new IllegalArgumentException("Illegal sort attribute \"" + attribute + "\"!");
+        };
+    }
+
+    private void startWatcher() {
+        try {
+            watchService = directory.getFileSystem().newWatchService();
+            register(directory);
+        } catch (IOException e) {
+            LOGGER.error("Cannot watch directory \"{}\"! Changes outside the service are not indexed.", directory, e);
+            return;
+        }
+        watchThread = new Thread(this::watchLoop, "file-index-" + directory.getFileName());
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    private void watchLoop() {
+        while (true) {
+            final WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                LOGGER.info("Stopped watching \"{}\".", directory);
+                return;
+            }
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    LOGGER.warn("Watch events for \"{}\" were lost. Rescanning.", directory);
+                    rescan();
+                } else if (event.context() instanceof Path path && key.watchable() instanceof Path dir) {
+                    final Path changed = dir.resolve(path);
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(changed)) {
+                        watchCreatedDirectory(changed);
+                    } else {
+                        refresh(path.getFileName().toString());
+                    }
+                }
+            }
+            if (!key.reset()) {
+                LOGGER.error("Directory \"{}\" is not watchable anymore!", directory);
+                return;
+            }
+        }
+    }
+
+    // Register the directory and its camera and day directories
+    private void register(Path dir) throws IOException {
+        dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        if (depthOf(dir) < 2) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir,
+                path -> !isExcluded(path.getFileName().toString()) && Files.isDirectory(path))) {
+                for (Path subDirectory : stream) {
+                    register(subDirectory);
+                }
+            }
+        }
+    }
+
+    // Files may be moved into a new directory before it is registered, so its content is indexed afterwards.
+    private void watchCreatedDirectory(Path dir) {
+        if (isExcluded(dir.getFileName().toString()) || depthOf(dir) > 2) {
+            return;
+        }
+        try {
+            register(dir);
+            try (Stream<Path> files = Files.walk(dir, 3 - depthOf(dir))) {
+                files.filter(file -> !isExcluded(file.getFileName().toString()) && Files.isRegularFile(file))
+                    .forEach(file -> refresh(file.getFileName().toString()));
+            }
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.warn("Cannot watch directory \"{}\"! {}", dir, e.getMessage());
+        }
+    }
+
+    private int depthOf(Path dir) {
+        return dir.equals(directory) ? 0 : directory.relativize(dir).getNameCount();
+    }
+
+    private static boolean isExcluded(String fileName) {
+        return fileName.startsWith(".");
+    }
+
+    private static String normalizePrefix(String prefixFilter) {
+        return prefixFilter == null || prefixFilter.isEmpty() ? null : prefixFilter;
+    }
+
+    // Skip the first matching entries and return the next ones - only the visited part of the order is read.
+    private static List<FileInfo> page(Iterable<FileInfo> entries, String prefix, int offset, int limit) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        final List<FileInfo> ret = new ArrayList<>();
+        int skipped = 0;
+        for (FileInfo fileInfo : entries) {
+            if (prefix != null && !fileInfo.getFileName().startsWith(prefix)) {
+                continue;
+            }
+            if (skipped < offset) {
+                skipped++;
+                continue;
+            }
+            ret.add(fileInfo);
+            if (ret.size() >= limit) {
+                break;
+            }
+        }
+        return ret;
+    }
+}
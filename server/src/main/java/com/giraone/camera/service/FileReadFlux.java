@@ -1,7 +1,12 @@
 package com.giraone.camera.service;
 
+import io.netty.buffer.ByteBufAllocator;
 import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
 import reactor.core.CoreSubscriber;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Operators;
@@ -15,59 +20,168 @@ import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 /**
  * Parts of this are copied from
  * https://github.com/Azure/azure-sdk-for-java/blob/main/sdk/core/azure-core/src/main/java/com/azure/core/util/FluxUtil.java
+ * <p>
+ * The chunks are allocated by a {@link ChunkAllocator}: either new heap buffers ({@link #HEAP}) or pooled direct
+ * buffers ({@link PooledChunkAllocator}). Pooled chunks are owned by the subscriber after {@code onNext}; chunks, that
+ * are not emitted because of cancellation, errors or end of file, are released here.
  */
-class FileReadFlux extends Flux<ByteBuffer> {
+class FileReadFlux<T> extends Flux<T> {
+
+    /**
+     * Strategy for the buffers, into which the chunks are read.
+     * @param <T> the type of the emitted chunks
+     */
+    interface ChunkAllocator<T> {
+
+        /**
+         * Allocate a chunk with room for {@code size} bytes.
+         */
+        T allocate(int size);
+
+        /**
+         * The NIO view of the chunk, which is passed to {@link AsynchronousFileChannel#read}.
+         */
+        ByteBuffer target(T chunk, int size);
+
+        /**
+         * Make the read bytes readable and return the chunk, that is emitted.
+         */
+        T filled(T chunk, int bytesRead);
+
+        /**
+         * Release a chunk, that is not emitted.
+         */
+        void release(T chunk);
+    }
+
+    /**
+     * A new heap buffer per chunk - no release needed.
+     */
+    static final ChunkAllocator<ByteBuffer> HEAP = new ChunkAllocator<>() {
+
+        @Override
+        public ByteBuffer allocate(int size) {
+            return ByteBuffer.allocate(size);
+        }
+
+        @Override
+        public ByteBuffer target(ByteBuffer chunk, int size) {
+            return chunk;
+        }
+
+        @Override
+        public ByteBuffer filled(ByteBuffer chunk, int bytesRead) {
+            chunk.position(bytesRead);
+            return chunk.flip();
+        }
+
+        @Override
+        public void release(ByteBuffer chunk) {
+            // garbage collected
+        }
+    };
+
+    /**
+     * Direct buffers from a Netty pool, emitted as {@link DataBuffer}. When written to a Reactor Netty response, the
+     * underlying buffer is passed to the channel without a copy and returned to the pool after it was written.
+     */
+    static final class PooledChunkAllocator implements ChunkAllocator<DataBuffer> {
+
+        private final NettyDataBufferFactory bufferFactory;
+
+        PooledChunkAllocator(ByteBufAllocator byteBufAllocator) {
+            this.bufferFactory = new NettyDataBufferFactory(byteBufAllocator);
+        }
+
+        @Override
+        public DataBuffer allocate(int size) {
+            return bufferFactory.wrap(bufferFactory.getByteBufAllocator().directBuffer(size, size));
+        }
+
+        @Override
+        public ByteBuffer target(DataBuffer chunk, int size) {
+            // shares the memory of the pooled buffer
+            return ((NettyDataBuffer) chunk).getNativeBuffer().nioBuffer(0, size);
+        }
+
+        @Override
+        public DataBuffer filled(DataBuffer chunk, int bytesRead) {
+            return chunk.writePosition(bytesRead);
+        }
+
+        @Override
+        public void release(DataBuffer chunk) {
+            DataBufferUtils.release(chunk);
+        }
+    }
+
     private final AsynchronousFileChannel fileChannel;
+    private final ChunkAllocator<T> allocator;
     private final int chunkSize;
+    private final int readAhead;
     private final long offset;
     private final long length;
 
-    FileReadFlux(AsynchronousFileChannel fileChannel, int chunkSize, long offset, long length) {
+    FileReadFlux(AsynchronousFileChannel fileChannel, ChunkAllocator<T> allocator, int chunkSize, int readAhead,
+                 long offset, long length) {
         this.fileChannel = fileChannel;
+        this.allocator = allocator;
         this.chunkSize = chunkSize;
+        this.readAhead = Math.max(1, readAhead);
         this.offset = offset;
         this.length = length;
     }
 
     @Override
-    public void subscribe(CoreSubscriber<? super ByteBuffer> actual) {
-        FileReadSubscription subscription =
-            new FileReadSubscription(actual, fileChannel, chunkSize, offset, length);
+    public void subscribe(CoreSubscriber<? super T> actual) {
+        FileReadSubscription<T> subscription =
+            new FileReadSubscription<>(actual, fileChannel, allocator, chunkSize, readAhead, offset, length);
         actual.onSubscribe(subscription);
     }
 
-    static final class FileReadSubscription implements Subscription, CompletionHandler<Integer, ByteBuffer> {
-        private static final int NOT_SET = -1;
+    /**
+     * Up to {@code readAhead} chunks are read or buffered at the same time, each at its own position of the file.
+     * The reads may complete in any order - they are emitted in file order. The ring of slots is only accessed
+     * within the drain loop; the completion handlers only change the slot they belong to.
+     */
+    static final class FileReadSubscription<T> implements Subscription, CompletionHandler<Integer, FileReadSubscription.Slot<T>> {
 
-        private final Subscriber<? super ByteBuffer> subscriber;
-        private volatile long position;
+        private final Subscriber<? super T> subscriber;
 
         private final AsynchronousFileChannel fileChannel;
+        private final ChunkAllocator<T> allocator;
         private final int chunkSize;
-        private final long offset;
-        private final long length;
+        private final long end;
+
+        // the following fields are only accessed within the drain loop
+        private final Slot<T>[] ring;
+        private int head;
+        private int count;
+        private long readPosition;
+        private boolean endOfFile;
 
-        private volatile boolean done;
-        private Throwable error;
-        private volatile ByteBuffer next;
         private volatile boolean cancelled;
 
         volatile int wip;
+        @SuppressWarnings("rawtypes")
         static final AtomicIntegerFieldUpdater<FileReadSubscription> ATOMIC_WIP =
             AtomicIntegerFieldUpdater.newUpdater(FileReadSubscription.class, "wip");
 
         volatile long requested;
+        @SuppressWarnings("rawtypes")
         static final AtomicLongFieldUpdater<FileReadSubscription> ATOMIC_REQUESTED =
             AtomicLongFieldUpdater.newUpdater(FileReadSubscription.class, "requested");
 
-        FileReadSubscription(Subscriber<? super ByteBuffer> subscriber, AsynchronousFileChannel fileChannel,
-                             int chunkSize, long offset, long length) {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        FileReadSubscription(Subscriber<? super T> subscriber, AsynchronousFileChannel fileChannel,
+                             ChunkAllocator<T> allocator, int chunkSize, int readAhead, long offset, long length) {
             this.subscriber = subscriber;
             this.fileChannel = fileChannel;
-            this.chunkSize = chunkSize;
-            this.offset = offset;
-            this.length = length;
-            this.position = NOT_SET;
+            this.allocator = allocator;
+            this.chunkSize = Math.max(1, chunkSize);
+            this.end = offset + length;
+            this.ring = new Slot[readAhead];
+            this.readPosition = offset;
         }
 
         @Override
@@ -81,37 +195,37 @@ class FileReadFlux extends Flux<ByteBuffer> {
         @Override
         public void cancel() {
             this.cancelled = true;
+            // the drain loop releases the chunks, that were read but not emitted
+            drain();
         }
 
         @Override
-        public void completed(Integer bytesRead, ByteBuffer buffer) {
-            if (!cancelled) {
-                if (bytesRead == -1) {
-                    done = true;
-                } else {
-                    // use local variable to perform fewer volatile reads
-                    long pos = position;
-                    int bytesWanted = Math.min(bytesRead, maxRequired(pos));
-                    long position2 = pos + bytesWanted;
-                    position = position2;
-                    buffer.position(bytesWanted);
-                    buffer.flip();
-                    next = buffer;
-                    if (position2 >= offset + length) {
-                        done = true;
-                    }
+        public void completed(Integer bytesRead, Slot<T> slot) {
+            if (bytesRead > 0) {
+                slot.filled += bytesRead;
+                if (slot.filled < slot.size) {
+                    // short read - continue with the rest of the chunk
+                    read(slot);
+                    return;
                 }
-                drain();
+            } else {
+                slot.endOfFile = true;
             }
+            finish(slot);
         }
 
         @Override
-        public void failed(Throwable exc, ByteBuffer attachment) {
-            if (!cancelled) {
-                // must set error before setting done to true so that is visible in drain loop
-                error = exc;
-                done = true;
+        public void failed(Throwable exc, Slot<T> slot) {
+            slot.error = exc;
+            finish(slot);
+        }
+
+        private void finish(Slot<T> slot) {
+            if (Slot.STATE.compareAndSet(slot, Slot.PENDING, Slot.COMPLETE)) {
                 drain();
+            } else {
+                // abandoned by the drain loop after cancellation or termination
+                allocator.release(slot.chunk);
             }
         }
 
@@ -119,40 +233,69 @@ class FileReadFlux extends Flux<ByteBuffer> {
             if (ATOMIC_WIP.getAndIncrement(this) != 0) {
                 return;
             }
-            // on first drain (first request) we initiate the first read
-            if (position == NOT_SET) {
-                position = offset;
-                doRead();
-            }
             int missed = 1;
             while (true) {
                 if (cancelled) {
+                    abandonAll();
+                    // exit without reducing wip so that further drains will be NOOP
                     return;
                 }
-                if (ATOMIC_REQUESTED.get(this) > 0) {
-                    boolean emitted = false;
-                    // read d before next to avoid race
-                    boolean d = done;
-                    ByteBuffer bb = next;
-                    if (bb != null) {
-                        next = null;
-                        subscriber.onNext(bb);
-                        emitted = true;
-                    }
-                    if (d) {
-                        if (error != null) {
-                            subscriber.onError(error);
-                        } else {
-                            subscriber.onComplete();
-                        }
-                        // exit without reducing wip so that further drains will be NOOP
+                // keep the ring filled with reads
+                while (count < ring.length && readPosition < end && !endOfFile) {
+                    final int size = (int) Math.min(chunkSize, end - readPosition);
+                    final Slot<T> slot = new Slot<>(allocator.allocate(size), readPosition, size);
+                    slot.target = allocator.target(slot.chunk, size);
+                    ring[(head + count) % ring.length] = slot;
+                    count++;
+                    readPosition += size;
+                    read(slot);
+                }
+                // emit completed reads in file order
+                long r = ATOMIC_REQUESTED.get(this);
+                long emitted = 0L;
+                while (count > 0 && ring[head].state == Slot.COMPLETE) {
+                    final Slot<T> slot = ring[head];
+                    if (slot.error != null) {
+                        abandonAll();
+                        subscriber.onError(slot.error);
                         return;
                     }
-                    if (emitted) {
-                        // do this after checking d to avoid calling read when done
-                        Operators.produced(ATOMIC_REQUESTED, this, 1);
-                        doRead();
+                    if (slot.filled == 0) {
+                        // nothing left to read - the file is shorter than expected
+                        endOfFile = true;
+                        abandonAll();
+                        break;
                     }
+                    if (emitted == r) {
+                        break;
+                    }
+                    ring[head] = null;
+                    head = (head + 1) % ring.length;
+                    count--;
+                    if (slot.endOfFile) {
+                        endOfFile = true;
+                    }
+                    subscriber.onNext(allocator.filled(slot.chunk, slot.filled));
+                    emitted++;
+                    if (cancelled) {
+                        abandonAll();
+                        return;
+                    }
+                }
+                if (count == 0 && (readPosition >= end || endOfFile)) {
+                    subscriber.onComplete();
+                    // exit without reducing wip so that further drains will be NOOP
+                    return;
+                }
+                if (endOfFile) {
+                    // release the reads behind the end of the file
+                    abandonAll();
+                    continue;
+                }
+                if (emitted > 0) {
+                    Operators.produced(ATOMIC_REQUESTED, this, emitted);
+                    // refill the ring with new reads
+                    continue;
                 }
                 missed = ATOMIC_WIP.addAndGet(this, -missed);
                 if (missed == 0) {
@@ -161,27 +304,49 @@ class FileReadFlux extends Flux<ByteBuffer> {
             }
         }
 
-        private void doRead() {
-            // use local variable to limit volatile reads
-            long pos = position;
-            ByteBuffer innerBuf = ByteBuffer.allocate(Math.min(chunkSize, maxRequired(pos)));
-            fileChannel.read(innerBuf, pos, innerBuf, this);
+        private void read(Slot<T> slot) {
+            fileChannel.read(slot.target, slot.position + slot.filled, slot, this);
         }
 
-        private int maxRequired(long pos) {
-            long maxRequired = offset + length - pos;
-            if (maxRequired <= 0) {
-                return 0;
-            } else {
-                int m = (int) (maxRequired);
-                // support really large files by checking for overflow
-                if (m < 0) {
-                    return Integer.MAX_VALUE;
-                } else {
-                    return m;
+        /**
+         * Release all chunks in the ring. Chunks of reads, that are still in flight, are released by their
+         * completion handler.
+         */
+        private void abandonAll() {
+            while (count > 0) {
+                final Slot<T> slot = ring[head];
+                ring[head] = null;
+                head = (head + 1) % ring.length;
+                count--;
+                if (!Slot.STATE.compareAndSet(slot, Slot.PENDING, Slot.ABANDONED)) {
+                    allocator.release(slot.chunk);
                 }
             }
         }
+
+        static final class Slot<T> {
+
+            static final int PENDING = 0;
+            static final int COMPLETE = 1;
+            static final int ABANDONED = 2;
+            @SuppressWarnings("rawtypes")
+            static final AtomicIntegerFieldUpdater<Slot> STATE = AtomicIntegerFieldUpdater.newUpdater(Slot.class, "state");
+
+            final T chunk;
+            final long position;
+            final int size;
+            ByteBuffer target;
+            // written by the completion handler before the state is set to COMPLETE
+            int filled;
+            boolean endOfFile;
+            Throwable error;
+            volatile int state = PENDING;
+
+            Slot(T chunk, long position, int size) {
+                this.chunk = chunk;
+                this.position = position;
+                this.size = size;
+            }
+        }
     }
 }
-
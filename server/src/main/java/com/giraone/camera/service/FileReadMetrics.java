@@ -0,0 +1,98 @@
+package com.giraone.camera.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.buffer.PooledByteBufAllocator;
+import reactor.core.publisher.Flux;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+/**
+ * Metrics of the file read path, tagged with the buffer mode ("pooled" or "heap"), so that both can be compared:
+ * <ul>
+ *     <li>{@code camera.read.bytes} - bytes delivered to the subscribers</li>
+ *     <li>{@code camera.read.buffer.bytes} - capacity of the used buffers; for "heap" this is newly allocated memory,
+ *     for "pooled" memory borrowed from the pool</li>
+ *     <li>{@code camera.read.chunk.size} - distribution of the chunk sizes; its count is the number of reads</li>
+ *     <li>{@code camera.read.duration} - time from subscription to termination of one read stream; together with
+ *     {@code camera.read.bytes} the throughput</li>
+ *     <li>{@code camera.read.pool.direct.used} - direct memory currently used by the buffer pool</li>
+ * </ul>
+ */
+final class FileReadMetrics {
+
+    static final String MODE_POOLED = "pooled";
+    static final String MODE_HEAP = "heap";
+
+    private static final String METRIC_PREFIX = "camera.read";
+
+    private final Mode pooled;
+    private final Mode heap;
+
+    FileReadMetrics(MeterRegistry meterRegistry) {
+        this.pooled = new Mode(meterRegistry, MODE_POOLED);
+        this.heap = new Mode(meterRegistry, MODE_HEAP);
+        Gauge.builder(METRIC_PREFIX + ".pool.direct.used", PooledByteBufAllocator.DEFAULT,
+                allocator -> allocator.metric().usedDirectMemory())
+            .description("Direct memory used by the pool of read buffers")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Add the metrics to a read stream.
+     * @param pooledBuffers true, if the stream uses pooled buffers
+     * @param content the read stream
+     * @param readable returns the number of readable bytes of a chunk
+     * @param capacity returns the capacity of a chunk
+     * @return the measured stream
+     */
+    <T> Flux<T> measure(boolean pooledBuffers, Flux<T> content, ToIntFunction<T> readable, ToIntFunction<T> capacity) {
+        final Mode mode = pooledBuffers ? pooled : heap;
+        return Flux.defer(() -> {
+            final long start = System.nanoTime();
+            return content
+                .doOnNext(chunk -> {
+                    final int bytes = readable.applyAsInt(chunk);
+                    mode.bytes.increment(bytes);
+                    mode.bufferBytes.increment(capacity.applyAsInt(chunk));
+                    mode.chunkSize.record(bytes);
+                })
+                .doFinally(signalType -> mode.duration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    private static final class Mode {
+
+        private final Counter bytes;
+        private final Counter bufferBytes;
+        private final DistributionSummary chunkSize;
+        private final Timer duration;
+
+        Mode(MeterRegistry meterRegistry, String mode) {
+            this.bytes = Counter.builder(METRIC_PREFIX + ".bytes")
+                .description("Bytes read from stored files")
+                .baseUnit("bytes")
+                .tag("buffers", mode)
+                .register(meterRegistry);
+            this.bufferBytes = Counter.builder(METRIC_PREFIX + ".buffer.bytes")
+                .description("Capacity of the buffers used for reading stored files")
+                .baseUnit("bytes")
+                .tag("buffers", mode)
+                .register(meterRegistry);
+            this.chunkSize = DistributionSummary.builder(METRIC_PREFIX + ".chunk.size")
+                .description("Size of the chunks read from stored files")
+                .baseUnit("bytes")
+                .tag("buffers", mode)
+                .register(meterRegistry);
+            this.duration = Timer.builder(METRIC_PREFIX + ".duration")
+                .description("Time to stream one stored file or range")
+                .tag("buffers", mode)
+                .register(meterRegistry);
+        }
+    }
+}
@@ -1,23 +1,33 @@
 package com.giraone.camera.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.giraone.camera.config.ApplicationProperties;
 import com.giraone.camera.service.api.Status;
 import com.giraone.camera.service.model.FileInfo;
 import com.giraone.camera.service.model.FileInfoAndContent;
+import com.giraone.camera.service.model.FileInfoOrder;
 import com.giraone.camera.service.model.FileInfoQuery;
+import com.giraone.camera.service.model.ThumbnailRebuildProgress;
 import com.giraone.camera.service.model.VideoMetaInfo;
 import com.giraone.camera.service.video.VideoService;
+import com.giraone.camera.service.video.model.Storyboard;
 import com.giraone.camera.service.video.model.TimelapseCommand;
-import com.giraone.camera.service.video.model.TimelapseResult;
+import com.giraone.camera.util.ObjectMapperBuilder;
 import com.giraone.imaging.ConversionCommand;
 import com.giraone.imaging.ImagingProvider;
 import com.giraone.imaging.java2.ProviderJava2D;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -26,13 +36,16 @@ import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import static java.nio.file.StandardOpenOption.*;
 
 @Service
@@ -42,6 +55,7 @@ public class FileService {
 
     public static final String DIR_NAME_THUMBS = ".thumbs";
     public static final String DIR_NAME_META = ".meta";
+    public static final String DIR_NAME_STORYBOARDS = ".storyboards";
     public static final Path STORAGE_BASE = Path.of("../STORAGE");
     public static final Path IMAGES_BASE = STORAGE_BASE.resolve("IMAGES");
     public static final Path IMAGES_THUMBS = IMAGES_BASE.resolve(DIR_NAME_THUMBS);
@@ -49,24 +63,77 @@ public class FileService {
     public static final Path VIDEOS_BASE = STORAGE_BASE.resolve("VIDEOS");
     public static final Path VIDEOS_THUMBS = VIDEOS_BASE.resolve(DIR_NAME_THUMBS);
     public static final Path VIDEOS_META = VIDEOS_BASE.resolve(DIR_NAME_META);
+    public static final Path VIDEOS_STORYBOARDS = VIDEOS_BASE.resolve(DIR_NAME_STORYBOARDS);
 
+    // Hidden files are neither listed nor indexed. Left-overs of an aborted encoding are removed on start.
+    private static final String STAGING_FILE_PREFIX = ".staging-";
     private static final Pattern FILE_NAME_PATTERN = Pattern.compile("[a-zA-Z0-9-]+[.][a-z0-9]{3,4}");
+    private static final int THUMBNAIL_WIDTH = 160;
+    private static final int THUMBNAIL_HEIGHT = 120;
+    private static final float THUMBNAIL_QUALITY = 0.85f;
+    // sprite, WebVTT and JSON index of a storyboard
+    private static final List<String> STORYBOARD_EXTENSIONS = List.of(".jpg", ".vtt", ".json");
+    private static final ObjectMapper MAPPER = ObjectMapperBuilder.build();
+    private static final StorageLayout VIDEOS_LAYOUT = new StorageLayout(VIDEOS_BASE);
 
     private final ImagingProvider imagingProvider = new ProviderJava2D();
+    private final SubsamplingThumbnailer subsamplingThumbnailer =
+        new SubsamplingThumbnailer(THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT, THUMBNAIL_QUALITY);
 
     private final VideoService videoService;
+    private final ThumbnailPipeline thumbnailPipeline;
     private final ApplicationProperties applicationProperties;
+    private final StorageLayout imagesLayout;
+    private final FileReadMetrics fileReadMetrics;
+    private final FileInfoIndex imagesIndex;
+    private final FileInfoIndex videosIndex = new FileInfoIndex(VIDEOS_LAYOUT);
+    private final ThumbnailRebuild imagesThumbnailRebuild;
+    private final ThumbnailRebuild videosThumbnailRebuild;
 
     static {
         createDirectory(IMAGES_THUMBS);
         createDirectory(VIDEOS_THUMBS);
         createDirectory(IMAGES_META);
         createDirectory(VIDEOS_META);
+        createDirectory(VIDEOS_STORYBOARDS);
     }
 
-    public FileService(VideoService videoService, ApplicationProperties applicationProperties) {
+    public FileService(VideoService videoService, ThumbnailPipeline thumbnailPipeline, StorageLayout imagesLayout,
+                       ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
         this.videoService = videoService;
+        this.thumbnailPipeline = thumbnailPipeline;
+        this.imagesLayout = imagesLayout;
         this.applicationProperties = applicationProperties;
+        this.fileReadMetrics = new FileReadMetrics(meterRegistry);
+        this.imagesIndex = new FileInfoIndex(imagesLayout);
+        final int rebuildWorkers = applicationProperties.getThumbnailRebuildWorkers() > 0
+            ? applicationProperties.getThumbnailRebuildWorkers()
+            : Runtime.getRuntime().availableProcessors();
+        this.imagesThumbnailRebuild = new ThumbnailRebuild("images", imagesLayout,
+            IMAGES_THUMBS, file -> buildThumbnailFile(Media.IMAGES, file.getFileName().toString()),
+            this::createThumbnailForImage, rebuildWorkers, meterRegistry);
+        this.videosThumbnailRebuild = new ThumbnailRebuild("videos", VIDEOS_LAYOUT,
+            VIDEOS_THUMBS, file -> buildThumbnailFile(Media.VIDEOS, file.getFileName().toString()),
+            this::createThumbnailForVideo, rebuildWorkers, meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        deleteStagingFiles();
+        imagesIndex.start(applicationProperties.isWatchStorage());
+        videosIndex.start(applicationProperties.isWatchStorage());
+        // The index contains the files at their old and new locations, so it is complete during the migration.
+        imagesLayout.startMigration();
+        imagesThumbnailRebuild.resumeIfInterrupted();
+        videosThumbnailRebuild.resumeIfInterrupted();
+    }
+
+    @PreDestroy
+    void stop() {
+        imagesThumbnailRebuild.close();
+        videosThumbnailRebuild.close();
+        imagesIndex.close();
+        videosIndex.close();
     }
 
     public Mono<FileInfo> storeFile(Media type, String filename, Flux<ByteBuffer> content, long contentLength) {
@@ -74,45 +141,101 @@ public class FileService {
         if (isFileNameInvalid(filename)) {
             return returnErrorOnInvalidFileName(filename);
         }
-        final Path file = getFile(type, filename);
+        final Path file = getLayoutOf(type).resolve(filename);
         final AsynchronousFileChannel channel;
         try {
+            createParentDirectory(file);
             channel = AsynchronousFileChannel.open(file, CREATE, WRITE);
         } catch (IOException ioe) {
             LOGGER.warn("Cannot open file to write to \"{}\"!", file, ioe);
             return Mono.error(ioe);
         }
-        final AtomicLong writtenBytes = new AtomicLong(0L);
+        // The reply to the camera is sent, when the bytes are durable - not when the thumbnail exists.
+        // The fsync blocks, so it is not done on the event loop.
         return FluxUtil.writeFile(content, channel)
-            .doOnSuccess(voidIgnore -> {
-                try {
-                    channel.close();
-                    writtenBytes.set(Files.size(file));
-                    LOGGER.info("File \"{}\" with {} bytes written.", file.getFileName(), writtenBytes.get());
-                    if (contentLength > 0 && contentLength != Files.size(file)) {
-                        LOGGER.warn("Content length and file length mismatch {} != {}!", contentLength, Files.size(file));
-                    }
-                } catch (IOException e) {
-                    LOGGER.warn("Cannot close file \"{}\"!", file, e);
-                }
-            })
-            .doOnSuccess(unused -> {
-                if (applicationProperties.isGenerateThumbnails()) {
-                    createThumbnail(type, file);
-                    LOGGER.debug("Thumbnail for \"{}\" stored.", filename);
-                }
-            })
-            .thenReturn(FileInfo.fromFile(file, writtenBytes.get()));
+            .then(Mono.fromCallable(() -> published(type, file, forceAndClose(file, channel, contentLength)))
+                .subscribeOn(Schedulers.boundedElastic()));
     }
 
     public FileInfoAndContent downloadFile(Media type, String filename) throws IOException {
         if (isFileNameInvalid(filename)) {
             throw errorOnInvalidFileName(filename);
         }
-        final Path file = getBaseOf(type).resolve(filename);
+        final Path file = getLayoutOf(type).locate(filename);
         return downloadFile(file);
     }
 
+    /**
+     * Return the meta data of a stored original file without opening it.
+     * @param type images or videos
+     * @param filename the file name
+     * @return the file info from the index or - if not indexed yet - from the file system
+     * @throws NoSuchFileException if the file does not exist
+     */
+    public FileInfo getFileInfo(Media type, String filename) throws IOException {
+        if (isFileNameInvalid(filename)) {
+            throw errorOnInvalidFileName(filename);
+        }
+        final FileInfo indexed = getIndexOf(type).get(filename);
+        if (indexed != null) {
+            return indexed;
+        }
+        final Path file = getLayoutOf(type).locate(filename);
+        if (!Files.isRegularFile(file)) {
+            throw new NoSuchFileException(file.toString());
+        }
+        return FileInfo.fromFile(file);
+    }
+
+    /**
+     * Read a part of a stored original file. The file is opened on subscription and closed on termination.
+     * The buffers may be pooled - they are released, when they are written to the response.
+     * @param type images or videos
+     * @param filename the file name
+     * @param offset the first byte to read
+     * @param length the number of bytes to read
+     * @return the content of the range
+     */
+    public Flux<DataBuffer> readFile(Media type, String filename, long offset, long length) {
+        if (isFileNameInvalid(filename)) {
+            return Flux.error(errorOnInvalidFileName(filename));
+        }
+        final StorageLayout layout = getLayoutOf(type);
+        return readBuffers(layout, layout.locate(filename), offset, length);
+    }
+
+    /**
+     * Return the meta data of a thumbnail without opening it.
+     * @param type images or videos
+     * @param filename the file name of the thumbnail
+     * @return the file info
+     * @throws NoSuchFileException if the thumbnail does not exist
+     */
+    public FileInfo getThumbInfo(Media type, String filename) throws IOException {
+        if (isFileNameInvalid(filename)) {
+            throw errorOnInvalidFileName(filename);
+        }
+        final Path file = getThumbOf(type).resolve(filename);
+        final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        return FileInfo.fromFile(file, attributes.size(),
+            attributes.lastModifiedTime().to(TimeUnit.SECONDS));
+    }
+
+    /**
+     * Read a thumbnail. The file is opened on subscription and closed on termination.
+     * The buffers may be pooled - they are released, when they are written to the response.
+     * @param type images or videos
+     * @param filename the file name of the thumbnail
+     * @param length the number of bytes to read
+     * @return the content of the thumbnail
+     */
+    public Flux<DataBuffer> readThumb(Media type, String filename, long length) {
+        if (isFileNameInvalid(filename)) {
+            return Flux.error(errorOnInvalidFileName(filename));
+        }
+        return readBuffers(null, getThumbOf(type).resolve(filename), 0, length);
+    }
+
     public FileInfoAndContent downloadThumb(Media type, String filename) throws IOException {
         if (isFileNameInvalid(filename)) {
             throw errorOnInvalidFileName(filename);
@@ -129,35 +252,69 @@ public class FileService {
         return downloadFile(file);
     }
 
+    /**
+     * Return the meta data of a file of a video storyboard without opening it.
+     * @param filename the file name of the sprite ({@code .jpg}) or of the index ({@code .vtt} or {@code .json})
+     * @return the file info
+     * @throws NoSuchFileException if there is no storyboard
+     */
+    public FileInfo getStoryboardInfo(String filename) throws IOException {
+        if (isFileNameInvalid(filename)) {
+            throw errorOnInvalidFileName(filename);
+        }
+        final Path file = VIDEOS_STORYBOARDS.resolve(filename);
+        final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        return FileInfo.fromFile(file, attributes.size(),
+            attributes.lastModifiedTime().to(TimeUnit.SECONDS));
+    }
+
+    /**
+     * Read a file of a video storyboard. The file is opened on subscription and closed on termination.
+     * @param filename the file name of the sprite or of the index
+     * @param length the number of bytes to read
+     * @return the content of the file
+     */
+    public Flux<DataBuffer> readStoryboard(String filename, long length) {
+        if (isFileNameInvalid(filename)) {
+            return Flux.error(errorOnInvalidFileName(filename));
+        }
+        return readBuffers(null, VIDEOS_STORYBOARDS.resolve(filename), 0, length);
+    }
+
     public List<FileInfo> listFileInfos(Media type, FileInfoQuery query) {
-        final List<FileInfo> files = listFileInfosUsingFilter(getBaseOf(type), query);
-        files.sort(query.order().getComparator());
-        return files.stream()
-            .skip(query.offset())
-            .limit(query.limit())
+        return getIndexOf(type).list(query).stream()
             .map(fileInfo -> fileInfo.buildInfos())
             .toList();
     }
 
     public int countFileInfos(Media type, String prefixFilter) {
-        return countUsingFilter(getBaseOf(type), prefixFilter);
+        return getIndexOf(type).count(prefixFilter);
     }
 
     public Status rename(Media type, String filename, String newName) {
         if (isFileNameInvalid(filename)) {
             return new Status(false, errorTextInvalidFileName(filename));
         }
-        final Path dir = getBaseOf(type);
-        final Path oldFile = dir.resolve(filename);
-        final Path newFile = dir.resolve(newName);
+        final Path oldFile = getLayoutOf(type).locate(filename);
+        final Path newFile = getLayoutOf(type).resolve(newName);
         LOGGER.error("Rename \"{}\" to \"{}\"", oldFile, newFile);
         try {
+            createParentDirectory(newFile);
             Files.move(oldFile, newFile);
             final Path oldThumbnailFile = buildThumbnailFile(type, filename);
             final Path newThumbnailFile = buildThumbnailFile(type, newName);
             if (Files.exists(oldThumbnailFile)) {
                 Files.move(oldThumbnailFile, newThumbnailFile);
             }
+            if (type == Media.VIDEOS) {
+                // the index contains the name of the sprite, so the storyboard is created again
+                deleteStoryboard(filename);
+                if (isStoryboardEnabled()) {
+                    thumbnailPipeline.submit(newFile, () -> createStoryboard(newFile));
+                }
+            }
+            getIndexOf(type).remove(filename);
+            getIndexOf(type).refresh(newName);
             return new Status(true, null);
         } catch (Exception exc) {
             LOGGER.error("Failed to rename \"{}\" to \"{}\"", oldFile, newFile, exc);
@@ -169,16 +326,20 @@ public class FileService {
         if (isFileNameInvalid(filename)) {
             return new Status(false, "Invalid filename \"" + filename + "\"!");
         }
-        final Path file = getBaseOf(type).resolve(filename);
+        final Path file = getLayoutOf(type).locate(filename);
         LOGGER.error("Delete \"{}\"", file);
         try {
             Files.delete(file);
+            getIndexOf(type).remove(filename);
             final Path thumbnailFile = buildThumbnailFile(type, filename);
             try {
                 Files.deleteIfExists(file);
             } catch (IOException e) {
                 LOGGER.error("Failed to delete thumbnail \"{}\". Error ignored.", thumbnailFile);
             }
+            if (type == Media.VIDEOS) {
+                deleteStoryboard(filename);
+            }
             return new Status(true, null);
         } catch (Exception exc) {
             LOGGER.error("Failed to delete \"{}\"", file, exc);
@@ -186,20 +347,26 @@ public class FileService {
         }
     }
 
-    public int rebuildThumbnails(Media type) {
-        AtomicInteger ret = new AtomicInteger(0);
-        listPathsUsingFilter(getBaseOf(type), null).forEach(file -> {
-            LOGGER.info("Creating thumbnail for {}", file);
-            if (createThumbnail(type, file)) {
-                ret.getAndIncrement();
-            }
-        });
-        return ret.get();
+    /**
+     * Start a rebuild of all missing or outdated thumbnails in the background.
+     * @param type images or videos
+     * @return the progress of the started run - or of the active run, if there is one
+     */
+    public ThumbnailRebuildProgress rebuildThumbnails(Media type) {
+        return getThumbnailRebuildOf(type).start();
+    }
+
+    /**
+     * @param type images or videos
+     * @return the progress of the active or last thumbnail rebuild
+     */
+    public ThumbnailRebuildProgress getRebuildThumbnailsProgress(Media type) {
+        return getThumbnailRebuildOf(type).progress();
     }
 
     public int rebuildMeta(Media type) {
         AtomicInteger ret = new AtomicInteger(0);
-        listPathsUsingFilter(getBaseOf(type), null).forEach(file -> {
+        getLayoutOf(type).list(null).forEach(file -> {
             LOGGER.info("Creating thumbnail for {}", file);
             if (createMetaData(type, file)) {
                 ret.getAndIncrement();
@@ -226,8 +393,21 @@ public class FileService {
         return VIDEOS_THUMBS;
     }
 
-    public static Path getFile(Media type, String filename) {
-        return getBaseOf(type).resolve(filename);
+    /**
+     * @param type images or videos
+     * @param filename the file name
+     * @return the location of the stored file or - if it does not exist - where it is stored in the current layout
+     */
+    public Path getFile(Media type, String filename) {
+        return getLayoutOf(type).locate(filename);
+    }
+
+    /**
+     * @param filename a file name of the API
+     * @return true, if the name is not a plain file name of the storage - e.g. a path or a name with "..".
+     */
+    public static boolean isFileNameInvalid(String filename) {
+        return filename == null || !FILE_NAME_PATTERN.matcher(filename).matches();
     }
 
     public static String buildThumbnailFileName(String fileName) {
@@ -238,30 +418,109 @@ public class FileService {
         return replaceFileExtension(fileName, ".json");
     }
 
-    public Mono<TimelapseResult> createTimelapseVideo(TimelapseCommand timelapseCommand) {
+    /**
+     * Encode a timelapse video and store it. This blocks until ffmpeg is finished - it is called by the timelapse
+     * job threads.
+     * @param timelapseCommand the images and the encoding parameters
+     * @param listener informed about the ffmpeg process and the encoding progress
+     * @return the stored video file
+     * @throws IOException or {@link com.giraone.camera.service.video.OsCallException}, if the video cannot be created
+     */
+    public FileInfo createTimelapseVideo(TimelapseCommand timelapseCommand, VideoService.TimelapseListener listener)
+        throws IOException {
+
+        return storeVideo(timelapseCommand.outputFilename(),
+            stagingFile -> videoService.createTimelapseVideo(timelapseCommand, stagingFile, listener));
+    }
+
+    /**
+     * Export a timelapse video as MJPEG AVI, that contains the selected images as they are. Nothing is encoded and
+     * no external process is used, so the export is limited only by reading the images.
+     * @param timelapseCommand the images and the selection parameters - the output file name is not used
+     * @return the video with its length
+     * @throws IllegalArgumentException if the command is invalid, no image exists or the video gets too large
+     * @throws IOException if the size of the first image cannot be read
+     */
+    public AviFlux.Video exportTimelapseAvi(TimelapseCommand timelapseCommand) throws IOException {
+
+        timelapseCommand.validate();
+        final List<Path> files = videoService.selectTimelapseFrames(timelapseCommand);
+        final List<AviFlux.Frame> frames = new ArrayList<>(files.size());
+        Path firstFile = null;
+        for (Path file : files) {
+            try {
+                final long size = Files.size(file);
+                frames.add(new AviFlux.Frame(size, () -> readFile(imagesLayout, file, 0, size)));
+                firstFile = firstFile == null ? file : firstFile;
+            } catch (IOException ioe) {
+                LOGGER.warn("Skipping \"{}\" in AVI export! {}", file, ioe.getMessage());
+            }
+        }
+        if (firstFile == null) {
+            throw new IllegalArgumentException("No existing images for the timelapse video!");
+        }
+        // The cameras do not change the frame size within a timelapse. Players take the size of each JPEG anyway.
+        final int[] size = AviFlux.jpegSize(firstFile);
+        return AviFlux.mjpeg(frames, timelapseCommand.frameRate(), size[0], size[1],
+            applicationProperties.getZipReadAheadFiles());
+    }
+
+    /**
+     * Store a video, that is written by ffmpeg. ffmpeg writes into a hidden staging file in the videos directory,
+     * that is renamed to its final name, when the video is complete. So the video is never copied and never visible
+     * half written.
+     * @param filename the name of the video
+     * @param writer writes the video into the given file
+     * @return the stored video file
+     * @throws IOException or {@link com.giraone.camera.service.video.OsCallException}, if the video cannot be created
+     */
+    public FileInfo storeVideo(String filename, VideoWriter writer) throws IOException {
 
-        final Path outputVideoFile;
-        try {
-            outputVideoFile = Files.createTempFile("f2mp4-out-", ".mp4");
-            videoService.createTimelapseVideo(timelapseCommand, outputVideoFile);
-        } catch (IOException ioe) {
-            LOGGER.error("createTimelapseVideo failed", ioe);
-            return Mono.just(new TimelapseResult(false, null));
+        if (isFileNameInvalid(filename)) {
+            throw errorOnInvalidFileName(filename);
         }
-        final long contentLength;
+        // ffmpeg takes the container format from the file extension
+        final Path stagingFile = VIDEOS_BASE.resolve(STAGING_FILE_PREFIX + UUID.randomUUID() + ".mp4");
         try {
-            contentLength = Files.size(outputVideoFile);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            writer.write(stagingFile);
+            final Path file = getFile(Media.VIDEOS, filename);
+            Files.move(stagingFile, file, ATOMIC_MOVE, REPLACE_EXISTING);
+            final long size = Files.size(file);
+            LOGGER.info("File \"{}\" with {} bytes written.", file.getFileName(), size);
+            return published(Media.VIDEOS, file, size);
+        } finally {
+            Files.deleteIfExists(stagingFile);
         }
-        final Flux<ByteBuffer> content = FluxUtil.readFile(outputVideoFile);
-        return this.storeFile(Media.VIDEOS, timelapseCommand.outputFilename(), content, contentLength)
-            .thenReturn(new TimelapseResult(true, timelapseCommand.outputFilename()));
     }
 
-    // TODO: No zip - actually just a simple concat
+    /**
+     * @param type images or videos
+     * @param prefixFilter the prefix or null for all files
+     * @return the names of the files in file name order - without reading any file
+     */
+    public List<String> listFileNames(Media type, String prefixFilter) {
+        return getIndexOf(type).list(new FileInfoQuery(prefixFilter, 0, Integer.MAX_VALUE, new FileInfoOrder("fileName", false)))
+            .stream()
+            .map(FileInfo::getFileName)
+            .toList();
+    }
+
+    /**
+     * Stream the given images as a ZIP archive. Files, that do not exist, are skipped.
+     * @param fileNames the names of the images
+     * @return the ZIP archive's content
+     */
     public Flux<ByteBuffer> downloadImagesAsZip(Flux<String> fileNames) {
-        return fileNames.concatMap(fileName -> FluxUtil.readFile(getFile(Media.IMAGES, fileName)));
+        final Flux<ZipFlux.Entry> entries = fileNames.handle((fileName, sink) -> {
+            try {
+                final FileInfo fileInfo = getFileInfo(Media.IMAGES, fileName);
+                sink.next(new ZipFlux.Entry(fileName, fileInfo.getSizeInBytes(), fileInfo.getLastModified(),
+                    () -> readFile(imagesLayout, imagesLayout.locate(fileName), 0, fileInfo.getSizeInBytes())));
+            } catch (IOException | IllegalArgumentException exc) {
+                LOGGER.warn("Skipping \"{}\" in ZIP download! {}", fileName, exc.getMessage());
+            }
+        });
+        return ZipFlux.zip(entries, applicationProperties.getZipReadAheadFiles());
     }
 
     //------------------------------------------------------------------------------------------------------------------
@@ -277,8 +536,13 @@ public class FileService {
 
     boolean createThumbnailForImage(Path originalFile, Path thumbnailFile) {
         try {
-            imagingProvider.createThumbNail(originalFile.toFile(), thumbnailFile.toFile(), MediaType.IMAGE_JPEG_VALUE,
-                160, 120, ConversionCommand.CompressionQuality.LOSSY_BEST, ConversionCommand.SpeedHint.ULTRA_QUALITY);
+            if (applicationProperties.getThumbnailEngine() == ApplicationProperties.ThumbnailEngine.SUBSAMPLING) {
+                subsamplingThumbnailer.createThumbnail(originalFile, thumbnailFile);
+            } else {
+                imagingProvider.createThumbNail(originalFile.toFile(), thumbnailFile.toFile(), MediaType.IMAGE_JPEG_VALUE,
+                    THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT, ConversionCommand.CompressionQuality.LOSSY_BEST,
+                    ConversionCommand.SpeedHint.ULTRA_QUALITY);
+            }
         } catch (Exception exc) {
             LOGGER.warn("Cannot create thumbnail for image \"{}\"! {}", originalFile, exc.getMessage());
             return false;
@@ -311,6 +575,67 @@ public class FileService {
         }
     }
 
+    /**
+     * Create the storyboard sprite of a video and write its index as WebVTT and JSON next to it.
+     */
+    boolean createStoryboard(Path videoFile) {
+        final String filename = videoFile.getFileName().toString();
+        try {
+            final Storyboard storyboard = videoService.createStoryboard(videoFile,
+                buildStoryboardFile(filename, ".jpg"), applicationProperties.getStoryboardTiles());
+            if (storyboard == null) {
+                return false;
+            }
+            Files.writeString(buildStoryboardFile(filename, ".vtt"), storyboard.toWebVtt());
+            MAPPER.writeValue(buildStoryboardFile(filename, ".json").toFile(), storyboard);
+            return true;
+        } catch (Exception exc) {
+            LOGGER.warn("Cannot create storyboard for \"{}\"! {}", videoFile, exc.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Make a completely written file known: add it to the index and queue its thumbnail - for videos also its
+     * meta data and its storyboard.
+     */
+    private FileInfo published(Media type, Path file, long size) {
+        if (applicationProperties.isGenerateThumbnails()) {
+            thumbnailPipeline.submit(file, () -> {
+                if (type == Media.VIDEOS) {
+                    createMetaData(type, file);
+                }
+                final boolean ret = createThumbnail(type, file);
+                if (type == Media.VIDEOS && isStoryboardEnabled()) {
+                    createStoryboard(file);
+                }
+                return ret;
+            });
+        }
+        final FileInfo fileInfo = FileInfo.fromFile(file, size);
+        getIndexOf(type).put(fileInfo);
+        return fileInfo;
+    }
+
+    private static long forceAndClose(Path file, AsynchronousFileChannel channel, long contentLength) {
+        long ret = 0L;
+        try (channel) {
+            channel.force(false);
+        } catch (IOException e) {
+            LOGGER.warn("Cannot close file \"{}\"!", file, e);
+        }
+        try {
+            ret = Files.size(file);
+            LOGGER.info("File \"{}\" with {} bytes written.", file.getFileName(), ret);
+            if (contentLength > 0 && contentLength != ret) {
+                LOGGER.warn("Content length and file length mismatch {} != {}!", contentLength, ret);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Cannot read size of file \"{}\"!", file, e);
+        }
+        return ret;
+    }
+
     private FileInfoAndContent downloadFile(Path file) throws IOException {
 
         final AsynchronousFileChannel channel;
@@ -323,12 +648,62 @@ public class FileService {
             LOGGER.warn("Cannot open file to read from \"{}\"! {}", file, ioe.getMessage());
             throw ioe;
         }
-        final Flux<ByteBuffer> content = FluxUtil.readFile(channel);
+        final Flux<ByteBuffer> content = FluxUtil.readFile(channel)
+            .doFinally(signalType -> closeQuietly(channel));
         return new FileInfoAndContent(content, FileInfo.fromFile(file));
     }
 
-    private static boolean isFileNameInvalid(String filename) {
-        return !FILE_NAME_PATTERN.matcher(filename).matches();
+    private Flux<DataBuffer> readBuffers(StorageLayout layout, Path file, long offset, long length) {
+        if (applicationProperties.isReadBuffersPooled()) {
+            final int chunkSize = chunkSizeFor(length);
+            final int readAhead = applicationProperties.getReadAheadChunks();
+            return fileReadMetrics.measure(true,
+                Flux.using(
+                    () -> openToRead(layout, file),
+                    channel -> FluxUtil.readFilePooled(channel, chunkSize, readAhead, offset, length),
+                    FileService::closeQuietly),
+                DataBuffer::readableByteCount, DataBuffer::capacity);
+        }
+        return readFile(layout, file, offset, length).map(DefaultDataBufferFactory.sharedInstance::wrap);
+    }
+
+    private Flux<ByteBuffer> readFile(StorageLayout layout, Path file, long offset, long length) {
+        final int chunkSize = chunkSizeFor(length);
+        final int readAhead = applicationProperties.getReadAheadChunks();
+        return fileReadMetrics.measure(false,
+            Flux.using(
+                () -> openToRead(layout, file),
+                channel -> FluxUtil.readFile(channel, chunkSize, readAhead, offset, length),
+                FileService::closeQuietly),
+            ByteBuffer::remaining, ByteBuffer::capacity);
+    }
+
+    // An image may be moved by the migration of the images layout between locating and opening it.
+    // The layout is null for thumbnails and storyboards, that are never moved.
+    private static AsynchronousFileChannel openToRead(StorageLayout layout, Path file) throws IOException {
+        try {
+            return AsynchronousFileChannel.open(file, READ);
+        } catch (NoSuchFileException nsfe) {
+            final Path moved = layout != null ? layout.relocate(file) : null;
+            if (moved == null) {
+                throw nsfe;
+            }
+            return AsynchronousFileChannel.open(moved, READ);
+        }
+    }
+
+    private int chunkSizeFor(long length) {
+        return applicationProperties.isReadChunkAdaptive()
+            ? FluxUtil.adaptiveChunkSize(length)
+            : FluxUtil.DEFAULT_CHUNK_SIZE;
+    }
+
+    private static void closeQuietly(AsynchronousFileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ioe) {
+            LOGGER.warn("Cannot close channel! {}", ioe.getMessage());
+        }
     }
 
     private static Mono<FileInfo> returnErrorOnInvalidFileName(String filename) {
@@ -343,8 +718,16 @@ public class FileService {
         return "Invalid filename \"" + filename + "\"!";
     }
 
-    private static Path getBaseOf(Media type) {
-        return type == Media.IMAGES ? IMAGES_BASE : VIDEOS_BASE;
+    private StorageLayout getLayoutOf(Media type) {
+        return type == Media.IMAGES ? imagesLayout : VIDEOS_LAYOUT;
+    }
+
+    private FileInfoIndex getIndexOf(Media type) {
+        return type == Media.IMAGES ? imagesIndex : videosIndex;
+    }
+
+    private ThumbnailRebuild getThumbnailRebuildOf(Media type) {
+        return type == Media.IMAGES ? imagesThumbnailRebuild : videosThumbnailRebuild;
     }
 
     private static Path getThumbOf(Media type) {
@@ -360,6 +743,25 @@ public class FileService {
         return getThumbOf(type).resolve(thumbnailFileName);
     }
 
+    private static Path buildStoryboardFile(String filename, String extension) {
+        return VIDEOS_STORYBOARDS.resolve(replaceFileExtension(filename, extension));
+    }
+
+    private boolean isStoryboardEnabled() {
+        return applicationProperties.getStoryboardTiles() > 0;
+    }
+
+    private static void deleteStoryboard(String filename) {
+        for (String extension : STORYBOARD_EXTENSIONS) {
+            final Path file = buildStoryboardFile(filename, extension);
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                LOGGER.error("Failed to delete storyboard \"{}\". Error ignored.", file);
+            }
+        }
+    }
+
     private static Path buildMetaFile(Media type, String filename) {
         final String metaFileName = buildMetaFileName(filename);
         return getMetaOf(type).resolve(metaFileName);
@@ -374,6 +776,23 @@ public class FileService {
         return fileName.substring(0, lastDotIndex) + newExtension;
     }
 
+    private static void deleteStagingFiles() {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(VIDEOS_BASE, STAGING_FILE_PREFIX + "*")) {
+            for (Path path : stream) {
+                LOGGER.info("Deleting staging file \"{}\" of an aborted encoding.", path.getFileName());
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Cannot delete staging files in \"{}\"!", VIDEOS_BASE, e);
+        }
+    }
+
+    private static void createParentDirectory(Path file) throws IOException {
+        if (!Files.isDirectory(file.getParent())) {
+            Files.createDirectories(file.getParent());
+        }
+    }
+
     private static void createDirectory(Path directory) {
         if (!Files.isDirectory(directory)) {
             try {
@@ -386,44 +805,12 @@ public class FileService {
         }
     }
 
-    private static List<Path> listPathsUsingFilter(Path dir, String prefixFilter) {
-        final List<Path> files = new ArrayList<>(100);
-        final DirectoryStream.Filter<? super Path> filter = path -> {
-            final String fileName = path.getFileName().toString();
-            return !fileName.startsWith(".") && (prefixFilter == null || fileName.startsWith(prefixFilter));
-        };
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, filter)) {
-            for (Path path : stream) {
-                files.add(path);
-            }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        return files;
-    }
-
-    private static int countUsingFilter(Path dir, String prefixFilter) {
-        final AtomicInteger ret = new AtomicInteger(0);
-        final DirectoryStream.Filter<? super Path> filter = path -> {
-            final String fileName = path.getFileName().toString();
-            return !fileName.startsWith(".") && (prefixFilter == null || fileName.startsWith(prefixFilter));
-        };
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, filter)) {
-            stream.spliterator().forEachRemaining(path -> ret.getAndIncrement());
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        return ret.get();
-    }
-
-    private static List<FileInfo> listFileInfosUsingFilter(Path dir, FileInfoQuery query) {
-        return listPathsUsingFilter(dir, query.prefixFilter())
-            .stream()
-            .map(FileInfo::fromFile)
-            .collect(Collectors.toList());
-    }
-
     public enum Media {
         IMAGES, VIDEOS
     }
+
+    @FunctionalInterface
+    public interface VideoWriter {
+        void write(Path file) throws IOException;
+    }
 }
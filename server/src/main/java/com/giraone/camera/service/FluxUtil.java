@@ -1,7 +1,9 @@
 package com.giraone.camera.service;
 
+import io.netty.buffer.PooledByteBufAllocator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
 import reactor.core.Exceptions;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -26,6 +28,23 @@ public final class FluxUtil {
     private static final Logger LOGGER = LoggerFactory.getLogger(FluxUtil.class);
 
     public static final int DEFAULT_CHUNK_SIZE = 1024 * 64;
+    /**
+     * Files up to this size are read with a single read.
+     */
+    public static final int SINGLE_READ_LIMIT = 1024 * 256;
+    /**
+     * Upper limit of the adaptive chunk size.
+     */
+    public static final int MAX_CHUNK_SIZE = 1024 * 1024;
+    /**
+     * Default number of reads in flight - one read at a time.
+     */
+    public static final int DEFAULT_READ_AHEAD = 1;
+    // Aim for at least this number of chunks for files larger than SINGLE_READ_LIMIT
+    private static final int MIN_CHUNKS = 16;
+
+    private static final FileReadFlux.PooledChunkAllocator POOLED_ALLOCATOR =
+        new FileReadFlux.PooledChunkAllocator(PooledByteBufAllocator.DEFAULT);
 
     // Hide
     private FluxUtil() {
@@ -169,7 +188,53 @@ public final class FluxUtil {
      * @return The partial content of the channel
      */
     public static Flux<ByteBuffer> readFile(AsynchronousFileChannel fileChannel, int chunkSize, long offset, long length) {
-        return new FileReadFlux(fileChannel, chunkSize, offset, length);
+        return readFile(fileChannel, chunkSize, DEFAULT_READ_AHEAD, offset, length);
+    }
+
+    /**
+     * Creates a {@link Flux} from an {@link AsynchronousFileChannel} which reads part of a file into chunks of the
+     * given size with up to {@code readAhead} reads in flight.
+     * @param fileChannel The file channel.
+     * @param chunkSize the size of file chunks to read.
+     * @param readAhead the number of chunks read in parallel or buffered before they are requested.
+     * @param offset The offset in the file to begin reading.
+     * @param length The number of bytes to read from the file.
+     * @return The partial content of the channel
+     */
+    public static Flux<ByteBuffer> readFile(AsynchronousFileChannel fileChannel, int chunkSize, int readAhead,
+                                            long offset, long length) {
+        return new FileReadFlux<>(fileChannel, FileReadFlux.HEAP, chunkSize, readAhead, offset, length);
+    }
+
+    /**
+     * Creates a {@link Flux} from an {@link AsynchronousFileChannel} which reads part of a file into pooled direct
+     * buffers. The subscriber owns the emitted buffers and has to release them - Spring WebFlux does this, when they
+     * are written to the response.
+     * @param fileChannel The file channel.
+     * @param chunkSize the size of file chunks to read.
+     * @param readAhead the number of chunks read in parallel or buffered before they are requested.
+     * @param offset The offset in the file to begin reading.
+     * @param length The number of bytes to read from the file.
+     * @return The partial content of the channel
+     */
+    public static Flux<DataBuffer> readFilePooled(AsynchronousFileChannel fileChannel, int chunkSize, int readAhead,
+                                                  long offset, long length) {
+        return new FileReadFlux<>(fileChannel, POOLED_ALLOCATOR, chunkSize, readAhead, offset, length);
+    }
+
+    /**
+     * Chunk size for reading {@code length} bytes: small files (thumbnails, meta data) are read with one read, larger
+     * files with chunks growing with the file size, so that large videos need fewer reads.
+     * @param length The number of bytes to read.
+     * @return chunk size between 1 and {@link #MAX_CHUNK_SIZE}
+     */
+    public static int adaptiveChunkSize(long length) {
+        if (length <= SINGLE_READ_LIMIT) {
+            return (int) Math.max(1L, length);
+        }
+        // power of two between DEFAULT_CHUNK_SIZE and MAX_CHUNK_SIZE
+        final long target = Math.min(MAX_CHUNK_SIZE, Math.max(DEFAULT_CHUNK_SIZE, length / MIN_CHUNKS));
+        return Integer.highestOneBit((int) target);
     }
 
     /**
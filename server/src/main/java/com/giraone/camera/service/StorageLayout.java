@@ -0,0 +1,300 @@
+package com.giraone.camera.service;
+
+import com.giraone.camera.config.ApplicationProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+
+/**
+ * Resolver from the flat file names of the API to the files of one storage directory (images or videos).
+ * <p>
+ * In the flat layout all files are in the storage directory. In the sharded layout an image
+ * {@code <camera>-<yyMMdd>-<HHmmss>.jpg} is stored in {@code <camera>/<yyyy-MM-dd>/} below the storage directory, so
+ * that no directory grows beyond the images of one camera and day. Files, whose names do not follow this scheme, stay
+ * in the storage directory.
+ * <p>
+ * After the layout of the images was changed, {@link #startMigration()} moves the existing files in the background.
+ * Until a file is moved, it is found at its old location: it is looked up at the location of the layout first and then
+ * at the other one.
+ */
+public class StorageLayout implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StorageLayout.class);
+
+    private static final Pattern SHARDED_FILE_NAME = Pattern.compile("([a-zA-Z0-9]+)-(\\d{2})(\\d{2})(\\d{2})-.+");
+    private static final Pattern DAY_DIRECTORY_NAME = Pattern.compile("\\d{2}(\\d{2})-(\\d{2})-(\\d{2})");
+    // storage directory, camera directories, day directories, files
+    private static final int MAX_DEPTH = 3;
+    private static final int MIGRATION_LOG_INTERVAL = 10000;
+
+    private final Path directory;
+    private final boolean shardable;
+    private final boolean sharded;
+
+    private Thread migrationThread;
+    private volatile boolean closed;
+
+    /**
+     * A layout, that is always flat.
+     * @param directory the storage directory
+     */
+    public StorageLayout(Path directory) {
+        this.directory = directory;
+        this.shardable = false;
+        this.sharded = false;
+    }
+
+    /**
+     * @param directory the storage directory
+     * @param imagesLayout the configured layout
+     */
+    public StorageLayout(Path directory, ApplicationProperties.ImagesLayout imagesLayout) {
+        this.directory = directory;
+        this.shardable = true;
+        this.sharded = imagesLayout == ApplicationProperties.ImagesLayout.CAMERA_DAY;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @param fileName the file name
+     * @return the location of the file in this layout - the parent directory may not exist yet
+     */
+    public Path resolve(String fileName) {
+        return sharded ? shardOf(fileName) : directory.resolve(fileName);
+    }
+
+    /**
+     * @param fileName the file name
+     * @return the location of an existing file, that may not be migrated yet, or {@link #resolve(String)}, if there is
+     * no such file
+     */
+    public Path locate(String fileName) {
+        final Path ret = resolve(fileName);
+        if (!shardable || Files.exists(ret)) {
+            return ret;
+        }
+        final Path other = sharded ? directory.resolve(fileName) : shardOf(fileName);
+        return !other.equals(ret) && Files.exists(other) ? other : ret;
+    }
+
+    /**
+     * Locate a file again, that does not exist anymore at the location, where it was looked up before.
+     * @param file the location of the file, that was looked up before
+     * @return the new location of the file or null, if the file is not part of this layout or was not moved
+     */
+    public Path relocate(Path file) {
+        if (!shardable || file.getFileName() == null) {
+            return null;
+        }
+        final String fileName = file.getFileName().toString();
+        if (!file.equals(directory.resolve(fileName)) && !file.equals(shardOf(fileName))) {
+            return null;
+        }
+        final Path ret = locate(fileName);
+        return ret.equals(file) ? null : ret;
+    }
+
+    /**
+     * List the files of the storage directory and of its camera and day directories - in both layouts, so that files,
+     * which are not migrated yet, are included. Directories, that cannot contain a file with the prefix, are not read.
+     * Hidden files and directories are skipped.
+     * @param prefixFilter the file name prefix, e.g. {@code <camera>-<yyMM>} for the images of one camera and month,
+     *                     or null for all files
+     * @return the files in no particular order
+     */
+    public List<Path> list(String prefixFilter) {
+        return walk(prefixFilter, shardable ? MAX_DEPTH : 1);
+    }
+
+    /**
+     * Start a daemon thread, that moves all files, which are not at their location in this layout. The service keeps
+     * running meanwhile: a file is moved by a rename within the file system, so it is never missing or incomplete.
+     */
+    public void startMigration() {
+        if (!shardable) {
+            return;
+        }
+        migrationThread = new Thread(this::migrate, "storage-migration-" + directory.getFileName());
+        migrationThread.setDaemon(true);
+        migrationThread.setPriority(Thread.NORM_PRIORITY - 1);
+        migrationThread.start();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (migrationThread != null) {
+            migrationThread.interrupt();
+        }
+    }
+
+    /**
+     * Move all files, which are not at their location in this layout.
+     * @return the number of moved files
+     */
+    int migrate() {
+        final long start = System.currentTimeMillis();
+        // Into the sharded layout only the files of the storage directory are moved, back into the flat one all others.
+        final List<Path> files = sharded
+            ? walk(null, 1)
+            : walk(null, MAX_DEPTH).stream().filter(file -> !directory.equals(file.getParent())).toList();
+        int moved = 0;
+        for (Path file : files) {
+            if (closed) {
+                LOGGER.info("Migration of \"{}\" stopped after {} of {} files.", directory, moved, files.size());
+                return moved;
+            }
+            final Path target = resolve(file.getFileName().toString());
+            if (!target.equals(file) && move(file, target)) {
+                moved++;
+                if (moved % MIGRATION_LOG_INTERVAL == 0) {
+                    LOGGER.info("Migration of \"{}\": {} of {} files moved.", directory, moved, files.size());
+                }
+            }
+        }
+        if (!sharded) {
+            deleteEmptyDirectories();
+        }
+        if (moved > 0) {
+            LOGGER.info("Moved {} files of \"{}\" into the {} layout in {} ms.", moved, directory,
+                sharded ? "camera-day" : "flat", System.currentTimeMillis() - start);
+        }
+        return moved;
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    private Path shardOf(String fileName) {
+        final Matcher matcher = SHARDED_FILE_NAME.matcher(fileName);
+        if (!matcher.matches()) {
+            return directory.resolve(fileName);
+        }
+        return directory.resolve(matcher.group(1))
+            .resolve("20" + matcher.group(2) + "-" + matcher.group(3) + "-" + matcher.group(4))
+            .resolve(fileName);
+    }
+
+    // The prefix of all file names in a camera or day directory
+    private String prefixOf(Path dir) {
+        final Path relative = directory.relativize(dir);
+        final String ret = relative.getName(0) + "-";
+        if (relative.getNameCount() < 2) {
+            return ret;
+        }
+        final Matcher matcher = DAY_DIRECTORY_NAME.matcher(relative.getName(1).toString());
+        return matcher.matches() ? ret + matcher.group(1) + matcher.group(2) + matcher.group(3) + "-" : ret;
+    }
+
+    private List<Path> walk(String prefixFilter, int maxDepth) {
+        final String prefix = prefixFilter == null || prefixFilter.isEmpty() ? null : prefixFilter;
+        final List<Path> ret = new ArrayList<>();
+        try {
+            Files.walkFileTree(directory, Set.of(), maxDepth, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                    if (dir.equals(directory)) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    if (isHidden(dir)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    final String dirPrefix = prefixOf(dir);
+                    return prefix == null || prefix.startsWith(dirPrefix) || dirPrefix.startsWith(prefix)
+                        ? FileVisitResult.CONTINUE
+                        : FileVisitResult.SKIP_SUBTREE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    if (attributes.isRegularFile() && !isHidden(file)
+                        && (prefix == null || file.getFileName().toString().startsWith(prefix))) {
+                        ret.add(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    // Files and directories may be deleted or moved during the walk.
+                    if (!(exc instanceof NoSuchFileException)) {
+                        LOGGER.warn("Cannot read \"{}\"! {}", file, exc.getMessage());
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            LOGGER.error("Cannot scan directory \"{}\"!", directory, e);
+        }
+        return ret;
+    }
+
+    private boolean move(Path file, Path target) {
+        try {
+            if (Files.exists(target)
+                && Files.getLastModifiedTime(target).compareTo(Files.getLastModifiedTime(file)) >= 0) {
+                // The file was written again after the layout was changed - the old version is obsolete.
+                LOGGER.info("Deleting \"{}\", that is replaced by \"{}\".", file, target);
+                Files.delete(file);
+                return false;
+            }
+            Files.createDirectories(target.getParent());
+            Files.move(file, target, ATOMIC_MOVE);
+            return true;
+        } catch (NoSuchFileException nsfe) {
+            // deleted or renamed in between
+            return false;
+        } catch (IOException ioe) {
+            LOGGER.warn("Cannot move \"{}\" to \"{}\"! {}", file, target, ioe.getMessage());
+            return false;
+        }
+    }
+
+    private void deleteEmptyDirectories() {
+        try {
+            Files.walkFileTree(directory, Set.of(), MAX_DEPTH, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                    return !dir.equals(directory) && isHidden(dir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+                    if (!dir.equals(directory)) {
+                        try {
+                            Files.delete(dir);
+                        } catch (DirectoryNotEmptyException ignored) {
+                            // files, that were not moved, or files of an unknown structure
+                        } catch (IOException ioe) {
+                            LOGGER.warn("Cannot delete directory \"{}\"! {}", dir, ioe.getMessage());
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            LOGGER.error("Cannot delete empty directories of \"{}\"!", directory, e);
+        }
+    }
+
+    private static boolean isHidden(Path path) {
+        return path.getFileName().toString().startsWith(".");
+    }
+}
@@ -0,0 +1,136 @@
+package com.giraone.camera.service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+/**
+ * Thumbnail creation, that decodes the image at a reduced resolution. With source subsampling the ImageIO reader
+ * only converts and stores every n-th pixel of every n-th row, so a UXGA frame is never held at full size for a
+ * 160x120 thumbnail. The decoded image is at least twice the thumbnail size, so the remaining resize is a single
+ * cheap bilinear step. Reader and writer instances are reused per thread.
+ */
+final class SubsamplingThumbnailer {
+
+    // The decoded image is at least this factor larger than the thumbnail - the bilinear resize needs that for quality.
+    private static final int OVERSAMPLING = 2;
+
+    private final int maxWidth;
+    private final int maxHeight;
+    private final float quality;
+    private final ImageReaderSpi jpegReaderSpi;
+    private final ThreadLocal<ImageReader> jpegReader;
+    private final ThreadLocal<ImageWriter> jpegWriter;
+
+    /**
+     * @param maxWidth maximum width of the thumbnail
+     * @param maxHeight maximum height of the thumbnail
+     * @param quality JPEG quality of the thumbnail from 0.0 to 1.0
+     */
+    SubsamplingThumbnailer(int maxWidth, int maxHeight, float quality) {
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+        this.quality = quality;
+        this.jpegReaderSpi = ImageIO.getImageReadersByFormatName("jpeg").next().getOriginatingProvider();
+        this.jpegReader = ThreadLocal.withInitial(() -> ImageIO.getImageReadersByFormatName("jpeg").next());
+        this.jpegWriter = ThreadLocal.withInitial(() -> ImageIO.getImageWritersByFormatName("jpeg").next());
+    }
+
+    /**
+     * Create a JPEG thumbnail, that fits into the maximum size keeping the aspect ratio.
+     * @param originalFile the image - JPEG or any other format supported by ImageIO
+     * @param thumbnailFile the JPEG file to be written
+     * @throws IOException if the image cannot be read or the thumbnail cannot be written
+     */
+    void createThumbnail(Path originalFile, Path thumbnailFile) throws IOException {
+        final BufferedImage decoded = decode(originalFile);
+        final double scale = Math.min(1.0, Math.min((double) maxWidth / decoded.getWidth(), (double) maxHeight / decoded.getHeight()));
+        final BufferedImage thumbnail = resize(decoded,
+            Math.max(1, (int) Math.round(decoded.getWidth() * scale)),
+            Math.max(1, (int) Math.round(decoded.getHeight() * scale)));
+        write(thumbnail, thumbnailFile);
+    }
+
+    /**
+     * The largest subsampling factor, that keeps the decoded image at least {@link #OVERSAMPLING} times larger than
+     * the thumbnail.
+     */
+    static int subsampling(int width, int height, int maxWidth, int maxHeight) {
+        final double reduction = Math.max((double) width / maxWidth, (double) height / maxHeight);
+        return Math.max(1, (int) (reduction / OVERSAMPLING));
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    private BufferedImage decode(Path originalFile) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(originalFile.toFile())) {
+            if (input == null) {
+                throw new IOException("Cannot open \"" + originalFile + "\"!");
+            }
+            final boolean jpeg = jpegReaderSpi.canDecodeInput(input);
+            final ImageReader reader = jpeg ? jpegReader.get() : otherReader(input, originalFile);
+            try {
+                reader.setInput(input, true, true);
+                final int factor = subsampling(reader.getWidth(0), reader.getHeight(0), maxWidth, maxHeight);
+                final ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(factor, factor, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                if (jpeg) {
+                    reader.setInput(null);
+                } else {
+                    reader.dispose();
+                }
+            }
+        }
+    }
+
+    private static ImageReader otherReader(ImageInputStream input, Path originalFile) throws IOException {
+        final Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            throw new IOException("Unsupported image format of \"" + originalFile + "\"!");
+        }
+        return readers.next();
+    }
+
+    private static BufferedImage resize(BufferedImage image, int width, int height) {
+        final BufferedImage ret = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D graphics = ret.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return ret;
+    }
+
+    private void write(BufferedImage thumbnail, Path thumbnailFile) throws IOException {
+        final ImageWriter writer = jpegWriter.get();
+        final ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(quality);
+        try (OutputStream out = Files.newOutputStream(thumbnailFile);
+             ImageOutputStream output = new MemoryCacheImageOutputStream(out)) {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(thumbnail, null, null), param);
+        } finally {
+            writer.setOutput(null);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.giraone.camera.service;
+
+import com.giraone.camera.config.ApplicationProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Background stage for thumbnail generation, so that uploads do not wait for image processing.
+ * <ul>
+ *     <li>bounded work queue - when it is full, the request is dropped and counted (rebuild-thumbnails repairs it)</li>
+ *     <li>configurable number of worker threads</li>
+ *     <li>requests for a file, that is already waiting in the queue, are coalesced</li>
+ *     <li>metrics for queue depth, waiting time, processing time and outcome</li>
+ * </ul>
+ */
+@Component
+public class ThumbnailPipeline {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ThumbnailPipeline.class);
+
+    private static final String METRIC_PREFIX = "camera.thumbnails";
+
+    private final ThreadPoolExecutor executor;
+    private final Set<Path> pending = ConcurrentHashMap.newKeySet();
+
+    private final Timer waitTimer;
+    private final Timer processTimer;
+    private final Counter coalescedCounter;
+    private final Counter rejectedCounter;
+    private final Counter failedCounter;
+
+    public ThumbnailPipeline(ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+
+        final int workers = Math.max(1, applicationProperties.getThumbnailWorkers());
+        final AtomicInteger threadCounter = new AtomicInteger(0);
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(Math.max(1, applicationProperties.getThumbnailQueueCapacity())),
+            runnable -> {
+                final Thread thread = new Thread(runnable, "thumbnail-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+
+        Gauge.builder(METRIC_PREFIX + ".queue.depth", executor, e -> e.getQueue().size())
+            .description("Number of thumbnail requests waiting for a worker")
+            .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".active", executor, ThreadPoolExecutor::getActiveCount)
+            .description("Number of thumbnails currently being created")
+            .register(meterRegistry);
+        this.waitTimer = Timer.builder(METRIC_PREFIX + ".wait")
+            .description("Time a thumbnail request waited in the queue")
+            .register(meterRegistry);
+        this.processTimer = Timer.builder(METRIC_PREFIX + ".process")
+            .description("Time needed to create a thumbnail")
+            .register(meterRegistry);
+        this.coalescedCounter = Counter.builder(METRIC_PREFIX + ".coalesced")
+            .description("Requests merged with an already queued request for the same file")
+            .register(meterRegistry);
+        this.rejectedCounter = Counter.builder(METRIC_PREFIX + ".rejected")
+            .description("Requests dropped, because the queue was full")
+            .register(meterRegistry);
+        this.failedCounter = Counter.builder(METRIC_PREFIX + ".failed")
+            .description("Thumbnails, that could not be created")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Queue the creation of a thumbnail.
+     * @param originalFile the file for which the thumbnail is created - used as the coalescing key
+     * @param task the thumbnail creation, returning false on failure
+     * @return true, if the request was queued or merged with a queued one, false if it was rejected
+     */
+    public boolean submit(Path originalFile, BooleanSupplier task) {
+        if (!pending.add(originalFile)) {
+            coalescedCounter.increment();
+            LOGGER.debug("Thumbnail request for \"{}\" is already queued.", originalFile);
+            return true;
+        }
+        final long queuedAt = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                // Remove before processing, so that a later change of the file triggers a new run.
+                pending.remove(originalFile);
+                final long startedAt = System.nanoTime();
+                waitTimer.record(startedAt - queuedAt, TimeUnit.NANOSECONDS);
+                try {
+                    if (!task.getAsBoolean()) {
+                        failedCounter.increment();
+                    }
+                } catch (Exception exc) {
+                    failedCounter.increment();
+                    LOGGER.warn("Thumbnail creation for \"{}\" failed!", originalFile, exc);
+                } finally {
+                    processTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException ree) {
+            pending.remove(originalFile);
+            rejectedCounter.increment();
+            LOGGER.warn("Thumbnail queue full - no thumbnail for \"{}\"!", originalFile);
+            return false;
+        }
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getQueueCapacity() {
+        return executor.getQueue().size() + executor.getQueue().remainingCapacity();
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            LOGGER.warn("{} thumbnail requests not processed on shutdown.", executor.shutdownNow().size());
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package com.giraone.camera.service;
+
+import com.giraone.camera.service.model.ThumbnailRebuildProgress;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Rebuild of the thumbnails of one storage directory (images or videos) in the background.
+ * <ul>
+ *     <li>incremental - thumbnails, that are not older than their original, are skipped</li>
+ *     <li>parallel - the thumbnails are created by a bounded pool of worker threads</li>
+ *     <li>resumable - the files are processed in file name order and the last file name, up to which all files are
+ *     done, is written to a checkpoint file in the thumbnail directory. After a restart, an interrupted run is
+ *     continued behind this file name.</li>
+ *     <li>progress and throughput can be queried while the run is active and are logged periodically</li>
+ * </ul>
+ */
+public class ThumbnailRebuild implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ThumbnailRebuild.class);
+
+    static final String CHECKPOINT_FILE_NAME = ".rebuild-checkpoint";
+
+    private static final String METRIC_NAME = "camera.thumbnails.rebuild";
+    private static final long CHECKPOINT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final long LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+    // Files submitted, but not yet done, per worker. Bounds the distance between the checkpoint and the newest file.
+    private static final int IN_FLIGHT_PER_WORKER = 2;
+
+    private final String name;
+    private final StorageLayout originals;
+    private final Path checkpointFile;
+    private final UnaryOperator<Path> thumbnailOf;
+    private final BiPredicate<Path, Path> creator;
+    private final int maxInFlight;
+    private final ThreadPoolExecutor executor;
+
+    private final Counter createdCounter;
+    private final Counter skippedCounter;
+    private final Counter failedCounter;
+
+    private volatile Run run;
+    private volatile boolean closed;
+
+    /**
+     * @param name name of the directory, used for thread names, logging and metric tags
+     * @param originals the layout of the original files
+     * @param thumbnailDir the directory of the thumbnails - the checkpoint is stored there
+     * @param thumbnailOf returns the thumbnail file for an original file
+     * @param creator creates the thumbnail (second argument) for the original file (first argument) and returns false
+     *                on failure
+     * @param workers number of threads creating thumbnails in parallel
+     * @param meterRegistry registry for the counters of created, skipped and failed thumbnails
+     */
+    ThumbnailRebuild(String name, StorageLayout originals, Path thumbnailDir, UnaryOperator<Path> thumbnailOf,
+                     BiPredicate<Path, Path> creator, int workers, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.originals = originals;
+        this.checkpointFile = thumbnailDir.resolve(CHECKPOINT_FILE_NAME);
+        this.thumbnailOf = thumbnailOf;
+        this.creator = creator;
+        final int threads = Math.max(1, workers);
+        this.maxInFlight = threads * IN_FLIGHT_PER_WORKER;
+        final AtomicInteger threadCounter = new AtomicInteger(0);
+        // The queue is bounded by the in-flight semaphore of the run.
+        this.executor = new ThreadPoolExecutor(threads, threads, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            runnable -> {
+                final Thread thread = new Thread(runnable, "thumbnail-rebuild-" + name + "-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            });
+        this.executor.allowCoreThreadTimeOut(true);
+        this.createdCounter = counter(meterRegistry, "created");
+        this.skippedCounter = counter(meterRegistry, "skipped");
+        this.failedCounter = counter(meterRegistry, "failed");
+    }
+
+    /**
+     * Start a new run over all files. If a run is active, nothing is started.
+     * @return the progress of the new or the active run
+     */
+    public synchronized ThumbnailRebuildProgress start() {
+        if (run != null && run.running) {
+            return run.progress();
+        }
+        return startRun(null);
+    }
+
+    /**
+     * Continue a run, that was interrupted by a shutdown or crash - if there is a checkpoint.
+     * @return the progress of the continued run or of the last run, if there is nothing to continue
+     */
+    public synchronized ThumbnailRebuildProgress resumeIfInterrupted() {
+        if ((run != null && run.running) || !Files.exists(checkpointFile)) {
+            return progress();
+        }
+        final String resumeAfter;
+        try {
+            resumeAfter = Files.readString(checkpointFile).strip();
+        } catch (IOException ioe) {
+            LOGGER.warn("Cannot read thumbnail rebuild checkpoint \"{}\"! {}", checkpointFile, ioe.getMessage());
+            return progress();
+        }
+        LOGGER.info("Resuming thumbnail rebuild of {} after \"{}\".", name, resumeAfter);
+        return startRun(resumeAfter.isEmpty() ? null : resumeAfter);
+    }
+
+    /**
+     * @return the progress of the active or the last run
+     */
+    public ThumbnailRebuildProgress progress() {
+        final Run current = run;
+        return current != null ? current.progress() : ThumbnailRebuildProgress.NONE;
+    }
+
+    /**
+     * Stop the active run. The checkpoint is kept, so that the run is continued after the next start.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        final Run current = run;
+        if (current != null) {
+            current.thread.interrupt();
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+            if (current != null) {
+                current.thread.join(TimeUnit.SECONDS.toMillis(10));
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Wait for the active run to finish.
+     * @return true, if no run is active anymore
+     */
+    boolean awaitFinished(long timeout, TimeUnit unit) throws InterruptedException {
+        final Run current = run;
+        if (current == null) {
+            return true;
+        }
+        current.thread.join(unit.toMillis(timeout));
+        return !current.thread.isAlive();
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    private ThumbnailRebuildProgress startRun(String resumeAfter) {
+        if (closed) {
+            return progress();
+        }
+        final Run newRun = new Run(resumeAfter);
+        writeCheckpoint(resumeAfter);
+        run = newRun;
+        newRun.thread.start();
+        return newRun.progress();
+    }
+
+    private List<String> listFileNames(String resumeAfter) {
+        final List<String> ret = new ArrayList<>();
+        for (Path path : originals.list(null)) {
+            final String fileName = path.getFileName().toString();
+            if (resumeAfter == null || fileName.compareTo(resumeAfter) > 0) {
+                ret.add(fileName);
+            }
+        }
+        Collections.sort(ret);
+        return ret;
+    }
+
+    private void writeCheckpoint(String lastDone) {
+        try {
+            Files.writeString(checkpointFile, lastDone == null ? "" : lastDone);
+        } catch (IOException ioe) {
+            LOGGER.warn("Cannot write thumbnail rebuild checkpoint \"{}\"! {}", checkpointFile, ioe.getMessage());
+        }
+    }
+
+    private void deleteCheckpoint() {
+        try {
+            Files.deleteIfExists(checkpointFile);
+        } catch (IOException ioe) {
+            LOGGER.warn("Cannot delete thumbnail rebuild checkpoint \"{}\"! {}", checkpointFile, ioe.getMessage());
+        }
+    }
+
+    private static boolean isUpToDate(Path originalFile, Path thumbnailFile) throws IOException {
+        try {
+            return Files.getLastModifiedTime(thumbnailFile).compareTo(Files.getLastModifiedTime(originalFile)) >= 0;
+        } catch (NoSuchFileException nsfe) {
+            return false;
+        }
+    }
+
+    private Counter counter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder(METRIC_NAME)
+            .description("Files processed by the thumbnail rebuild")
+            .tag("media", name)
+            .tag("result", result)
+            .register(meterRegistry);
+    }
+
+    private final class Run {
+
+        private final String resumedAfter;
+        private final Thread thread;
+        private final Semaphore inFlight = new Semaphore(maxInFlight);
+        private final AtomicInteger processed = new AtomicInteger(0);
+        private final AtomicInteger created = new AtomicInteger(0);
+        private final AtomicInteger skipped = new AtomicInteger(0);
+        private final AtomicInteger failed = new AtomicInteger(0);
+        private final LocalDateTime started = LocalDateTime.now();
+        private final long startedNanos = System.nanoTime();
+        private volatile boolean running = true;
+        // The files are listed by the run itself, so that a large directory blocks neither a request nor the start.
+        private volatile List<String> fileNames = List.of();
+        private volatile boolean listed;
+        private volatile LocalDateTime finished;
+        private volatile long finishedNanos;
+
+        // guarded by this
+        private final BitSet done = new BitSet();
+        private int doneWatermark = 0;
+        private long lastCheckpointNanos = startedNanos;
+        private long lastLogNanos = startedNanos;
+
+        Run(String resumedAfter) {
+            this.resumedAfter = resumedAfter;
+            this.thread = new Thread(this::execute, "thumbnail-rebuild-" + name);
+            this.thread.setDaemon(true);
+        }
+
+        ThumbnailRebuildProgress progress() {
+            final long endNanos = running ? System.nanoTime() : finishedNanos;
+            final double seconds = Math.max(1e-3, (endNanos - startedNanos) / 1e9);
+            final int processedFiles = processed.get();
+            return new ThumbnailRebuildProgress(running, resumedAfter, fileNames.size(), processedFiles,
+                created.get(), skipped.get(), failed.get(), Math.round(processedFiles / seconds * 10.0) / 10.0,
+                started, finished);
+        }
+
+        private void execute() {
+            fileNames = listFileNames(resumedAfter);
+            listed = true;
+            LOGGER.info("Thumbnail rebuild of {} started for {} files with {} workers.", name, fileNames.size(),
+                executor.getMaximumPoolSize());
+            try {
+                for (int i = 0; i < fileNames.size() && !closed; i++) {
+                    inFlight.acquire();
+                    final int index = i;
+                    try {
+                        executor.execute(() -> process(index));
+                    } catch (RejectedExecutionException ree) {
+                        inFlight.release();
+                        break;
+                    }
+                }
+                // Wait for the files in flight
+                inFlight.acquire(maxInFlight);
+                inFlight.release(maxInFlight);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            finish();
+        }
+
+        private void process(int index) {
+            final Path originalFile = originals.locate(fileNames.get(index));
+            try {
+                final Path thumbnailFile = thumbnailOf.apply(originalFile);
+                if (isUpToDate(originalFile, thumbnailFile)) {
+                    skipped.incrementAndGet();
+                    skippedCounter.increment();
+                } else if (creator.test(originalFile, thumbnailFile)) {
+                    created.incrementAndGet();
+                    createdCounter.increment();
+                } else {
+                    failed.incrementAndGet();
+                    failedCounter.increment();
+                }
+            } catch (Exception exc) {
+                failed.incrementAndGet();
+                failedCounter.increment();
+                LOGGER.warn("Thumbnail rebuild for \"{}\" failed!", originalFile, exc);
+            } finally {
+                processed.incrementAndGet();
+                markDone(index);
+                inFlight.release();
+            }
+        }
+
+        private synchronized void markDone(int index) {
+            done.set(index);
+            doneWatermark = done.nextClearBit(doneWatermark);
+            final long now = System.nanoTime();
+            if (now - lastCheckpointNanos >= CHECKPOINT_INTERVAL_NANOS) {
+                lastCheckpointNanos = now;
+                writeCheckpoint(lastDone());
+            }
+            if (now - lastLogNanos >= LOG_INTERVAL_NANOS) {
+                lastLogNanos = now;
+                LOGGER.info("Thumbnail rebuild of {}: {}", name, progress());
+            }
+        }
+
+        private synchronized void finish() {
+            finishedNanos = System.nanoTime();
+            finished = LocalDateTime.now();
+            running = false;
+            if (listed && doneWatermark >= fileNames.size()) {
+                deleteCheckpoint();
+                LOGGER.info("Thumbnail rebuild of {} finished: {}", name, progress());
+            } else {
+                writeCheckpoint(lastDone());
+                LOGGER.info("Thumbnail rebuild of {} stopped after \"{}\": {}", name, lastDone(), progress());
+            }
+        }
+
+        private String lastDone() {
+            return doneWatermark > 0 ? fileNames.get(doneWatermark - 1) : resumedAfter;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.giraone.camera.service;
+
+import com.giraone.camera.config.ApplicationProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Admission control for image uploads. The load of the server is one pressure value - the highest of
+ * <ul>
+ *     <li>the number of uploads in flight relative to {@code upload-max-in-flight},</li>
+ *     <li>the depth of the thumbnail queue relative to its capacity and</li>
+ *     <li>{@code upload-min-free-disk-mb} relative to the free space of the storage.</li>
+ * </ul>
+ * Below a pressure of 0.5 nothing changes. Above it the delays sent to the cameras grow up to
+ * {@value #MAX_BACKOFF_FACTOR} times of their normal value, so that the cameras back off by themselves. At 1.0
+ * uploads are rejected, before their content is read. As the pressure is computed for each request, the cameras
+ * return to their normal cadence with the first reply after the pressure dropped.
+ */
+@Component
+public class UploadAdmission {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UploadAdmission.class);
+
+    private static final String METRIC_PREFIX = "camera.uploads";
+    static final int MAX_BACKOFF_FACTOR = 4;
+    private static final double BACKOFF_PRESSURE = 0.5;
+    private static final long USABLE_SPACE_CHECK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1L);
+
+    private final int maxInFlight;
+    private final long minFreeBytes;
+    private final IntSupplier queueDepth;
+    private final int queueCapacity;
+    private final LongSupplier usableSpace;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Counter rejectedCounter;
+
+    @Autowired
+    public UploadAdmission(ApplicationProperties applicationProperties, ThumbnailPipeline thumbnailPipeline,
+                           MeterRegistry meterRegistry) {
+        this(applicationProperties.getUploadMaxInFlight(), applicationProperties.getUploadMinFreeDiskMb() * 1024L * 1024L,
+            thumbnailPipeline::getQueueDepth, thumbnailPipeline.getQueueCapacity(),
+            new CachedUsableSpace(FileService.STORAGE_BASE), meterRegistry);
+    }
+
+    UploadAdmission(int maxInFlight, long minFreeBytes, IntSupplier queueDepth, int queueCapacity,
+                    LongSupplier usableSpace, MeterRegistry meterRegistry) {
+        this.maxInFlight = maxInFlight;
+        this.minFreeBytes = minFreeBytes;
+        this.queueDepth = queueDepth;
+        this.queueCapacity = queueCapacity;
+        this.usableSpace = usableSpace;
+        Gauge.builder(METRIC_PREFIX + ".in.flight", inFlight, AtomicInteger::get)
+            .description("Number of image uploads, whose content is currently stored")
+            .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".pressure", this, admission -> admission.pressure(admission.inFlight.get()))
+            .description("Load of the upload path - cameras back off above 0.5, uploads are rejected at 1.0")
+            .register(meterRegistry);
+        this.rejectedCounter = Counter.builder(METRIC_PREFIX + ".rejected")
+            .description("Image uploads rejected because of overload")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Try to admit an upload. An admitted upload must be {@link #release() released}, when it is finished.
+     * @return true, if the upload is admitted, false if it has to be rejected
+     */
+    public boolean tryAcquire() {
+        final int current = inFlight.incrementAndGet();
+        if (pressure(current) >= 1.0) {
+            inFlight.decrementAndGet();
+            rejectedCounter.increment();
+            LOGGER.warn("Upload rejected - {} uploads in flight, {} thumbnails queued.", current - 1, queueDepth.getAsInt());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Release an admitted upload.
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * @param delayMs the normal delay of a camera until its next image
+     * @return the delay, that is increased, while the server is under pressure
+     */
+    public int backoffDelayMs(int delayMs) {
+        final double pressure = pressure(inFlight.get());
+        if (pressure < BACKOFF_PRESSURE) {
+            return delayMs;
+        }
+        final double factor = 1.0 + (MAX_BACKOFF_FACTOR - 1.0)
+            * Math.min(1.0, (pressure - BACKOFF_PRESSURE) / (1.0 - BACKOFF_PRESSURE));
+        return (int) Math.min(Integer.MAX_VALUE, Math.round(delayMs * factor));
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    private double pressure(int uploads) {
+        double ret = maxInFlight > 0 ? (double) uploads / maxInFlight : 0.0;
+        if (queueCapacity > 0) {
+            ret = Math.max(ret, (double) queueDepth.getAsInt() / queueCapacity);
+        }
+        if (minFreeBytes > 0) {
+            ret = Math.max(ret, (double) minFreeBytes / Math.max(1L, usableSpace.getAsLong()));
+        }
+        return ret;
+    }
+
+    // The free space of the storage, read at most once per second.
+    private static final class CachedUsableSpace implements LongSupplier {
+
+        private final Path path;
+        private volatile long checkedAt = System.nanoTime() - USABLE_SPACE_CHECK_INTERVAL_NANOS;
+        private volatile long usableSpace = Long.MAX_VALUE;
+
+        CachedUsableSpace(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        public long getAsLong() {
+            final long now = System.nanoTime();
+            if (now - checkedAt >= USABLE_SPACE_CHECK_INTERVAL_NANOS) {
+                checkedAt = now;
+                try {
+                    usableSpace = Files.getFileStore(path).getUsableSpace();
+                } catch (IOException e) {
+                    LOGGER.warn("Cannot read free space of \"{}\"!", path, e);
+                    usableSpace = Long.MAX_VALUE;
+                }
+            }
+            return usableSpace;
+        }
+    }
+}
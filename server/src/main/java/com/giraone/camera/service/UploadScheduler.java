@@ -0,0 +1,162 @@
+package com.giraone.camera.service;
+
+import com.giraone.camera.config.ApplicationProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Staggering of the image uploads of all cameras. Cameras, that start together, stay in phase - so all of them
+ * upload at the same time. Instead, each active camera gets a slot in its period ({@code delayMs}) and the delay
+ * returned after an upload is adjusted, so that the next upload moves towards the slot.
+ * <ul>
+ *     <li>The slots are evenly spaced: slot {@code i} of {@code n} active cameras starts at {@code i * delayMs / n}
+ *     on a clock shared by all cameras. The cameras are ordered by name.</li>
+ *     <li>The time a camera needs from the end of its delay to the end of its upload is measured and subtracted from
+ *     the delay, so each camera uploads once per {@code delayMs}.</li>
+ *     <li>Half of the phase error is corrected per upload, at most a quarter of the period - so a camera never
+ *     jumps and the fleet settles within a few periods.</li>
+ *     <li>{@code camera.uploads.gap.variation} is the coefficient of variation of the gaps between the last uploads
+ *     of all cameras: 0 is a perfectly even ingest rate, about 1 random and more than 1 bursts.</li>
+ * </ul>
+ */
+@Component
+public class UploadScheduler {
+
+    private static final String METRIC_PREFIX = "camera.uploads";
+    private static final double CORRECTION_GAIN = 0.5;
+    private static final double OVERHEAD_SMOOTHING = 0.25;
+    // A camera without uploads for this number of periods does not get a slot.
+    private static final int INACTIVE_PERIODS = 3;
+    private static final int RECENT_UPLOADS = 256;
+
+    private final boolean enabled;
+    private final LongSupplier clock;
+    private final Map<String, CameraSlot> cameras = new ConcurrentHashMap<>();
+    private final AtomicLongArray recentUploads = new AtomicLongArray(RECENT_UPLOADS);
+    private final AtomicLong recentUploadIndex = new AtomicLong();
+    private final Timer phaseErrorTimer;
+
+    @Autowired
+    public UploadScheduler(ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        this(applicationProperties.isUploadStaggering(), meterRegistry,
+            () -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime()));
+    }
+
+    UploadScheduler(boolean enabled, MeterRegistry meterRegistry, LongSupplier clock) {
+        this.enabled = enabled;
+        this.clock = clock;
+        Gauge.builder(METRIC_PREFIX + ".active.cameras", cameras, Map::size)
+            .description("Number of cameras, that uploaded images recently")
+            .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".gap.variation", this, UploadScheduler::gapVariation)
+            .description("Coefficient of variation of the gaps between the recent uploads - 0 is an even ingest rate")
+            .register(meterRegistry);
+        this.phaseErrorTimer = Timer.builder(METRIC_PREFIX + ".phase.error")
+            .description("Distance of an upload from the slot of its camera")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Register an upload and compute the delay of the camera until its next image.
+     * @param cameraName the camera name, may be null
+     * @param delayMs the configured delay of the camera
+     * @return the adjusted delay or null, if the configured delay is to be used
+     */
+    public Integer nextDelayMs(String cameraName, int delayMs) {
+        final long now = clock.getAsLong();
+        recentUploads.set((int) (recentUploadIndex.getAndIncrement() % RECENT_UPLOADS), now);
+        if (!enabled || cameraName == null || delayMs <= 0) {
+            return null;
+        }
+        final CameraSlot previous = cameras.get(cameraName);
+        cameras.values().removeIf(slot -> now - slot.lastUploadMs() > (long) INACTIVE_PERIODS * slot.periodMs());
+        final String[] active = cameras.keySet().toArray(new String[0]);
+        Arrays.sort(active);
+        int index = Arrays.binarySearch(active, cameraName);
+        int count = active.length;
+        if (index < 0) {
+            index = -index - 1;
+            count++;
+        }
+        final long overheadMs = overhead(previous, now);
+        if (count < 2) {
+            cameras.put(cameraName, new CameraSlot(now, delayMs, delayMs, overheadMs));
+            return null;
+        }
+        final long slotMs = (long) index * delayMs / count;
+        final long phaseErrorMs = wrap(Math.floorMod(now, delayMs) - slotMs, delayMs);
+        phaseErrorTimer.record(Math.abs(phaseErrorMs), TimeUnit.MILLISECONDS);
+        final long correctionMs = Math.max(-delayMs / 4, Math.min(delayMs / 4, Math.round(phaseErrorMs * CORRECTION_GAIN)));
+        final int ret = (int) Math.max(0L, delayMs - Math.max(0L, overheadMs) - correctionMs);
+        cameras.put(cameraName, new CameraSlot(now, delayMs, ret, overheadMs));
+        return ret;
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    // The measured cycle of a camera is its last delay plus the time to take, upload and answer an image.
+    private static long overhead(CameraSlot previous, long now) {
+        if (previous == null) {
+            return -1L;
+        }
+        final long overheadMs = now - previous.lastUploadMs() - previous.lastDelayMs();
+        if (overheadMs < 0 || overheadMs >= previous.periodMs()) {
+            // missed or additional uploads - keep the estimate
+            return previous.overheadMs();
+        }
+        return previous.overheadMs() < 0
+            ? overheadMs
+            : Math.round(previous.overheadMs() + OVERHEAD_SMOOTHING * (overheadMs - previous.overheadMs()));
+    }
+
+    // Wrap into [-period/2, period/2), so that a camera short before its slot is moved forward.
+    private static long wrap(long value, long period) {
+        return Math.floorMod(value + period / 2, period) - period / 2;
+    }
+
+    private double gapVariation() {
+        final int count = (int) Math.min(recentUploadIndex.get(), RECENT_UPLOADS);
+        if (count < 3) {
+            return 0.0;
+        }
+        final long[] times = new long[count];
+        for (int i = 0; i < count; i++) {
+            times[i] = recentUploads.get(i);
+        }
+        Arrays.sort(times);
+        double sum = 0.0;
+        double sumOfSquares = 0.0;
+        for (int i = 1; i < count; i++) {
+            final long gap = times[i] - times[i - 1];
+            sum += gap;
+            sumOfSquares += (double) gap * gap;
+        }
+        final double mean = sum / (count - 1);
+        if (mean <= 0.0) {
+            return 0.0;
+        }
+        final double variance = Math.max(0.0, sumOfSquares / (count - 1) - mean * mean);
+        return Math.sqrt(variance) / mean;
+    }
+
+    /**
+     * The state of one camera - replaced on each upload.
+     * @param lastUploadMs time of the last upload
+     * @param periodMs the configured delay of the camera
+     * @param lastDelayMs the delay returned after the last upload
+     * @param overheadMs the smoothed time from the end of the delay to the end of the upload, -1 if unknown
+     */
+    private record CameraSlot(long lastUploadMs, int periodMs, int lastDelayMs, long overheadMs) {
+    }
+}
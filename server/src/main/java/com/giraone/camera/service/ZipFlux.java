@@ -0,0 +1,274 @@
+package com.giraone.camera.service;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * Streaming ZIP writer on a {@link Flux} of {@link ByteBuffer}.
+ * <ul>
+ *     <li>All entries are STORED - the content (JPEG) is not compressible anyway.</li>
+ *     <li>The sizes are known before an entry is read, the CRC-32 is computed while the content passes through and is
+ *     written in a data descriptor after the entry's data.</li>
+ *     <li>ZIP64 records are written for entries or archives beyond the 4 GB / 65535 entries limits.</li>
+ *     <li>The content of up to {@code concurrency} upcoming entries is read ahead, each limited to a few chunks, so
+ *     memory is bounded by the number of read-ahead chunks plus the small central directory records.</li>
+ * </ul>
+ */
+public final class ZipFlux {
+
+    private static final int SIG_LOCAL_FILE_HEADER = 0x04034b50;
+    private static final int SIG_DATA_DESCRIPTOR = 0x08074b50;
+    private static final int SIG_CENTRAL_DIRECTORY = 0x02014b50;
+    private static final int SIG_ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+    private static final int SIG_ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR = 0x07064b50;
+    private static final int SIG_END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+
+    private static final int VERSION_DEFAULT = 20;
+    private static final int VERSION_ZIP64 = 45;
+    // bit 3: data descriptor, bit 11: UTF-8 file names
+    private static final int FLAGS = 0x0008 | 0x0800;
+    private static final int METHOD_STORED = 0;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+
+    private static final long MAX_32 = 0xFFFFFFFFL;
+    private static final int MAX_16 = 0xFFFF;
+
+    private static final int CENTRAL_DIRECTORY_RECORDS_PER_BUFFER = 256;
+    private static final int PREFETCH_CHUNKS_PER_ENTRY = 2;
+
+    // Hide
+    private ZipFlux() {
+    }
+
+    /**
+     * One file to be added to the archive.
+     * @param name the name within the archive
+     * @param size the exact number of bytes, that {@code content} will emit
+     * @param lastModified the modification time stored in the archive
+     * @param content supplier of the content - subscribed to, when the entry is read
+     */
+    public record Entry(String name, long size, LocalDateTime lastModified, Supplier<Flux<ByteBuffer>> content) {
+    }
+
+    /**
+     * Build a ZIP archive from the given entries.
+     * @param entries the entries in the order they are written
+     * @param concurrency number of entries, whose content is read ahead
+     * @return the archive content
+     */
+    public static Flux<ByteBuffer> zip(Flux<Entry> entries, int concurrency) {
+        return Flux.defer(() -> {
+            final ZipState state = new ZipState();
+            return entries
+                // map is sequential, so offsets are assigned in archive order
+                .map(state::prepare)
+                .flatMapSequential(PreparedEntry::content, Math.max(1, concurrency), PREFETCH_CHUNKS_PER_ENTRY)
+                .concatWith(Flux.defer(state::centralDirectory));
+        });
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    private static final class ZipState {
+
+        private final List<PreparedEntry> prepared = new ArrayList<>();
+        private long offset = 0L;
+
+        PreparedEntry prepare(Entry entry) {
+            final PreparedEntry ret = new PreparedEntry(entry, offset);
+            offset += ret.localHeader.length + entry.size() + ret.descriptorLength();
+            prepared.add(ret);
+            return ret;
+        }
+
+        Flux<ByteBuffer> centralDirectory() {
+            final long centralDirectoryOffset = offset;
+            long centralDirectorySize = 0L;
+            final List<ByteBuffer> buffers = new ArrayList<>();
+            for (int start = 0; start < prepared.size(); start += CENTRAL_DIRECTORY_RECORDS_PER_BUFFER) {
+                final List<PreparedEntry> slice = prepared.subList(start,
+                    Math.min(prepared.size(), start + CENTRAL_DIRECTORY_RECORDS_PER_BUFFER));
+                int length = 0;
+                for (PreparedEntry entry : slice) {
+                    length += entry.centralDirectoryLength();
+                }
+                final ByteBuffer buffer = allocate(length);
+                for (PreparedEntry entry : slice) {
+                    entry.writeCentralDirectoryRecord(buffer);
+                }
+                centralDirectorySize += length;
+                buffers.add(buffer.flip());
+            }
+            buffers.add(endOfCentralDirectory(prepared.size(), centralDirectoryOffset, centralDirectorySize));
+            prepared.clear();
+            return Flux.fromIterable(buffers);
+        }
+    }
+
+    private static final class PreparedEntry {
+
+        private final Entry entry;
+        private final long localHeaderOffset;
+        private final byte[] name;
+        private final boolean zip64;
+        private final int dosTime;
+        private final int dosDate;
+        private final byte[] localHeader;
+        private final CRC32 crc = new CRC32();
+        private long bytesRead = 0L;
+
+        PreparedEntry(Entry entry, long localHeaderOffset) {
+            this.entry = entry;
+            this.localHeaderOffset = localHeaderOffset;
+            this.name = entry.name().getBytes(StandardCharsets.UTF_8);
+            this.zip64 = entry.size() >= MAX_32 || localHeaderOffset >= MAX_32;
+            this.dosTime = dosTime(entry.lastModified());
+            this.dosDate = dosDate(entry.lastModified());
+            this.localHeader = buildLocalHeader();
+        }
+
+        Flux<ByteBuffer> content() {
+            return Flux.concat(
+                Mono.fromSupplier(() -> ByteBuffer.wrap(localHeader)),
+                entry.content().get().doOnNext(buffer -> {
+                    bytesRead += buffer.remaining();
+                    crc.update(buffer.duplicate());
+                }),
+                Mono.fromCallable(this::dataDescriptor));
+        }
+
+        int descriptorLength() {
+            return zip64 ? 24 : 16;
+        }
+
+        int centralDirectoryLength() {
+            return 46 + name.length + (zip64 ? 28 : 0);
+        }
+
+        private byte[] buildLocalHeader() {
+            final ByteBuffer buffer = allocate(30 + name.length + (zip64 ? 20 : 0));
+            buffer.putInt(SIG_LOCAL_FILE_HEADER);
+            buffer.putShort((short) (zip64 ? VERSION_ZIP64 : VERSION_DEFAULT));
+            buffer.putShort((short) FLAGS);
+            buffer.putShort((short) METHOD_STORED);
+            buffer.putShort((short) dosTime);
+            buffer.putShort((short) dosDate);
+            // CRC follows in the data descriptor
+            buffer.putInt(0);
+            // The sizes are known in advance. They are also given here, so that streaming readers can skip STORED data.
+            buffer.putInt((int) (zip64 ? MAX_32 : entry.size()));
+            buffer.putInt((int) (zip64 ? MAX_32 : entry.size()));
+            buffer.putShort((short) name.length);
+            buffer.putShort((short) (zip64 ? 20 : 0));
+            buffer.put(name);
+            if (zip64) {
+                buffer.putShort((short) ZIP64_EXTRA_ID);
+                buffer.putShort((short) 16);
+                buffer.putLong(entry.size());
+                buffer.putLong(entry.size());
+            }
+            return buffer.array();
+        }
+
+        private ByteBuffer dataDescriptor() {
+            if (bytesRead != entry.size()) {
+                throw new IllegalStateException("Entry \"" + entry.name() + "\" has " + bytesRead
+                    + " bytes instead of " + entry.size() + "! File changed while zipping?");
+            }
+            final ByteBuffer buffer = allocate(descriptorLength());
+            buffer.putInt(SIG_DATA_DESCRIPTOR);
+            buffer.putInt((int) crc.getValue());
+            if (zip64) {
+                buffer.putLong(bytesRead);
+                buffer.putLong(bytesRead);
+            } else {
+                buffer.putInt((int) bytesRead);
+                buffer.putInt((int) bytesRead);
+            }
+            return buffer.flip();
+        }
+
+        private void writeCentralDirectoryRecord(ByteBuffer buffer) {
+            buffer.putInt(SIG_CENTRAL_DIRECTORY);
+            buffer.putShort((short) VERSION_ZIP64);
+            buffer.putShort((short) (zip64 ? VERSION_ZIP64 : VERSION_DEFAULT));
+            buffer.putShort((short) FLAGS);
+            buffer.putShort((short) METHOD_STORED);
+            buffer.putShort((short) dosTime);
+            buffer.putShort((short) dosDate);
+            buffer.putInt((int) crc.getValue());
+            buffer.putInt((int) (zip64 ? MAX_32 : entry.size()));
+            buffer.putInt((int) (zip64 ? MAX_32 : entry.size()));
+            buffer.putShort((short) name.length);
+            buffer.putShort((short) (zip64 ? 28 : 0));
+            // comment length, disk number, internal and external attributes
+            buffer.putShort((short) 0);
+            buffer.putShort((short) 0);
+            buffer.putShort((short) 0);
+            buffer.putInt(0);
+            buffer.putInt((int) (zip64 ? MAX_32 : localHeaderOffset));
+            buffer.put(name);
+            if (zip64) {
+                buffer.putShort((short) ZIP64_EXTRA_ID);
+                buffer.putShort((short) 24);
+                buffer.putLong(entry.size());
+                buffer.putLong(entry.size());
+                buffer.putLong(localHeaderOffset);
+            }
+        }
+    }
+
+    private static ByteBuffer endOfCentralDirectory(int entryCount, long centralDirectoryOffset, long centralDirectorySize) {
+        final boolean zip64 = entryCount >= MAX_16 || centralDirectoryOffset >= MAX_32 || centralDirectorySize >= MAX_32;
+        final ByteBuffer buffer = allocate((zip64 ? 56 + 20 : 0) + 22);
+        if (zip64) {
+            final long zip64EndOffset = centralDirectoryOffset + centralDirectorySize;
+            buffer.putInt(SIG_ZIP64_END_OF_CENTRAL_DIRECTORY);
+            // size of the remaining record
+            buffer.putLong(44L);
+            buffer.putShort((short) VERSION_ZIP64);
+            buffer.putShort((short) VERSION_ZIP64);
+            buffer.putInt(0);
+            buffer.putInt(0);
+            buffer.putLong(entryCount);
+            buffer.putLong(entryCount);
+            buffer.putLong(centralDirectorySize);
+            buffer.putLong(centralDirectoryOffset);
+            buffer.putInt(SIG_ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR);
+            buffer.putInt(0);
+            buffer.putLong(zip64EndOffset);
+            buffer.putInt(1);
+        }
+        buffer.putInt(SIG_END_OF_CENTRAL_DIRECTORY);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) (zip64 ? MAX_16 : entryCount));
+        buffer.putShort((short) (zip64 ? MAX_16 : entryCount));
+        buffer.putInt((int) (zip64 ? MAX_32 : centralDirectorySize));
+        buffer.putInt((int) (zip64 ? MAX_32 : centralDirectoryOffset));
+        buffer.putShort((short) 0);
+        return buffer.flip();
+    }
+
+    private static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static int dosTime(LocalDateTime time) {
+        return time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() / 2;
+    }
+
+    private static int dosDate(LocalDateTime time) {
+        final int year = Math.max(1980, time.getYear());
+        return (year - 1980) << 9 | time.getMonthValue() << 5 | time.getDayOfMonth();
+    }
+}
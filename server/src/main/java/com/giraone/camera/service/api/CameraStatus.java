@@ -7,6 +7,7 @@ public record CameraStatus(int rssi,
                            int cameraInitCounter,
                            int cameraInitErrors,
                            int uploadImageErrors,
-                           int uploadStatusErrors
+                           int uploadStatusErrors,
+                           Long settingsVersion
 ) {
 }
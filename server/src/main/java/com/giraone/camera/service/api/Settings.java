@@ -8,6 +8,8 @@ public class Settings {
     Status status;
     WorkflowSettings workflow;
     CameraSettings camera;
+    Long version;
+    Integer delayMs;
 
     public Settings() {
         this(new Status(true, null), new WorkflowSettings(), new CameraSettings());
@@ -51,12 +53,36 @@ public class Settings {
         this.camera = camera;
     }
 
+    /**
+     * @return the version of the settings, that is sent to the cameras - null within stored settings
+     */
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    /**
+     * @return the delay until the next image of a camera, if it differs from the one of the workflow settings
+     */
+    public Integer getDelayMs() {
+        return delayMs;
+    }
+
+    public void setDelayMs(Integer delayMs) {
+        this.delayMs = delayMs;
+    }
+
     @Override
     public String toString() {
         return "Settings{" +
             "status=" + status +
             ", workflow=" + workflow +
             ", camera=" + camera +
+            ", version=" + version +
+            ", delayMs=" + delayMs +
             '}';
     }
 }
@@ -16,9 +16,8 @@ import java.nio.file.Path;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
-import java.time.ZoneOffset;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import static com.giraone.camera.service.FileService.DIR_NAME_META;
@@ -30,8 +29,9 @@ public class FileInfo {
     private static final VideoService videoService = new VideoService();
     private static final ObjectMapper objectMapper = ObjectMapperBuilder.build();
 
-    private static final Map<String,String> infoCacheImage = new HashMap<>();
-    private static final Map<String,String> infoCacheVideo = new HashMap<>();
+    // read by concurrent requests
+    private static final Map<String,String> infoCacheImage = new ConcurrentHashMap<>();
+    private static final Map<String,String> infoCacheVideo = new ConcurrentHashMap<>();
 
     @JsonIgnore
     private final Path path;
@@ -39,15 +39,24 @@ public class FileInfo {
     private final long sizeInBytes;
     private final String mediaType;
     private final LocalDateTime lastModified;
-    private String infos;
+    // The exact time - the local time is ambiguous, when the clocks are turned back.
+    @JsonIgnore
+    private final long lastModifiedEpochSecond;
+    private final String infos;
 
     public FileInfo(Path path, String fileName, long sizeInBytes, String mediaType, LocalDateTime lastModified) {
+        this(path, fileName, sizeInBytes, mediaType, toEpochSecond(lastModified), "");
+    }
+
+    private FileInfo(Path path, String fileName, long sizeInBytes, String mediaType, long lastModifiedEpochSecond,
+                     String infos) {
         this.path = path;
         this.fileName = fileName;
         this.sizeInBytes = sizeInBytes;
         this.mediaType = mediaType;
-        this.lastModified = lastModified;
-        this.infos = "";
+        this.lastModified = ofEpochSecond(lastModifiedEpochSecond);
+        this.lastModifiedEpochSecond = lastModifiedEpochSecond;
+        this.infos = infos;
     }
 
     public String getFileName() {
@@ -66,17 +75,27 @@ public class FileInfo {
         return lastModified;
     }
 
+    public long getLastModifiedEpochSecond() {
+        return lastModifiedEpochSecond;
+    }
+
     public String getInfos() {
         return infos;
     }
 
+    /**
+     * @return a copy with the infos - the file info itself is shared by the index and is not changed
+     */
     public FileInfo buildInfos() {
+        final String ret;
         if (mediaType.startsWith("image")) {
-            infos = fetchImageInfos(fileName, path);
+            ret = fetchImageInfos(fileName, path);
         } else if (mediaType.startsWith("video")) {
-            infos = fetchVideoInfos(fileName, path);
+            ret = fetchVideoInfos(fileName, path);
+        } else {
+            return this;
         }
-        return this;
+        return new FileInfo(path, fileName, sizeInBytes, mediaType, lastModifiedEpochSecond, ret);
     }
 
     public static FileInfo fromFile(Path file) {
@@ -84,12 +103,12 @@ public class FileInfo {
     }
 
     public static FileInfo fromFile(Path file, long size) {
-        return FileInfo.fromFile(file, size, lastModified(file));
+        return FileInfo.fromFile(file, size, lastModifiedEpochSecond(file));
     }
 
-    public static FileInfo fromFile(Path path, long size, LocalDateTime lastModified) {
+    public static FileInfo fromFile(Path path, long size, long lastModifiedEpochSecond) {
         final String fileName = path.getFileName().toString();
-        return new FileInfo(path, fileName, size, mediaTypeFromFileName(fileName), lastModified);
+        return new FileInfo(path, fileName, size, mediaTypeFromFileName(fileName), lastModifiedEpochSecond, "");
     }
 
     public static String mediaTypeFromFileName(String filename) {
@@ -100,6 +119,10 @@ public class FileInfo {
             return MediaType.IMAGE_PNG_VALUE;
         } else if (filename.endsWith(".mp4")) {
             return "video/mp4";
+        } else if (filename.endsWith(".vtt")) {
+            return "text/vtt";
+        } else if (filename.endsWith(".json")) {
+            return MediaType.APPLICATION_JSON_VALUE;
         } else {
             return MediaType.APPLICATION_OCTET_STREAM_VALUE;
         }
@@ -151,7 +174,8 @@ public class FileInfo {
         VideoMetaInfo videoMetaInfo;
         try {
              videoMetaInfo = videoService.extractVideoMetaInfo(file);
-        } catch (IOException e) {
+        } catch (IOException | RuntimeException e) {
+            // A video, that cannot be probed, must not fail the whole listing.
             LOGGER.warn("Cannot extract video meta from " + file, e);
             return "ERROR (write)";
         }
@@ -172,18 +196,20 @@ public class FileInfo {
         }
     }
 
-    public static LocalDateTime lastModified(Path file) {
+    public static long lastModifiedEpochSecond(Path file) {
         try {
-            return ofEpochSecond(Files.getLastModifiedTime(file).to(TimeUnit.SECONDS));
+            return Files.getLastModifiedTime(file).to(TimeUnit.SECONDS);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    // The offset of the time itself is used - not the current one, that changes with daylight saving time.
     public static LocalDateTime ofEpochSecond(long epochSecond) {
-        final Instant instant = Instant.now();
-        final ZoneId systemZone = ZoneId.systemDefault();
-        final ZoneOffset currentOffsetForMyZone = systemZone.getRules().getOffset(instant);
-        return LocalDateTime.ofEpochSecond(epochSecond, 0, currentOffsetForMyZone);
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), ZoneId.systemDefault());
+    }
+
+    public static long toEpochSecond(LocalDateTime localDateTime) {
+        return localDateTime.atZone(ZoneId.systemDefault()).toEpochSecond();
     }
 }
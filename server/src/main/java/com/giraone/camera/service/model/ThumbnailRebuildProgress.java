@@ -0,0 +1,27 @@
+package com.giraone.camera.service.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.LocalDateTime;
+
+/**
+ * Progress of a thumbnail rebuild run.
+ * @param running true, while the run is active
+ * @param resumedAfter if the run was resumed after a restart, the last file name processed before
+ * @param total number of files in this run - 0, while the files are listed
+ * @param processed number of files done (created, skipped or failed)
+ * @param created number of thumbnails (re-)created
+ * @param skipped number of thumbnails, that were up-to-date
+ * @param failed number of thumbnails, that could not be created
+ * @param filesPerSecond throughput of the run
+ * @param started start time of the run
+ * @param finished end time of the run or null, if still running
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ThumbnailRebuildProgress(boolean running, String resumedAfter, int total, int processed, int created,
+                                       int skipped, int failed, double filesPerSecond,
+                                       LocalDateTime started, LocalDateTime finished) {
+
+    public static final ThumbnailRebuildProgress NONE = new ThumbnailRebuildProgress(false, null, 0, 0, 0, 0, 0, 0.0,
+        null, null);
+}
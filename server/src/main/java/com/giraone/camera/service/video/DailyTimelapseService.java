@@ -0,0 +1,212 @@
+package com.giraone.camera.service.video;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.giraone.camera.config.ApplicationProperties;
+import com.giraone.camera.service.FileService;
+import com.giraone.camera.service.model.FileInfo;
+import com.giraone.camera.service.video.model.DailyTimelapseManifest;
+import com.giraone.camera.service.video.model.TimelapseCommand;
+import com.giraone.camera.service.video.model.TimelapseJob;
+import com.giraone.camera.util.ObjectMapperBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Incremental "today so far" timelapse videos per camera. The cameras upload images named
+ * {@code <camera>-<yyMMdd>-<HHmmss>.jpg}, so the images of one camera and day are a file name prefix.
+ * <ul>
+ *     <li>each refresh encodes only the images, that were added since the last refresh, into a new segment</li>
+ *     <li>the segments are listed in a manifest in {@code VIDEOS/.daily/<camera>-<yyMMdd>}</li>
+ *     <li>the published video {@code <camera>-<yyMMdd>-daily.mp4} is rebuilt by joining the segments without
+ *     re-encoding - so the cost of a refresh grows with the new images, not with all images of the day</li>
+ *     <li>refreshes are timelapse jobs, so they share the ffmpeg concurrency limit and can be polled and cancelled</li>
+ * </ul>
+ */
+@Service
+public class DailyTimelapseService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DailyTimelapseService.class);
+    private static final ObjectMapper MAPPER = ObjectMapperBuilder.build();
+
+    static final String DIR_NAME_DAILY = ".daily";
+    static final String MANIFEST_FILE_NAME = "manifest.json";
+    static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("yyMMdd");
+
+    private static final Pattern CAMERA_PATTERN = Pattern.compile("[a-zA-Z0-9]+");
+    private static final String VIDEO_SUFFIX = "-daily.mp4";
+    private static final int LOCK_STRIPES = 64;
+
+    private final FileService fileService;
+    private final VideoService videoService;
+    private final TimelapseJobService timelapseJobService;
+    private final Path dailyBase;
+    private final int frameRate;
+    private final int segmentRetentionDays;
+    // one refresh per camera and day at a time - striped, so that the number of locks does not grow with the days
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    @Autowired
+    public DailyTimelapseService(FileService fileService, VideoService videoService,
+                                 TimelapseJobService timelapseJobService, ApplicationProperties applicationProperties) {
+        this(fileService, videoService, timelapseJobService, applicationProperties,
+            FileService.getFileDirVideos().resolve(DIR_NAME_DAILY));
+    }
+
+    DailyTimelapseService(FileService fileService, VideoService videoService, TimelapseJobService timelapseJobService,
+                          ApplicationProperties applicationProperties, Path dailyBase) {
+        this.fileService = fileService;
+        this.videoService = videoService;
+        this.timelapseJobService = timelapseJobService;
+        this.dailyBase = dailyBase;
+        this.frameRate = applicationProperties.getDailyTimelapseFrameRate();
+        this.segmentRetentionDays = applicationProperties.getDailyTimelapseSegmentRetentionDays();
+        Arrays.setAll(locks, i -> new Object());
+    }
+
+    /**
+     * Queue a refresh of the daily timelapse video of a camera.
+     * @param camera the camera name - the file name prefix of its images
+     * @param day the day in the format yyMMdd - null for today
+     * @return the state of the queued job
+     * @throws IllegalArgumentException if the camera or day is invalid
+     * @throws java.util.concurrent.RejectedExecutionException if too many jobs are queued
+     */
+    public TimelapseJob refresh(String camera, String day) {
+        if (camera == null || !CAMERA_PATTERN.matcher(camera).matches()) {
+            throw new IllegalArgumentException("Invalid camera \"" + camera + "\"!");
+        }
+        final LocalDate date;
+        try {
+            date = day == null || day.isEmpty() ? LocalDate.now() : LocalDate.parse(day, DAY_FORMAT);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid day \"" + day + "\"! Format is yyMMdd.");
+        }
+        final String key = camera + "-" + DAY_FORMAT.format(date);
+        return timelapseJobService.submit(key + VIDEO_SUFFIX, 0, listener -> appendNewImages(key, listener));
+    }
+
+    /**
+     * Append the new images of a camera and day as a new segment and publish the joined video. Blocks until the
+     * video is published.
+     * @param key the camera name and day - the file name prefix of the images
+     * @param listener informed about the ffmpeg processes and the encoding progress
+     * @return the published video
+     */
+    FileInfo appendNewImages(String key, VideoService.TimelapseListener listener) throws IOException {
+        synchronized (locks[Math.floorMod(key.hashCode(), LOCK_STRIPES)]) {
+            deleteExpiredSegments();
+            final Path dir = Files.createDirectories(dailyBase.resolve(key));
+            DailyTimelapseManifest manifest = readManifest(dir);
+
+            final String lastImage = manifest.lastImage();
+            final List<String> newImages = fileService.listFileNames(FileService.Media.IMAGES, key + "-").stream()
+                .filter(name -> lastImage == null || name.compareTo(lastImage) > 0)
+                .toList();
+            final List<Path> frames = newImages.isEmpty() ? List.of() : TimelapseFrameSelector.select(
+                new TimelapseCommand(key + VIDEO_SUFFIX, newImages, 1, frameRate),
+                name -> fileService.getFile(FileService.Media.IMAGES, name));
+            listener.framesSelected(frames.size());
+
+            if (!frames.isEmpty()) {
+                final String segmentFileName = String.format("segment-%04d.mp4", manifest.segments().size());
+                videoService.encode(frames, frameRate, dir.resolve(segmentFileName), listener, 1);
+                manifest = manifest.withSegment(new DailyTimelapseManifest.Segment(segmentFileName,
+                    newImages.get(0), newImages.get(newImages.size() - 1), frames.size()));
+                writeManifest(dir, manifest);
+            }
+            final List<Path> segmentFiles = manifest.segments().stream()
+                .map(segment -> dir.resolve(segment.file()))
+                .toList();
+            if (segmentFiles.isEmpty()) {
+                throw new OsCallException("No images of \"" + key + "\" for the daily timelapse video!");
+            }
+            final String videoName = key + VIDEO_SUFFIX;
+            if (manifest.publishedSegments() == manifest.segments().size()
+                && Files.exists(fileService.getFile(FileService.Media.VIDEOS, videoName))) {
+                LOGGER.info("Daily timelapse \"{}\" is up to date.", videoName);
+                return fileService.getFileInfo(FileService.Media.VIDEOS, videoName);
+            }
+            final FileInfo ret = fileService.storeVideo(videoName, file -> videoService.concat(segmentFiles, file));
+            writeManifest(dir, manifest.published());
+            LOGGER.info("Daily timelapse \"{}\" published with {} frames in {} segments.", videoName,
+                manifest.frames(), segmentFiles.size());
+            return ret;
+        }
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Read the manifest. If it is missing, invalid, for another frame rate or a segment is missing, the existing
+     * segments are deleted and the daily timelapse starts from scratch.
+     */
+    private DailyTimelapseManifest readManifest(Path dir) throws IOException {
+        final Path manifestFile = dir.resolve(MANIFEST_FILE_NAME);
+        if (Files.exists(manifestFile)) {
+            try {
+                final DailyTimelapseManifest manifest = MAPPER.readValue(manifestFile.toFile(), DailyTimelapseManifest.class);
+                if (manifest.frameRate() == frameRate && manifest.segments().stream()
+                    .allMatch(segment -> Files.exists(dir.resolve(segment.file())))) {
+                    return manifest;
+                }
+                LOGGER.info("Daily timelapse \"{}\" changed or incomplete. Starting from scratch.", dir.getFileName());
+            } catch (IOException e) {
+                LOGGER.warn("Cannot read \"{}\"! Starting from scratch.", manifestFile, e);
+            }
+        }
+        deleteFiles(dir);
+        return DailyTimelapseManifest.empty(frameRate);
+    }
+
+    // Written to a temporary file first, so that a crash never leaves a half written manifest.
+    private static void writeManifest(Path dir, DailyTimelapseManifest manifest) throws IOException {
+        final Path tempFile = dir.resolve(MANIFEST_FILE_NAME + ".tmp");
+        MAPPER.writeValue(tempFile.toFile(), manifest);
+        Files.move(tempFile, dir.resolve(MANIFEST_FILE_NAME), ATOMIC_MOVE, REPLACE_EXISTING);
+    }
+
+    private void deleteExpiredSegments() {
+        if (!Files.isDirectory(dailyBase)) {
+            return;
+        }
+        final String oldestKept = DAY_FORMAT.format(LocalDate.now().minusDays(segmentRetentionDays));
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dailyBase, Files::isDirectory)) {
+            for (Path dir : stream) {
+                final String name = dir.getFileName().toString();
+                final String day = name.substring(name.lastIndexOf('-') + 1);
+                if (day.compareTo(oldestKept) < 0) {
+                    LOGGER.info("Deleting expired daily timelapse segments \"{}\".", name);
+                    deleteFiles(dir);
+                    Files.deleteIfExists(dir);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Cannot delete expired daily timelapse segments in \"{}\"!", dailyBase, e);
+        }
+    }
+
+    private static void deleteFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
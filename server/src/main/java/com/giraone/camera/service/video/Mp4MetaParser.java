@@ -0,0 +1,280 @@
+package com.giraone.camera.service.video;
+
+import com.giraone.camera.service.model.VideoMetaInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads the {@link VideoMetaInfo} of MP4/MOV files (ISO base media file format) in-process, without ffprobe.
+ * <ul>
+ *     <li>only the box headers of the top level and the {@code moov} box are read by positioned reads - the media
+ *     data is skipped, no matter whether {@code moov} is in front of or behind it</li>
+ *     <li>the codec names are the ones of ffprobe, so that the results do not depend on the way they were read</li>
+ *     <li>for other containers, fragmented MP4 and files, that cannot be parsed, null is returned, so that the caller
+ *     can fall back to ffprobe</li>
+ * </ul>
+ */
+final class Mp4MetaParser {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Mp4MetaParser.class);
+
+    // boxes, that are expected on the top level of an MP4 file in front of moov
+    private static final Set<String> TOP_LEVEL_BOXES = Set.of("ftyp", "moov", "mdat", "free", "skip", "wide", "uuid", "pdin");
+    // larger moov boxes are left to ffprobe - a one hour video has about 2 MB
+    static final int MAX_MOOV_SIZE = 32 * 1024 * 1024;
+
+    private static final Map<String, String> CODEC_NAMES = Map.ofEntries(
+        Map.entry("avc1", "h264"),
+        Map.entry("avc3", "h264"),
+        Map.entry("hvc1", "hevc"),
+        Map.entry("hev1", "hevc"),
+        Map.entry("av01", "av1"),
+        Map.entry("vp08", "vp8"),
+        Map.entry("vp09", "vp9"),
+        Map.entry("mp4v", "mpeg4"),
+        Map.entry("jpeg", "mjpeg"),
+        Map.entry("mjpa", "mjpeg"),
+        Map.entry("mp4a", "aac"),
+        Map.entry("Opus", "opus"),
+        Map.entry("fLaC", "flac"),
+        Map.entry("ac-3", "ac3"),
+        Map.entry("ec-3", "eac3"),
+        Map.entry(".mp3", "mp3"),
+        Map.entry("alaw", "pcm_alaw"),
+        Map.entry("ulaw", "pcm_mulaw")
+    );
+
+    private Mp4MetaParser() {
+    }
+
+    /**
+     * Parse the meta information of a video file.
+     * @param file the video file
+     * @return the meta information or null, if the file is no MP4 file or cannot be parsed
+     * @throws IOException if the file cannot be read
+     */
+    static VideoMetaInfo parse(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final ByteBuffer moov = readMoov(channel);
+            if (moov == null) {
+                return null;
+            }
+            return parseMoov(moov);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            LOGGER.info("Cannot parse MP4 boxes of \"{}\": {}", file, e.toString());
+            return null;
+        }
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Walk the top level boxes until moov is found.
+     * @return the content of the moov box or null, if there is none
+     */
+    private static ByteBuffer readMoov(FileChannel channel) throws IOException {
+        final long fileSize = channel.size();
+        final ByteBuffer header = ByteBuffer.allocate(16);
+        long position = 0L;
+        while (position + 8 <= fileSize) {
+            header.clear();
+            readFully(channel, header, position);
+            header.flip();
+            long size = header.getInt() & 0xFFFFFFFFL;
+            final String type = fourCC(header);
+            int headerSize = 8;
+            if (size == 1L) {
+                if (header.remaining() < 8) {
+                    return null;
+                }
+                size = header.getLong();
+                headerSize = 16;
+            } else if (size == 0L) {
+                size = fileSize - position;
+            }
+            if (size < headerSize || (position == 0L && !TOP_LEVEL_BOXES.contains(type))) {
+                return null;
+            }
+            if ("moov".equals(type)) {
+                final long contentSize = size - headerSize;
+                if (contentSize > MAX_MOOV_SIZE || position + size > fileSize) {
+                    return null;
+                }
+                final ByteBuffer content = ByteBuffer.allocate((int) contentSize);
+                readFully(channel, content, position + headerSize);
+                content.flip();
+                return content;
+            }
+            position += size;
+        }
+        return null;
+    }
+
+    private static VideoMetaInfo parseMoov(ByteBuffer moov) {
+        long movieTimescale = 0L;
+        long movieDuration = 0L;
+        Track video = null;
+        Track audio = null;
+        while (moov.remaining() >= 8) {
+            final Box box = nextBox(moov);
+            final ByteBuffer content = box.content();
+            switch (box.type()) {
+                case "mvhd" -> {
+                    final int version = content.get();
+                    skip(content, 3 + (version == 1 ? 16 : 8));
+                    movieTimescale = content.getInt() & 0xFFFFFFFFL;
+                    movieDuration = version == 1 ? content.getLong() : content.getInt() & 0xFFFFFFFFL;
+                }
+                case "trak" -> {
+                    final Track track = new Track();
+                    parseContainer(content, track);
+                    if ("vide".equals(track.handler) && video == null) {
+                        video = track;
+                    } else if ("soun".equals(track.handler) && audio == null) {
+                        audio = track;
+                    }
+                }
+                // fragmented: the samples and the duration are in the fragments
+                case "mvex" -> {
+                    return null;
+                }
+                default -> {
+                }
+            }
+        }
+        if (video == null || movieTimescale == 0L) {
+            return null;
+        }
+        final int framesPerSecond = video.duration > 0L ? (int) (video.samples * video.timescale / video.duration) : 0;
+        return new VideoMetaInfo(
+            codecName(video.codec),
+            audio != null ? codecName(audio.codec) : "",
+            (int) (movieDuration / movieTimescale),
+            video.width + "x" + video.height,
+            framesPerSecond
+        );
+    }
+
+    // trak, mdia, minf and stbl are only containers for the boxes, that are of interest
+    private static void parseContainer(ByteBuffer container, Track track) {
+        while (container.remaining() >= 8) {
+            final Box box = nextBox(container);
+            final ByteBuffer content = box.content();
+            switch (box.type()) {
+                case "mdia", "minf", "stbl" -> parseContainer(content, track);
+                case "tkhd" -> {
+                    // the presentation size is the fallback for sample entries without size
+                    skip(content, content.remaining() - 8);
+                    track.width = content.getInt() >>> 16;
+                    track.height = content.getInt() >>> 16;
+                }
+                case "mdhd" -> {
+                    final int version = content.get();
+                    skip(content, 3 + (version == 1 ? 16 : 8));
+                    track.timescale = content.getInt() & 0xFFFFFFFFL;
+                    track.duration = version == 1 ? content.getLong() : content.getInt() & 0xFFFFFFFFL;
+                }
+                case "hdlr" -> {
+                    skip(content, 8);
+                    track.handler = fourCC(content);
+                }
+                case "stsd" -> {
+                    skip(content, 8);
+                    final Box entry = nextBox(content);
+                    track.codec = entry.type();
+                    // visual sample entry: 6 reserved, 2 data reference index, 16 pre-defined/reserved, width, height
+                    if ("vide".equals(track.handler) && entry.content().remaining() >= 28) {
+                        skip(entry.content(), 24);
+                        final int width = entry.content().getShort() & 0xFFFF;
+                        final int height = entry.content().getShort() & 0xFFFF;
+                        if (width > 0 && height > 0) {
+                            track.width = width;
+                            track.height = height;
+                        }
+                    }
+                }
+                case "stts" -> {
+                    skip(content, 4);
+                    final int entries = content.getInt();
+                    long samples = 0L;
+                    for (int i = 0; i < entries; i++) {
+                        samples += content.getInt() & 0xFFFFFFFFL;
+                        skip(content, 4);
+                    }
+                    track.samples = samples;
+                }
+                default -> {
+                }
+            }
+        }
+    }
+
+    /**
+     * The next box of a container. The position of the container is moved behind the box.
+     */
+    private static Box nextBox(ByteBuffer container) {
+        final int start = container.position();
+        long size = container.getInt() & 0xFFFFFFFFL;
+        final String type = fourCC(container);
+        int headerSize = 8;
+        if (size == 1L) {
+            size = container.getLong();
+            headerSize = 16;
+        } else if (size == 0L) {
+            size = container.limit() - start;
+        }
+        if (size < headerSize || size > container.limit() - start) {
+            throw new IllegalArgumentException("Invalid box \"" + type + "\" with size " + size + " at " + start);
+        }
+        final ByteBuffer content = container.slice(start + headerSize, (int) size - headerSize);
+        container.position(start + (int) size);
+        return new Box(type, content);
+    }
+
+    private static String fourCC(ByteBuffer buffer) {
+        final byte[] bytes = new byte[4];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private static String codecName(String fourCC) {
+        return fourCC == null ? "" : CODEC_NAMES.getOrDefault(fourCC, fourCC.trim());
+    }
+
+    private static void skip(ByteBuffer buffer, int bytes) {
+        buffer.position(buffer.position() + bytes);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+        }
+    }
+
+    private record Box(String type, ByteBuffer content) {
+    }
+
+    private static final class Track {
+        String handler;
+        String codec;
+        int width;
+        int height;
+        long timescale;
+        long duration;
+        long samples;
+    }
+}
@@ -1,81 +1,194 @@
 package com.giraone.camera.service.video;
 
+import io.micrometer.core.instrument.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
+/**
+ * Execution of OS commands (ffmpeg, ffprobe).
+ * <ul>
+ *     <li>the result is a {@link Mono}, that completes, when the process exits - no thread waits for the process</li>
+ *     <li>standard output and standard error are drained concurrently, so a chatty process never blocks on a full
+ *     pipe; they are read in fixed chunks and only the last {@value #MAX_OUTPUT_CHARS} characters of each are kept,
+ *     so the memory stays bounded even for output without line breaks</li>
+ *     <li>on timeout or when the subscription is cancelled, the process and all its child processes are killed</li>
+ *     <li>the duration and the exit code are recorded per command type in the metric {@value #METRIC_DURATION}</li>
+ * </ul>
+ */
 public class OsUtil {
     private static final Logger LOGGER = LoggerFactory.getLogger(OsUtil.class);
 
-    public static OsCommandResult runCommand(String[] command) {
-        return runCommand(command, 30);
+    static final String METRIC_DURATION = "camera.process.duration";
+    static final int MAX_OUTPUT_CHARS = 16 * 1024;
+    // Lines passed to a line consumer are cut after this length.
+    static final int MAX_LINE_CHARS = 1024;
+    private static final int READ_BUFFER_CHARS = 4096;
+
+    public static final int CODE_IO_ERROR = -1;
+    public static final int CODE_TIMEOUT = -3;
+
+    // Two threads per running process, that block on reading its output streams.
+    private static final ExecutorService OUTPUT_READERS = Executors.newCachedThreadPool(new ThreadFactory());
+
+    private OsUtil() {
     }
 
-    public static OsCommandResult runCommand(String[] command, int maxWaitTimeinSeconds) {
-        Process p = null;
-        LOGGER.info("OsCommandResult.runCommand: {}", commandStringFromArray(command));
-        final long start = System.currentTimeMillis();
-        try {
-            p = Runtime.getRuntime().exec(command);
-            try {
-                if (!p.waitFor(maxWaitTimeinSeconds, TimeUnit.SECONDS)) {
-                    return new OsCommandResult(-3, "Command " + commandStringFromArray(command) + " timed out after 30 seconds!", null);
-                }
-            } catch (InterruptedException interruptedException) {
-                LOGGER.error("Interrupt when running {}", commandStringFromArray(command), interruptedException);
-                return new OsCommandResult(-2, null, interruptedException);
-            }
+    public static Mono<OsCommandResult> run(String type, String[] command, Duration timeout) {
+        return run(type, command, timeout, process -> {
+        }, null);
+    }
 
-            if (LOGGER.isDebugEnabled()) {
-                final long end = System.currentTimeMillis();
-                LOGGER.debug("OsCommandResult.runCommand: ExitCode = {}}, Time = {} ms", p.exitValue(), (end - start));
-            }
-            return new OsCommandResult(p.exitValue(), null, null);
-        } catch (IOException ioe) {
-            LOGGER.error("IO Error running {}", commandStringFromArray(command), ioe);
-            return new OsCommandResult(-1, null, ioe);
-        }
+    /**
+     * Run a command.
+     * @param type the command type for logging and metrics, e.g. "probe" or "thumbnail"
+     * @param command the command and its arguments
+     * @param timeout the process tree is killed, when it runs longer
+     * @param processStarted called with the started process, e.g. to be able to destroy it
+     * @param lineConsumer called for each non-empty line of the standard output, while the command is running - may
+     *                     be null. Lines longer than {@value #MAX_LINE_CHARS} characters are cut.
+     * @return the result with exit code and the tail of standard output and standard error. Code
+     * {@link #CODE_IO_ERROR}, if the command cannot be started, {@link #CODE_TIMEOUT} on timeout.
+     */
+    public static Mono<OsCommandResult> run(String type, String[] command, Duration timeout,
+                                            Consumer<Process> processStarted, Consumer<String> lineConsumer) {
+        return run(type, command, new ProcessBuilder(command), timeout, processStarted, lineConsumer);
+    }
+
+    /**
+     * Run a command, that writes binary data, e.g. an image, to its standard output. The standard output is
+     * redirected into a file, so the data is neither copied nor buffered by Java.
+     * @param type the command type for logging and metrics, e.g. "thumbnail"
+     * @param command the command and its arguments
+     * @param timeout the process tree is killed, when it runs longer
+     * @param outputFile the file for the standard output - created or truncated
+     * @return the result with exit code and the tail of standard error - the output is always empty
+     */
+    public static Mono<OsCommandResult> run(String type, String[] command, Duration timeout, Path outputFile) {
+        return run(type, command, new ProcessBuilder(command).redirectOutput(outputFile.toFile()), timeout,
+            process -> {
+            }, null);
     }
 
-    public static OsCommandResult runCommandAndReadOutput(String[] command, long maxWaitTimeInMilliseconds) {
-        StringBuilder builder = new StringBuilder();
-        Process p = null;
-        LOGGER.info("OsCommandResult.runCommandAndReadOutput: {}", commandStringFromArray(command));
-        final long start = System.currentTimeMillis();
-        try {
-            p = Runtime.getRuntime().exec(command);
+    //------------------------------------------------------------------------------------------------------------------
+
+    private static Mono<OsCommandResult> run(String type, String[] command, ProcessBuilder processBuilder,
+                                             Duration timeout, Consumer<Process> processStarted,
+                                             Consumer<String> lineConsumer) {
+        return Mono.defer(() -> {
+            final String commandString = commandStringFromArray(command);
+            LOGGER.info("OsUtil.run {}: {}", type, commandString);
+            final long start = System.nanoTime();
+            final Process process;
             try {
-                if (!p.waitFor(maxWaitTimeInMilliseconds, TimeUnit.MILLISECONDS)) {
-                    return new OsCommandResult(-3, "Command " + commandStringFromArray(command) + " timed out after 30 seconds!", null);
-                }
-            } catch (InterruptedException interruptedException) {
-                LOGGER.error("Interrupt when running {}", commandStringFromArray(command), interruptedException);
-                return new OsCommandResult(-2, null, interruptedException);
+                process = processBuilder.start();
+                // Nothing is sent to the process - ffmpeg would otherwise wait for keyboard commands.
+                process.getOutputStream().close();
+            } catch (IOException ioe) {
+                LOGGER.error("IO Error running {}", commandString, ioe);
+                return Mono.just(recorded(type, start, new OsCommandResult(CODE_IO_ERROR, null, null, ioe)));
             }
+            processStarted.accept(process);
+            final Output output = new Output();
+            final Output errorOutput = new Output();
+            final CompletableFuture<Void> outputDrained = drain(process.getInputStream(), output, lineConsumer);
+            final CompletableFuture<Void> errorOutputDrained = drain(process.getErrorStream(), errorOutput, null);
+            final CompletableFuture<OsCommandResult> exited = process.onExit()
+                .thenCombine(CompletableFuture.allOf(outputDrained, errorOutputDrained),
+                    (exitedProcess, unused) -> new OsCommandResult(exitedProcess.exitValue(), output.toString(),
+                        errorOutput.toString(), null));
+            return Mono.fromFuture(exited)
+                .timeout(timeout)
+                .onErrorResume(TimeoutException.class, e -> {
+                    killProcessTree(process);
+                    return Mono.just(new OsCommandResult(CODE_TIMEOUT, output.toString(),
+                        "Command " + commandString + " timed out after " + timeout.toMillis() + " milliseconds!", null));
+                })
+                .map(result -> {
+                    LOGGER.debug("OsUtil.run {}: ExitCode = {}, Time = {} ms", type, result.code(),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    return recorded(type, start, result);
+                })
+                .doOnCancel(() -> {
+                    LOGGER.info("OsUtil.run {} cancelled: {}", type, commandString);
+                    killProcessTree(process);
+                    record(type, start, "cancelled");
+                });
+        });
+    }
 
-            if (LOGGER.isDebugEnabled()) {
-                final long end = System.currentTimeMillis();
-                LOGGER.debug("OsCommandResult.runCommandAndReadOutput: ExitCode = {}}, Time = {} ms", p.exitValue(), (end - start));
+    // A redirected standard output is an empty stream, so its drain completes at once.
+    private static CompletableFuture<Void> drain(InputStream in, Output output, Consumer<String> lineConsumer) {
+        return CompletableFuture.runAsync(() -> {
+            final char[] buffer = new char[READ_BUFFER_CHARS];
+            final StringBuilder line = new StringBuilder();
+            try (Reader reader = new InputStreamReader(in)) {
+                int count;
+                while ((count = reader.read(buffer)) >= 0) {
+                    output.append(buffer, count);
+                    if (lineConsumer != null) {
+                        splitLines(buffer, count, line, lineConsumer);
+                    }
+                }
+                if (lineConsumer != null && !line.isEmpty()) {
+                    lineConsumer.accept(line.toString());
+                }
+            } catch (IOException ioe) {
+                // The stream is closed, when the process is killed.
+                LOGGER.debug("Output stream closed: {}", ioe.getMessage());
             }
+        }, OUTPUT_READERS);
+    }
 
-            try (BufferedReader commandResult = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
-                String s;
-                while ((s = commandResult.readLine()) != null) {
-                    builder.append(s);
-                    builder.append("\r\n");
+    private static void splitLines(char[] buffer, int count, StringBuilder line, Consumer<String> lineConsumer) {
+        for (int i = 0; i < count; i++) {
+            final char c = buffer[i];
+            if (c == '\n' || c == '\r') {
+                if (!line.isEmpty()) {
+                    lineConsumer.accept(line.toString());
+                    line.setLength(0);
                 }
-                return new OsCommandResult(p.exitValue(), builder.toString(), null);
+            } else if (line.length() < MAX_LINE_CHARS) {
+                line.append(c);
             }
-        } catch (IOException ioe) {
-            LOGGER.error("IO Error running {}", commandStringFromArray(command), ioe);
-            return new OsCommandResult(-1, null, ioe);
         }
     }
 
+    private static void killProcessTree(Process process) {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    private static OsCommandResult recorded(String type, long start, OsCommandResult result) {
+        final String exit = switch (result.code()) {
+            case CODE_IO_ERROR -> "error";
+            case CODE_TIMEOUT -> "timeout";
+            default -> Integer.toString(result.code());
+        };
+        record(type, start, exit);
+        return result;
+    }
+
+    // The global registry contains the registry of the application context.
+    private static void record(String type, long start, String exit) {
+        Metrics.timer(METRIC_DURATION, "command", type, "exit", exit)
+            .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
     private static String commandStringFromArray(String[] command) {
         StringBuilder ret = new StringBuilder();
         for (int i = 0; i < command.length; i++) {
@@ -87,6 +200,66 @@ public class OsUtil {
         return ret.toString();
     }
 
-    public record OsCommandResult(int code, String output, Exception exception) {
+    /**
+     * The last {@link #MAX_OUTPUT_CHARS} characters of an output stream in a ring buffer.
+     */
+    private static final class Output {
+
+        private final char[] ring = new char[MAX_OUTPUT_CHARS];
+        private long written;
+
+        synchronized void append(char[] chars, int count) {
+            // Only the end of a chunk, that is larger than the ring, is kept.
+            int from = Math.max(0, count - ring.length);
+            written += from;
+            while (from < count) {
+                final int index = (int) (written % ring.length);
+                final int length = Math.min(count - from, ring.length - index);
+                System.arraycopy(chars, from, ring, index, length);
+                from += length;
+                written += length;
+            }
+        }
+
+        @Override
+        public synchronized String toString() {
+            final int size = (int) Math.min(written, ring.length);
+            final int start = (int) ((written - size) % ring.length);
+            final StringBuilder ret = new StringBuilder(size + 3);
+            if (written > ring.length) {
+                ret.append("...");
+            }
+            ret.append(ring, start, Math.min(size, ring.length - start));
+            if (start + size > ring.length) {
+                ret.append(ring, 0, start + size - ring.length);
+            }
+            int end = ret.length();
+            while (end > 0 && (ret.charAt(end - 1) == '\n' || ret.charAt(end - 1) == '\r')) {
+                end--;
+            }
+            ret.setLength(end);
+            return ret.toString();
+        }
+    }
+
+    private static final class ThreadFactory implements java.util.concurrent.ThreadFactory {
+
+        private final AtomicInteger threadCounter = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, "os-process-output-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * @param code the exit code of the process - negative, if the process could not be started or timed out
+     * @param output the tail of the standard output
+     * @param errorOutput the tail of the standard error - or the reason of a timeout
+     * @param exception the reason, why the process could not be started
+     */
+    public record OsCommandResult(int code, String output, String errorOutput, Exception exception) {
     }
 }
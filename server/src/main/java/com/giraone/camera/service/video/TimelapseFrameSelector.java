@@ -0,0 +1,106 @@
+package com.giraone.camera.service.video;
+
+import com.giraone.camera.service.video.model.TimelapseCommand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Selection of the images of a timelapse video, before ffmpeg is called. ffmpeg demuxes and decodes every
+ * image in its input list - also the ones dropped by a select filter - so only the used images are passed.
+ * <ul>
+ *     <li>images, that do not exist or are empty, are skipped</li>
+ *     <li>{@link TimelapseCommand#targetFrames()} - evenly distributed images up to this number</li>
+ *     <li>{@link TimelapseCommand#minutesPerFrame()} - one image per interval based on the capture (modification) time</li>
+ *     <li>{@link TimelapseCommand#select()} - every n-th image</li>
+ * </ul>
+ * The first given mode wins. The order of the images is kept.
+ */
+final class TimelapseFrameSelector {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimelapseFrameSelector.class);
+
+    private TimelapseFrameSelector() {
+    }
+
+    /**
+     * @param timelapseCommand the images and the selection parameters
+     * @param resolver maps an image name to its file
+     * @return the files of the selected images
+     */
+    static List<Path> select(TimelapseCommand timelapseCommand, Function<String, Path> resolver) {
+        final List<Frame> frames = new ArrayList<>(timelapseCommand.inputFileNames().size());
+        for (String fileName : timelapseCommand.inputFileNames()) {
+            final Path file = resolver.apply(fileName);
+            try {
+                final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class,
+                    LinkOption.NOFOLLOW_LINKS);
+                if (attributes.isRegularFile() && attributes.size() > 0L) {
+                    frames.add(new Frame(file, attributes.lastModifiedTime().toMillis()));
+                } else {
+                    LOGGER.warn("Skipping empty timelapse image \"{}\".", fileName);
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Skipping missing timelapse image \"{}\".", fileName);
+            }
+        }
+        final List<Frame> selected;
+        if (timelapseCommand.targetFrames() > 0) {
+            selected = selectCount(frames, timelapseCommand.targetFrames());
+        } else if (timelapseCommand.minutesPerFrame() > 0) {
+            selected = selectInterval(frames, TimeUnit.MINUTES.toMillis(timelapseCommand.minutesPerFrame()));
+        } else {
+            selected = selectModulo(frames, Math.max(1, timelapseCommand.select()));
+        }
+        LOGGER.info("Selected {} of {} timelapse images ({} usable).", selected.size(),
+            timelapseCommand.inputFileNames().size(), frames.size());
+        return selected.stream().map(Frame::file).toList();
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    static <T> List<T> selectModulo(List<T> frames, int select) {
+        final List<T> ret = new ArrayList<>(frames.size() / select + 1);
+        for (int i = 0; i < frames.size(); i += select) {
+            ret.add(frames.get(i));
+        }
+        return ret;
+    }
+
+    static <T> List<T> selectCount(List<T> frames, int targetFrames) {
+        if (frames.size() <= targetFrames) {
+            return frames;
+        }
+        final List<T> ret = new ArrayList<>(targetFrames);
+        for (int i = 0; i < targetFrames; i++) {
+            // first and last image are always used
+            final int index = targetFrames == 1 ? 0 : (int) ((long) i * (frames.size() - 1) / (targetFrames - 1));
+            ret.add(frames.get(index));
+        }
+        return ret;
+    }
+
+    static List<Frame> selectInterval(List<Frame> frames, long intervalMillis) {
+        final List<Frame> ret = new ArrayList<>();
+        long next = Long.MIN_VALUE;
+        for (Frame frame : frames) {
+            if (frame.capturedMillis() >= next) {
+                ret.add(frame);
+                next = frame.capturedMillis() + intervalMillis;
+            }
+        }
+        return ret;
+    }
+
+    record Frame(Path file, long capturedMillis) {
+    }
+}
@@ -0,0 +1,364 @@
+package com.giraone.camera.service.video;
+
+import com.giraone.camera.config.ApplicationProperties;
+import com.giraone.camera.service.FileService;
+import com.giraone.camera.service.model.FileInfo;
+import com.giraone.camera.service.video.model.TimelapseCommand;
+import com.giraone.camera.service.video.model.TimelapseJob;
+import com.giraone.camera.service.video.model.TimelapseJobState;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous creation of timelapse videos.
+ * <ul>
+ *     <li>jobs are queued and get an id at once - the caller polls the job state</li>
+ *     <li>the number of concurrently running ffmpeg processes is limited; further jobs wait in a bounded queue</li>
+ *     <li>the progress is taken from the frame count reported by ffmpeg</li>
+ *     <li>queued jobs can be cancelled, running jobs are cancelled by killing their ffmpeg processes</li>
+ *     <li>running jobs fail, when they exceed the configured run time - the timeout is cancelled with the job</li>
+ *     <li>the records of the last finished jobs are kept for polling</li>
+ * </ul>
+ */
+@Service
+public class TimelapseJobService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimelapseJobService.class);
+
+    private static final String METRIC_PREFIX = "camera.timelapse.jobs";
+
+    private final FileService fileService;
+    private final int jobHistory;
+    private final long jobTimeoutMinutes;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledThreadPoolExecutor timeouts;
+    // guarded by itself, in submit order
+    private final Map<String, Job> jobs = new LinkedHashMap<>();
+
+    public TimelapseJobService(FileService fileService, ApplicationProperties applicationProperties,
+                               MeterRegistry meterRegistry) {
+        this.fileService = fileService;
+        this.jobHistory = Math.max(1, applicationProperties.getTimelapseJobHistory());
+        final int workers = Math.max(1, applicationProperties.getTimelapseMaxConcurrentJobs());
+        this.jobTimeoutMinutes = Math.max(0, applicationProperties.getTimelapseJobTimeoutMinutes());
+        final AtomicInteger threadCounter = new AtomicInteger(0);
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(Math.max(1, applicationProperties.getTimelapseMaxQueuedJobs())),
+            runnable -> {
+                final Thread thread = new Thread(runnable, "timelapse-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+        this.timeouts = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final Thread thread = new Thread(runnable, "timelapse-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // The timeout of each finished job is cancelled - it must not stay in the queue until it is due.
+        this.timeouts.setRemoveOnCancelPolicy(true);
+
+        Gauge.builder(METRIC_PREFIX + ".queued", executor, e -> e.getQueue().size())
+            .description("Number of timelapse jobs waiting for a free ffmpeg slot")
+            .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".running", executor, ThreadPoolExecutor::getActiveCount)
+            .description("Number of timelapse jobs currently encoding")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Queue a new timelapse job.
+     * @param timelapseCommand the images and the encoding parameters
+     * @return the state of the queued job
+     * @throws IllegalArgumentException if the command is invalid
+     * @throws RejectedExecutionException if too many jobs are queued
+     */
+    public TimelapseJob submit(TimelapseCommand timelapseCommand) {
+        timelapseCommand.validate();
+        return submit(timelapseCommand.outputFilename(), estimateFrames(timelapseCommand),
+            listener -> fileService.createTimelapseVideo(timelapseCommand, listener));
+    }
+
+    /**
+     * Queue a job, that creates a video.
+     * @param outputFilename the name of the created video
+     * @param frames the estimated number of frames - updated, when the images are selected
+     * @param work creates the video in the job thread
+     * @return the state of the queued job
+     * @throws RejectedExecutionException if too many jobs are queued
+     */
+    TimelapseJob submit(String outputFilename, int frames, Work work) {
+        final Job job = new Job(UUID.randomUUID().toString(), outputFilename, frames, work);
+        synchronized (jobs) {
+            // Executed within the lock, so that a rejected job is never visible.
+            executor.execute(job);
+            jobs.put(job.id, job);
+            evictFinishedJobs();
+        }
+        LOGGER.info("Timelapse job {} queued for \"{}\" with {} frames.", job.id, outputFilename, frames);
+        return job.snapshot();
+    }
+
+    public Optional<TimelapseJob> get(String jobId) {
+        return findJob(jobId).map(Job::snapshot);
+    }
+
+    /**
+     * @return all active jobs and the last finished jobs - newest first
+     */
+    public List<TimelapseJob> list() {
+        final List<TimelapseJob> ret = new ArrayList<>();
+        synchronized (jobs) {
+            jobs.values().forEach(job -> ret.add(job.snapshot()));
+        }
+        Collections.reverse(ret);
+        return ret;
+    }
+
+    /**
+     * Cancel a job. A queued job is removed from the queue, the ffmpeg process of a running job is killed.
+     * Finished jobs are not changed.
+     * @param jobId the job id
+     * @return the state of the job - empty, if the job is unknown
+     */
+    public Optional<TimelapseJob> cancel(String jobId) {
+        final Optional<Job> job = findJob(jobId);
+        job.ifPresent(j -> {
+            if (j.cancel()) {
+                executor.remove(j);
+                LOGGER.info("Timelapse job {} cancelled.", jobId);
+            }
+        });
+        return job.map(Job::snapshot);
+    }
+
+    /**
+     * @param jobId the job id
+     * @return the state of the job, when it is finished - empty, if the job is unknown
+     */
+    public Mono<TimelapseJob> completion(String jobId) {
+        return Mono.justOrEmpty(findJob(jobId))
+            .flatMap(job -> Mono.fromFuture(job.completion));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+        timeouts.shutdownNow();
+        synchronized (jobs) {
+            jobs.values().forEach(Job::cancel);
+        }
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    private Optional<Job> findJob(String jobId) {
+        synchronized (jobs) {
+            return Optional.ofNullable(jobs.get(jobId));
+        }
+    }
+
+    private void evictFinishedJobs() {
+        int finished = 0;
+        for (Job job : jobs.values()) {
+            if (job.state.isFinished()) {
+                finished++;
+            }
+        }
+        final Iterator<Job> iterator = jobs.values().iterator();
+        while (finished > jobHistory && iterator.hasNext()) {
+            if (iterator.next().state.isFinished()) {
+                iterator.remove();
+                finished--;
+            }
+        }
+    }
+
+    private static int estimateFrames(TimelapseCommand timelapseCommand) {
+        final int images = timelapseCommand.inputFileNames().size();
+        if (timelapseCommand.targetFrames() > 0) {
+            return Math.min(images, timelapseCommand.targetFrames());
+        } else if (timelapseCommand.minutesPerFrame() > 0) {
+            // upper bound - the capture times are read, when the job is started
+            return images;
+        }
+        return (images + timelapseCommand.select() - 1) / timelapseCommand.select();
+    }
+
+    @FunctionalInterface
+    interface Work {
+        FileInfo create(VideoService.TimelapseListener listener) throws IOException;
+    }
+
+    private final class Job implements Runnable, VideoService.TimelapseListener {
+
+        private final String id;
+        private final String outputFilename;
+        private final Work work;
+        // estimated until the images are selected
+        private volatile int frames;
+        private final LocalDateTime created = LocalDateTime.now();
+        private final CompletableFuture<TimelapseJob> completion = new CompletableFuture<>();
+
+        // written while holding this
+        private volatile TimelapseJobState state = TimelapseJobState.QUEUED;
+        // guarded by this
+        private LocalDateTime started;
+        private LocalDateTime finished;
+        private String error;
+        private final List<Process> processes = new ArrayList<>();
+        private boolean cancelRequested;
+        private boolean timedOut;
+        private ScheduledFuture<?> timeout;
+        private volatile int framesEncoded;
+
+        Job(String id, String outputFilename, int frames, Work work) {
+            this.id = id;
+            this.outputFilename = outputFilename;
+            this.frames = frames;
+            this.work = work;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (state != TimelapseJobState.QUEUED) {
+                    return;
+                }
+                state = TimelapseJobState.RUNNING;
+                started = LocalDateTime.now();
+                if (jobTimeoutMinutes > 0) {
+                    timeout = timeouts.schedule(this::timeOut, jobTimeoutMinutes, TimeUnit.MINUTES);
+                }
+            }
+            try {
+                final FileInfo fileInfo = work.create(this);
+                finish(TimelapseJobState.SUCCEEDED, null);
+                LOGGER.info("Timelapse job {} finished with {} bytes.", id, fileInfo.getSizeInBytes());
+            } catch (Exception exc) {
+                final boolean cancelled;
+                final boolean expired;
+                synchronized (this) {
+                    cancelled = cancelRequested;
+                    expired = timedOut;
+                }
+                if (expired) {
+                    LOGGER.warn("Timelapse job {} timed out after {} minutes!", id, jobTimeoutMinutes);
+                    finish(TimelapseJobState.FAILED, "Timed out after " + jobTimeoutMinutes + " minutes");
+                } else if (cancelled) {
+                    finish(TimelapseJobState.CANCELLED, null);
+                } else {
+                    LOGGER.warn("Timelapse job {} failed!", id, exc);
+                    finish(TimelapseJobState.FAILED, exc.getMessage());
+                }
+            }
+        }
+
+        @Override
+        public void started(Process startedProcess) {
+            final boolean kill;
+            synchronized (this) {
+                processes.add(startedProcess);
+                kill = cancelRequested;
+            }
+            if (kill) {
+                startedProcess.destroy();
+            }
+        }
+
+        @Override
+        public void framesSelected(int frames) {
+            this.frames = frames;
+        }
+
+        @Override
+        public void framesEncoded(int framesEncoded) {
+            this.framesEncoded = framesEncoded;
+        }
+
+        /**
+         * @return true, if the job was active
+         */
+        boolean cancel() {
+            final List<Process> running;
+            synchronized (this) {
+                if (state.isFinished()) {
+                    return false;
+                }
+                cancelRequested = true;
+                running = new ArrayList<>(processes);
+                if (state == TimelapseJobState.QUEUED) {
+                    setFinished(TimelapseJobState.CANCELLED, null);
+                }
+            }
+            if (!running.isEmpty()) {
+                // The job thread sees the failed ffmpeg call and finishes the job as cancelled.
+                running.forEach(Process::destroy);
+            } else if (state == TimelapseJobState.CANCELLED) {
+                completion.complete(snapshot());
+            }
+            return true;
+        }
+
+        /**
+         * Called by the timeout - kills the ffmpeg processes of the job like {@link #cancel()}.
+         */
+        void timeOut() {
+            synchronized (this) {
+                if (state != TimelapseJobState.RUNNING || cancelRequested) {
+                    return;
+                }
+                timedOut = true;
+            }
+            cancel();
+        }
+
+        private void finish(TimelapseJobState finalState, String errorMessage) {
+            synchronized (this) {
+                setFinished(finalState, errorMessage);
+                if (timeout != null) {
+                    timeout.cancel(false);
+                    timeout = null;
+                }
+            }
+            completion.complete(snapshot());
+        }
+
+        private void setFinished(TimelapseJobState finalState, String errorMessage) {
+            state = finalState;
+            error = errorMessage;
+            finished = LocalDateTime.now();
+        }
+
+        synchronized TimelapseJob snapshot() {
+            final int encoded = state == TimelapseJobState.SUCCEEDED ? frames : Math.min(framesEncoded, frames);
+            return new TimelapseJob(id, state, outputFilename, frames, encoded,
+                state == TimelapseJobState.SUCCEEDED ? 100 : frames > 0 ? encoded * 100 / frames : 0,
+                created, started, finished, error);
+        }
+    }
+}
@@ -3,15 +3,19 @@ package com.giraone.camera.service.video;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.giraone.camera.config.ApplicationProperties;
 import com.giraone.imaging.ConversionCommand;
 import com.giraone.imaging.ImagingProvider;
 import com.giraone.imaging.java2.ProviderJava2D;
 import com.giraone.camera.service.FileService;
+import com.giraone.camera.service.StorageLayout;
 import com.giraone.camera.service.model.VideoMetaInfo;
+import com.giraone.camera.service.video.model.Storyboard;
 import com.giraone.camera.service.video.model.TimelapseCommand;
 import com.giraone.camera.util.ObjectMapperBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 
@@ -20,8 +24,20 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-
-import static com.giraone.camera.service.FileService.getFile;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
 @Service
 public class VideoService {
@@ -31,8 +47,12 @@ public class VideoService {
 
     private static final String INFILE = "${INFILE}";
     private static final String OUTFILE = "${OUTFILE}";
-    private static final String SELECT = "${SELECT}";
     private static final String FRAME_RATE = "${FRAME_RATE}";
+    private static final String PRESET = "${PRESET}";
+    private static final String CRF = "${CRF}";
+    private static final String POSITION = "${POSITION}";
+    private static final int THUMBNAIL_WIDTH = 160;
+    private static final int THUMBNAIL_HEIGHT = 120;
 
     private static final String PROBE_BINARY_WINDOWS = "C:/Tools/Videos/ffmpeg/bin/ffprobe";
     private static final String PROBE_BINARY_LINUX = "/usr/bin/ffprobe";
@@ -57,6 +77,22 @@ public class VideoService {
         "-update", "1",
         "-y", OUTFILE // Overwrite output files without asking.
     };
+    private static final String[] COMMAND_THUMBNAIL_KEYFRAME = new String[]{
+        BINARY_LINUX,
+        "-hide_banner",
+        "-loglevel", "error",
+        "-skip_frame", "nokey", // decode only key frames
+        "-noaccurate_seek", // take the key frame in front of the position instead of decoding up to the position
+        "-ss", POSITION,
+        "-i", INFILE,
+        "-an",
+        "-frames:v", "1",
+        "-vf", "scale=" + THUMBNAIL_WIDTH + ":" + THUMBNAIL_HEIGHT + ":force_original_aspect_ratio=decrease",
+        "-c:v", "mjpeg",
+        "-q:v", "3",
+        "-f", "image2pipe",
+        "pipe:1" // the JPEG is written to standard output
+    };
     private static final String[] COMMAND_TIMELAPSE = new String[]{
         BINARY_LINUX,
         "-hide_banner",
@@ -66,12 +102,69 @@ public class VideoService {
         "-i", INFILE,
         "-framerate", "${FRAME_RATE}",
         "-c:v", "libx264", // encode using H264 Video codec
-        "-vf", "select='not(mod(n\\,${SELECT}))',setpts=N/FRAME_RATE/TB,format=yuv420p", // apply filter
+        "-preset", PRESET,
+        "-crf", CRF,
+        "-vf", "setpts=N/FRAME_RATE/TB,format=yuv420p", // apply filter - the images are selected before
         "-profile", "baseline",
+        "-progress", "pipe:1", // progress as key=value lines, e.g. "frame=42"
+        "-nostats",
+        "-y", OUTFILE // Overwrite output files without asking.
+    };
+    private static final String[] COMMAND_STORYBOARD = new String[]{
+        BINARY_LINUX,
+        "-hide_banner",
+        "-loglevel", "error",
+        "-i", INFILE,
+        "-an",
+        "-vf", "${FILTER}", // fps, scale and tile - all tiles in one pass
+        "-frames:v", "1",
+        "-q:v", "4",
         "-y", OUTFILE // Overwrite output files without asking.
     };
+    private static final String[] COMMAND_CONCAT = new String[]{
+        BINARY_LINUX,
+        "-hide_banner",
+        "-loglevel", "error",
+        "-f", "concat",
+        "-safe", "0",
+        "-i", INFILE,
+        "-c", "copy", // join the encoded segments without re-encoding
+        "-y", OUTFILE // Overwrite output files without asking.
+    };
+    private static final String PROGRESS_FRAME = "frame=";
+    private static final Duration PROBE_TIMEOUT = Duration.ofSeconds(30);
+    private static final Duration THUMBNAIL_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration STORYBOARD_TIMEOUT = Duration.ofSeconds(30);
 
     private final ImagingProvider imagingProvider = new ProviderJava2D();
+    private final int segmentParallelism;
+    private final int segmentMinFrames;
+    private final String preset;
+    private final int crf;
+    private final ApplicationProperties.VideoThumbnailMode thumbnailMode;
+    private final double thumbnailPosition;
+    private final StorageLayout imagesLayout;
+
+    public VideoService() {
+        this(new ApplicationProperties());
+    }
+
+    public VideoService(ApplicationProperties applicationProperties) {
+        this(applicationProperties, new StorageLayout(FileService.IMAGES_BASE, applicationProperties.getImagesLayout()));
+    }
+
+    @Autowired
+    public VideoService(ApplicationProperties applicationProperties, StorageLayout imagesLayout) {
+        this.segmentParallelism = applicationProperties.getTimelapseSegmentParallelism() > 0
+            ? applicationProperties.getTimelapseSegmentParallelism()
+            : Runtime.getRuntime().availableProcessors();
+        this.segmentMinFrames = Math.max(1, applicationProperties.getTimelapseSegmentMinFrames());
+        this.preset = applicationProperties.getTimelapsePreset();
+        this.crf = applicationProperties.getTimelapseCrf();
+        this.thumbnailMode = applicationProperties.getVideoThumbnailMode();
+        this.thumbnailPosition = Math.min(1.0, Math.max(0.0, applicationProperties.getVideoThumbnailPosition()));
+        this.imagesLayout = imagesLayout;
+    }
 
     public String extractVideoInfoFull(Path inputFile) throws IOException {
         Path tempFile = Files.createTempFile("v-info-", ".json");
@@ -82,7 +175,7 @@ public class VideoService {
                 if (OUTFILE.equals(ffmpegCommands[i])) ffmpegCommands[i] = tempFile.toAbsolutePath().toString().replace('\\', '/');
             }
 
-            OsUtil.OsCommandResult result = OsUtil.runCommand(ffmpegCommands);
+            OsUtil.OsCommandResult result = OsUtil.run("probe", ffmpegCommands, PROBE_TIMEOUT).block();
             if (result.code() >= 0) {
                 if (Files.size(tempFile) > 0L) {
                     return Files.readString(tempFile);
@@ -93,7 +186,7 @@ public class VideoService {
                 if (result.exception() != null) {
                     throw new OsCallException("Cannot probe video \"" + inputFile + "\"!", result.exception());
                 } else {
-                    throw new OsCallException("Cannot probe video \"" + inputFile + "\"! " + result.output());
+                    throw new OsCallException("Cannot probe video \"" + inputFile + "\"! " + result.errorOutput());
                 }
             }
         } finally {
@@ -101,7 +194,15 @@ public class VideoService {
         }
     }
 
+    /**
+     * Extract the meta information of a video. MP4 files are parsed in-process, only other containers need ffprobe.
+     */
     public VideoMetaInfo extractVideoMetaInfo(Path inputFile) throws IOException {
+        final VideoMetaInfo mp4MetaInfo = Mp4MetaParser.parse(inputFile);
+        if (mp4MetaInfo != null) {
+            return mp4MetaInfo;
+        }
+        LOGGER.debug("No MP4 meta data in \"{}\". Using ffprobe.", inputFile);
         String jsonString = extractVideoInfoFull(inputFile);
         if (jsonString == null) {
             return new VideoMetaInfo("ERROR (ffprobe)", "", 0, "ERROR (ffprobe)", 0);
@@ -124,44 +225,279 @@ public class VideoService {
         }
     }
 
+    /**
+     * Select the images of a timelapse video - missing and empty images are skipped.
+     * @param timelapseCommand the images and the selection parameters
+     * @return the files of the selected images in the order of the video
+     */
+    public List<Path> selectTimelapseFrames(TimelapseCommand timelapseCommand) {
+        return TimelapseFrameSelector.select(timelapseCommand, imagesLayout::locate);
+    }
+
     public void createTimelapseVideo(TimelapseCommand timelapseCommand, Path outputVideoFile) throws IOException {
+        createTimelapseVideo(timelapseCommand, outputVideoFile, TimelapseListener.NONE);
+    }
+
+    /**
+     * Encode a timelapse video from images with ffmpeg.
+     * @param timelapseCommand the images and the encoding parameters
+     * @param outputVideoFile the file to which the video is written
+     * @param listener informed about the started ffmpeg process and the encoding progress
+     * @throws OsCallException if ffmpeg fails, is killed or times out
+     */
+    public void createTimelapseVideo(TimelapseCommand timelapseCommand, Path outputVideoFile,
+                                     TimelapseListener listener) throws IOException {
+        final List<Path> frames = selectTimelapseFrames(timelapseCommand);
+        if (frames.isEmpty()) {
+            throw new OsCallException("No existing images for the timelapse video!");
+        }
+        listener.framesSelected(frames.size());
+        encode(frames, timelapseCommand.frameRate(), outputVideoFile, listener, segmentParallelism);
+    }
+
+    /**
+     * Encode the frames - split into up to {@code parallelism} segments, that are encoded by parallel ffmpeg
+     * processes and joined without re-encoding. Each segment has at least {@code timelapse-segment-min-frames}
+     * frames, so short videos are encoded by a single process.
+     */
+    void encode(List<Path> frames, int frameRate, Path outputVideoFile, TimelapseListener listener,
+                int parallelism) throws IOException {
+        final int segments = Math.max(1, Math.min(parallelism, frames.size() / segmentMinFrames));
+        if (segments == 1) {
+            encodeSegment(frames, frameRate, outputVideoFile, listener::started, listener::framesEncoded);
+        } else {
+            encodeSegments(frames, segments, frameRate, outputVideoFile, listener);
+        }
+    }
+
+    private void encodeSegments(List<Path> frames, int segments, int frameRate, Path outputVideoFile,
+                                TimelapseListener listener) throws IOException {
+        final int segmentSize = (frames.size() + segments - 1) / segments;
+        LOGGER.info("Encoding {} frames in {} segments of {} frames.", frames.size(), segments, segmentSize);
+        final Path segmentDir = Files.createTempDirectory("f2mp4-segments-");
+        final List<Path> segmentFiles = new ArrayList<>(segments);
+        final List<Process> processes = new CopyOnWriteArrayList<>();
+        final AtomicIntegerArray framesEncoded = new AtomicIntegerArray(segments);
+        final AtomicInteger threadCounter = new AtomicInteger(0);
+        final ExecutorService executor = Executors.newFixedThreadPool(segments, runnable -> {
+            final Thread thread = new Thread(runnable, "timelapse-segment-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            final CompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+            for (int i = 0; i < segments; i++) {
+                final int segment = i;
+                final List<Path> segmentFrames = frames.subList(i * segmentSize, Math.min(frames.size(), (i + 1) * segmentSize));
+                final Path segmentFile = segmentDir.resolve(String.format("segment-%03d.mp4", i));
+                segmentFiles.add(segmentFile);
+                completionService.submit(() -> {
+                    encodeSegment(segmentFrames, frameRate, segmentFile,
+                        process -> {
+                            processes.add(process);
+                            listener.started(process);
+                        },
+                        encoded -> {
+                            framesEncoded.set(segment, encoded);
+                            listener.framesEncoded(sum(framesEncoded));
+                        });
+                    return null;
+                });
+            }
+            for (int i = 0; i < segments; i++) {
+                awaitSegment(completionService, processes);
+            }
+            concat(segmentFiles, outputVideoFile);
+        } finally {
+            executor.shutdownNow();
+            for (Path segmentFile : segmentFiles) {
+                Files.deleteIfExists(segmentFile);
+            }
+            Files.deleteIfExists(segmentDir);
+        }
+    }
+
+    // The first failed segment stops all others.
+    private static void awaitSegment(CompletionService<Void> completionService, List<Process> processes) throws IOException {
+        try {
+            completionService.take().get();
+        } catch (ExecutionException e) {
+            processes.forEach(Process::destroy);
+            if (e.getCause() instanceof IOException ioe) {
+                throw ioe;
+            } else if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new OsCallException("Encoding of segment failed!", e.getCause());
+        } catch (InterruptedException e) {
+            processes.forEach(Process::destroy);
+            Thread.currentThread().interrupt();
+            throw new OsCallException("Encoding of segments interrupted!", e);
+        }
+    }
+
+    /**
+     * Join videos, that are encoded with the same parameters, without re-encoding.
+     */
+    void concat(List<Path> segmentFiles, Path outputVideoFile) throws IOException {
+        final Path inputListFile = Files.createTempFile("f2mp4-concat-", ".txt");
+        try {
+            writeListFile(segmentFiles, inputListFile);
+            final String[] ffmpegCommands = makeOsCmdMpeg(COMMAND_CONCAT);
+            for (int i = 0; i < ffmpegCommands.length; i++) {
+                if (INFILE.equals(ffmpegCommands[i])) ffmpegCommands[i] = inputListFile.toAbsolutePath().toString().replace('\\', '/');
+                if (OUTFILE.equals(ffmpegCommands[i])) ffmpegCommands[i] = outputVideoFile.toAbsolutePath().toString().replace('\\', '/');
+            }
+            // Stream copy is I/O bound - 100ms per segment are plenty.
+            final OsUtil.OsCommandResult result = OsUtil.run("concat", ffmpegCommands,
+                Duration.ofMillis(10_000L + segmentFiles.size() * 100L)).block();
+            checkResult(result, outputVideoFile);
+        } finally {
+            Files.deleteIfExists(inputListFile);
+        }
+    }
+
+    private void encodeSegment(List<Path> frames, int frameRate, Path outputVideoFile, Consumer<Process> processStarted,
+                               IntConsumer framesEncoded) throws IOException {
         final Path inputListFile = Files.createTempFile("f2mp4-list-", ".txt");
-        try (PrintStream out = new PrintStream(new FileOutputStream(inputListFile.toFile()))) {
-            timelapseCommand.inputFileNames().forEach(filename -> {
-                out.printf("file '%s'%n", getFile(FileService.Media.IMAGES, filename).toAbsolutePath().toString().replace('\\', '/'));
-            });
-        }
-        final long maxWaitTimeMs = timelapseCommand.inputFileNames().size() * 500L;
-        LOGGER.info("List file created \"{}\" with {} entries. Max wait = {}ms",
-            inputListFile, timelapseCommand.inputFileNames().size(), maxWaitTimeMs);
-        final String[] ffmpegCommands = makeOsCmdMpeg(COMMAND_TIMELAPSE);
-        for (int i = 0; i < ffmpegCommands.length; i++) {
-            if (INFILE.equals(ffmpegCommands[i])) ffmpegCommands[i] = inputListFile.toAbsolutePath().toString().replace('\\', '/');
-            if (OUTFILE.equals(ffmpegCommands[i])) ffmpegCommands[i] = outputVideoFile.toAbsolutePath().toString().replace('\\', '/');
-            ffmpegCommands[i] = ffmpegCommands[i].replace(SELECT, Integer.toString(timelapseCommand.select()));
-            ffmpegCommands[i] = ffmpegCommands[i].replace(FRAME_RATE, Integer.toString(timelapseCommand.frameRate()));
+        try {
+            writeListFile(frames, inputListFile);
+            final long maxWaitTimeMs = frames.size() * 500L;
+            LOGGER.info("List file created \"{}\" with {} entries. Max wait = {}ms", inputListFile, frames.size(), maxWaitTimeMs);
+            final String[] ffmpegCommands = makeOsCmdMpeg(COMMAND_TIMELAPSE);
+            for (int i = 0; i < ffmpegCommands.length; i++) {
+                if (INFILE.equals(ffmpegCommands[i])) ffmpegCommands[i] = inputListFile.toAbsolutePath().toString().replace('\\', '/');
+                if (OUTFILE.equals(ffmpegCommands[i])) ffmpegCommands[i] = outputVideoFile.toAbsolutePath().toString().replace('\\', '/');
+                ffmpegCommands[i] = ffmpegCommands[i].replace(FRAME_RATE, Integer.toString(frameRate));
+                ffmpegCommands[i] = ffmpegCommands[i].replace(PRESET, preset);
+                ffmpegCommands[i] = ffmpegCommands[i].replace(CRF, Integer.toString(crf));
+            }
+            final OsUtil.OsCommandResult result = OsUtil.run("timelapse", ffmpegCommands,
+                Duration.ofMillis(maxWaitTimeMs), processStarted,
+                line -> {
+                    // The progress is written to the standard output, error messages to the standard error.
+                    if (line.startsWith(PROGRESS_FRAME)) {
+                        framesEncoded.accept(parseIntOrZero(line.substring(PROGRESS_FRAME.length()).trim()));
+                    }
+                }).block();
+            checkResult(result, outputVideoFile);
+        } finally {
+            Files.deleteIfExists(inputListFile);
         }
-        final OsUtil.OsCommandResult result = OsUtil.runCommandAndReadOutput(ffmpegCommands, maxWaitTimeMs);
+    }
+
+    private static void writeListFile(List<Path> files, Path listFile) throws IOException {
+        try (PrintStream out = new PrintStream(new FileOutputStream(listFile.toFile()))) {
+            files.forEach(file -> out.printf("file '%s'%n", file.toAbsolutePath().toString().replace('\\', '/')));
+        }
+    }
+
+    private static void checkResult(OsUtil.OsCommandResult result, Path outputVideoFile) throws IOException {
         if (result.code() == 0) {
             final long fileSize = Files.size(outputVideoFile);
             if (fileSize < 100L) {
-                throw new OsCallException("ffmpeg call not successful! No video file created!");
+                throw new OsCallException("ffmpeg call not successful! No output file created!");
             } else {
                 LOGGER.info("ffmpeg call successful with output to {} and {} bytes.", outputVideoFile, fileSize);
-                Files.delete(inputListFile);
             }
         } else if (result.code() > 0) {
-            throw new OsCallException("ffmpeg call not successful! Exit code = " + result.code() + ". " + result.output());
+            throw new OsCallException("ffmpeg call not successful! Exit code = " + result.code() + ". " + result.errorOutput());
         } else {
             if (result.exception() != null) {
                 throw new OsCallException("ffmpeg call failed with exception!", result.exception());
             } else {
-                throw new OsCallException("ffmpeg call failed! " + result.output());
+                throw new OsCallException("ffmpeg call failed! " + result.errorOutput());
             }
         }
     }
 
+    private static int sum(AtomicIntegerArray values) {
+        int ret = 0;
+        for (int i = 0; i < values.length(); i++) {
+            ret += values.get(i);
+        }
+        return ret;
+    }
+
+    /**
+     * Create the JPEG thumbnail of a video. In mode KEYFRAME, MP4 videos are handled by a single ffmpeg call, that
+     * decodes one key frame and writes the scaled JPEG. Otherwise, or when this fails, the thumbnail filter is used.
+     */
     public void videoToThumbnail(Path inputFile, Path outputThumbnailFile) throws Exception {
+        if (thumbnailMode == ApplicationProperties.VideoThumbnailMode.KEYFRAME) {
+            final VideoMetaInfo videoMetaInfo = Mp4MetaParser.parse(inputFile);
+            if (videoMetaInfo != null) {
+                if (videoToThumbnailByKeyframe(inputFile, outputThumbnailFile,
+                    videoMetaInfo.durationSeconds() * thumbnailPosition)) {
+                    return;
+                }
+                LOGGER.info("No key frame thumbnail for \"{}\". Using the thumbnail filter.", inputFile);
+            }
+        }
+        videoToThumbnailByFilter(inputFile, outputThumbnailFile);
+    }
+
+    /**
+     * Create a storyboard sprite of a video in one ffmpeg pass: evenly spaced frames, scaled to the thumbnail width,
+     * tiled into one JPEG.
+     * @param inputFile the video
+     * @param spriteFile the JPEG to write
+     * @param tileCount number of frames
+     * @return the index of the tiles or null, if the video is too short or its size is unknown
+     * @throws IOException or {@link OsCallException}, if ffmpeg fails
+     */
+    public Storyboard createStoryboard(Path inputFile, Path spriteFile, int tileCount) throws IOException {
+        final VideoMetaInfo videoMetaInfo = extractVideoMetaInfo(inputFile);
+        final String[] size = videoMetaInfo.resolution().split("x");
+        final int width = size.length == 2 ? parseIntOrZero(size[0]) : 0;
+        final int height = size.length == 2 ? parseIntOrZero(size[1]) : 0;
+        final int durationSeconds = videoMetaInfo.durationSeconds();
+        if (width <= 0 || height <= 0 || durationSeconds <= 0 || tileCount <= 0) {
+            LOGGER.info("No storyboard for \"{}\" ({}).", inputFile, videoMetaInfo);
+            return null;
+        }
+        // even, as required by most pixel formats
+        final int tileHeight = Math.max(2, (int) Math.round((double) THUMBNAIL_WIDTH * height / width / 2.0) * 2);
+        final Storyboard storyboard = Storyboard.of(spriteFile.getFileName().toString(), tileCount, THUMBNAIL_WIDTH,
+            tileHeight, durationSeconds);
+        final String filter = "fps=" + tileCount + "/" + durationSeconds
+            + ",scale=" + THUMBNAIL_WIDTH + ":" + tileHeight
+            + ",tile=" + storyboard.columns() + "x" + storyboard.rows();
+
+        String[] ffmpegCommands = makeOsCmdMpeg(COMMAND_STORYBOARD);
+        for (int i = 0; i < ffmpegCommands.length; i++) {
+            if (INFILE.equals(ffmpegCommands[i])) ffmpegCommands[i] = inputFile.toAbsolutePath().toString().replace('\\', '/');
+            if (OUTFILE.equals(ffmpegCommands[i])) ffmpegCommands[i] = spriteFile.toAbsolutePath().toString().replace('\\', '/');
+            if ("${FILTER}".equals(ffmpegCommands[i])) ffmpegCommands[i] = filter;
+        }
+        // the whole video is decoded
+        final Duration timeout = STORYBOARD_TIMEOUT.plusSeconds(durationSeconds);
+        final OsUtil.OsCommandResult result = OsUtil.run("storyboard", ffmpegCommands, timeout).block();
+        checkResult(result, spriteFile);
+        return storyboard;
+    }
+
+    /**
+     * @return false, if ffmpeg did not write an image - e.g. there is no key frame
+     */
+    private boolean videoToThumbnailByKeyframe(Path inputFile, Path outputThumbnailFile, double positionSeconds)
+        throws IOException {
+        String[] ffmpegCommands = makeOsCmdMpeg(COMMAND_THUMBNAIL_KEYFRAME);
+        for (int i = 0; i < ffmpegCommands.length; i++) {
+            if (INFILE.equals(ffmpegCommands[i])) ffmpegCommands[i] = inputFile.toAbsolutePath().toString().replace('\\', '/');
+            if (POSITION.equals(ffmpegCommands[i])) ffmpegCommands[i] = String.format(Locale.ROOT, "%.3f", positionSeconds);
+        }
+        final OsUtil.OsCommandResult result = OsUtil.run("thumbnail", ffmpegCommands, THUMBNAIL_TIMEOUT,
+            outputThumbnailFile).block();
+        if (result.code() == 0 && Files.size(outputThumbnailFile) > 100L) {
+            return true;
+        }
+        LOGGER.debug("Key frame thumbnail failed with code {}: {}", result.code(), result.errorOutput());
+        Files.deleteIfExists(outputThumbnailFile);
+        return false;
+    }
+
+    private void videoToThumbnailByFilter(Path inputFile, Path outputThumbnailFile) throws Exception {
         final Path tempFile = Files.createTempFile("v2png-", ".png");
         try {
             String[] ffmpegCommands = makeOsCmdMpeg(COMMAND_THUMBNAIL);
@@ -170,11 +506,11 @@ public class VideoService {
                 if (OUTFILE.equals(ffmpegCommands[i])) ffmpegCommands[i] = tempFile.toAbsolutePath().toString().replace('\\', '/');
             }
 
-            final OsUtil.OsCommandResult result = OsUtil.runCommandAndReadOutput(ffmpegCommands, 5000L);
+            final OsUtil.OsCommandResult result = OsUtil.run("thumbnail", ffmpegCommands, THUMBNAIL_TIMEOUT).block();
             if (result.code() >= 0) {
                 if (Files.size(tempFile) > 100L) {
                     imagingProvider.createThumbNail(tempFile.toFile(), outputThumbnailFile.toFile(), MediaType.IMAGE_JPEG_VALUE,
-                        160, 120, ConversionCommand.CompressionQuality.LOSSY_BEST, ConversionCommand.SpeedHint.ULTRA_QUALITY);
+                        THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT, ConversionCommand.CompressionQuality.LOSSY_BEST, ConversionCommand.SpeedHint.ULTRA_QUALITY);
                 } else {
                     throw new OsCallException("Cannot create thumbnail for video \"" + inputFile + "\"! Empty PNG output.");
                 }
@@ -182,7 +518,7 @@ public class VideoService {
                 if (result.exception() != null) {
                     throw new OsCallException("Cannot create thumbnail for video \"" + inputFile + "\"!", result.exception());
                 } else {
-                    throw new OsCallException("Cannot create thumbnail for video \"" + inputFile + "\"! " + result.output());
+                    throw new OsCallException("Cannot create thumbnail for video \"" + inputFile + "\"! " + result.errorOutput());
                 }
             }
         } finally {
@@ -190,18 +526,58 @@ public class VideoService {
         }
     }
 
+    // The placeholders are replaced in the returned array, so it must be a copy of the template.
     private static String[] makeOsCmdProbe(String[] cmd) {
+        final String[] ret = cmd.clone();
         if (System.getProperty("os.name").startsWith("Windows")) {
-            cmd[0] = PROBE_BINARY_WINDOWS;
+            ret[0] = PROBE_BINARY_WINDOWS;
         }
-        return cmd;
+        return ret;
     }
 
     private static String[] makeOsCmdMpeg(String[] cmd) {
+        final String[] ret = cmd.clone();
         if (System.getProperty("os.name").startsWith("Windows")) {
-            cmd[0] = BINARY_WINDOWS;
+            ret[0] = BINARY_WINDOWS;
+        }
+        return ret;
+    }
+
+    private static int parseIntOrZero(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException nfe) {
+            return 0;
+        }
+    }
+
+    /**
+     * Listener for the progress of a timelapse encoding.
+     */
+    public interface TimelapseListener {
+
+        TimelapseListener NONE = new TimelapseListener() {
+        };
+
+        /**
+         * Called, when an ffmpeg process is started - once per segment, when the video is encoded in segments.
+         */
+        default void started(Process process) {
+        }
+
+        /**
+         * Called, when the images are selected - before ffmpeg is started.
+         * @param frames number of frames of the video
+         */
+        default void framesSelected(int frames) {
+        }
+
+        /**
+         * Called, when ffmpeg reports its progress.
+         * @param frames number of frames encoded so far - of all segments
+         */
+        default void framesEncoded(int frames) {
         }
-        return cmd;
     }
 
     static VideoMetaInfo buildVideoInfoFromFfmpegJson(String jsonString) throws JsonProcessingException {
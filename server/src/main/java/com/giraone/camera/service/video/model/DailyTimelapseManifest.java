@@ -0,0 +1,48 @@
+package com.giraone.camera.service.video.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The encoded segments of an incremental daily timelapse video.
+ * @param frameRate the frame rate of all segments - the segments can only be joined, when it is the same
+ * @param segments the segments in the order of the images
+ * @param publishedSegments number of segments contained in the published video
+ */
+public record DailyTimelapseManifest(int frameRate, List<Segment> segments, int publishedSegments) {
+
+    public static DailyTimelapseManifest empty(int frameRate) {
+        return new DailyTimelapseManifest(frameRate, List.of(), 0);
+    }
+
+    /**
+     * @return the name of the last image, that is contained in a segment - null if there is no segment
+     */
+    public String lastImage() {
+        return segments.isEmpty() ? null : segments.get(segments.size() - 1).lastImage();
+    }
+
+    public int frames() {
+        return segments.stream().mapToInt(Segment::frames).sum();
+    }
+
+    public DailyTimelapseManifest withSegment(Segment segment) {
+        final List<Segment> newSegments = new ArrayList<>(segments);
+        newSegments.add(segment);
+        return new DailyTimelapseManifest(frameRate, newSegments, publishedSegments);
+    }
+
+    public DailyTimelapseManifest published() {
+        return new DailyTimelapseManifest(frameRate, segments, segments.size());
+    }
+
+    /**
+     * One encoded segment.
+     * @param file the file name of the segment
+     * @param firstImage the name of the first image, that was considered
+     * @param lastImage the name of the last image, that was considered - missing and empty images are skipped
+     * @param frames the number of frames of the segment
+     */
+    public record Segment(String file, String firstImage, String lastImage, int frames) {
+    }
+}
@@ -0,0 +1,74 @@
+package com.giraone.camera.service.video.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The index of a storyboard sprite - a JPEG with evenly spaced frames of a video as tiles, used for scrub previews.
+ * @param sprite the file name of the sprite JPEG - relative to the index
+ * @param columns number of tiles per row
+ * @param rows number of tile rows
+ * @param tileWidth width of a tile in pixels
+ * @param tileHeight height of a tile in pixels
+ * @param durationSeconds duration of the video
+ * @param tiles the tiles in the order of the video
+ */
+public record Storyboard(String sprite, int columns, int rows, int tileWidth, int tileHeight, int durationSeconds,
+                         List<Tile> tiles) {
+
+    /**
+     * Build the index of a sprite with evenly spaced tiles.
+     * @param sprite the file name of the sprite JPEG
+     * @param tileCount number of tiles
+     * @param tileWidth width of a tile
+     * @param tileHeight height of a tile
+     * @param durationSeconds duration of the video
+     * @return the index, with tiles filled row by row
+     */
+    public static Storyboard of(String sprite, int tileCount, int tileWidth, int tileHeight, int durationSeconds) {
+        final int columns = (int) Math.ceil(Math.sqrt(tileCount));
+        final int rows = (tileCount + columns - 1) / columns;
+        final double interval = (double) durationSeconds / tileCount;
+        final List<Tile> tiles = new ArrayList<>(tileCount);
+        for (int i = 0; i < tileCount; i++) {
+            tiles.add(new Tile(millis(i * interval), millis((i + 1) * interval), (i % columns) * tileWidth,
+                (i / columns) * tileHeight));
+        }
+        return new Storyboard(sprite, columns, rows, tileWidth, tileHeight, durationSeconds, tiles);
+    }
+
+    /**
+     * @return the index as WebVTT with media fragments, e.g. {@code sprite.jpg#xywh=160,0,160,90}
+     */
+    public String toWebVtt() {
+        final StringBuilder ret = new StringBuilder("WEBVTT\n");
+        for (Tile tile : tiles) {
+            ret.append('\n')
+                .append(vttTime(tile.start())).append(" --> ").append(vttTime(tile.end())).append('\n')
+                .append(sprite).append("#xywh=").append(tile.x()).append(',').append(tile.y()).append(',')
+                .append(tileWidth).append(',').append(tileHeight).append('\n');
+        }
+        return ret.toString();
+    }
+
+    private static double millis(double seconds) {
+        return Math.round(seconds * 1000.0) / 1000.0;
+    }
+
+    private static String vttTime(double seconds) {
+        final long millis = Math.round(seconds * 1000.0);
+        return String.format(Locale.ROOT, "%02d:%02d:%02d.%03d",
+            millis / 3_600_000L, millis / 60_000L % 60L, millis / 1000L % 60L, millis % 1000L);
+    }
+
+    /**
+     * One tile of the sprite.
+     * @param start start of the shown time range in seconds
+     * @param end end of the shown time range in seconds
+     * @param x left position of the tile in the sprite
+     * @param y top position of the tile in the sprite
+     */
+    public record Tile(double start, double end, int x, int y) {
+    }
+}
@@ -1,9 +1,44 @@
 package com.giraone.camera.service.video.model;
 
+import com.giraone.camera.service.FileService;
+
 import java.util.List;
 
 public record TimelapseCommand(String outputFilename,
                                List<String> inputFileNames,
                                /** Modulo select of images. 1 = Use every images, 2 = use every second image. */ int select,
-                               /** Frame rate (10-30) */ int frameRate) {
+                               /** Frame rate (10-30) */ int frameRate,
+                               /** One image per this number of minutes of capture time, 0 = not used. Wins over select. */ int minutesPerFrame,
+                               /** Evenly distributed images up to this number, 0 = not used. Wins over the others. */ int targetFrames) {
+
+    public TimelapseCommand(String outputFilename, List<String> inputFileNames, int select, int frameRate) {
+        this(outputFilename, inputFileNames, select, frameRate, 0, 0);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the command is incomplete or a parameter is out of range
+     */
+    public void validate() {
+        if (inputFileNames == null || inputFileNames.isEmpty()) {
+            throw new IllegalArgumentException("No input files given!");
+        }
+        // The names are resolved within the images directory - a path must never reach the file system.
+        for (String inputFileName : inputFileNames) {
+            if (FileService.isFileNameInvalid(inputFileName)) {
+                throw new IllegalArgumentException("Invalid input file name \"" + inputFileName + "\"!");
+            }
+        }
+        if (outputFilename == null || outputFilename.isBlank()) {
+            throw new IllegalArgumentException("No output file name given!");
+        }
+        if (frameRate < 1) {
+            throw new IllegalArgumentException("Frame rate must be positive!");
+        }
+        if (minutesPerFrame < 0 || targetFrames < 0) {
+            throw new IllegalArgumentException("Minutes per frame and target frames must not be negative!");
+        }
+        if (select < 1 && minutesPerFrame == 0 && targetFrames == 0) {
+            throw new IllegalArgumentException("Select must be positive!");
+        }
+    }
 }
@@ -0,0 +1,24 @@
+package com.giraone.camera.service.video.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.LocalDateTime;
+
+/**
+ * State of an asynchronous timelapse video job.
+ * @param id the job id
+ * @param state the current state
+ * @param outputFilename the name of the video file
+ * @param frames number of frames of the video
+ * @param framesEncoded number of frames encoded so far
+ * @param progressPercent encoding progress from 0 to 100
+ * @param created time, when the job was queued
+ * @param started time, when ffmpeg was started
+ * @param finished time, when the job ended
+ * @param error the error message of a failed job
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record TimelapseJob(String id, TimelapseJobState state, String outputFilename, int frames, int framesEncoded,
+                           int progressPercent, LocalDateTime created, LocalDateTime started, LocalDateTime finished,
+                           String error) {
+}
@@ -140,10 +140,34 @@ class CameraControllerIT {
         Path uploadedFile = FileService.getFileDirImages().resolve(FILENAME_IMAGE);
         assertThat(uploadedFile).exists().hasSize(EXPECTED_IMAGE_FILE_SIZE);
         Path thumbFile = FileService.getThumbDirImages().resolve(FileService.buildThumbnailFileName(FILENAME_IMAGE));
+        // thumbnails are created in the background
+        waitForFile(thumbFile);
         assertThat(thumbFile).exists();
         assertThat(Files.size(thumbFile)).isGreaterThan(100L);
     }
 
+    @Test
+    void test1a_downloadImageThumbNotModified() {
+
+        String thumbName = FileService.buildThumbnailFileName(FILENAME_IMAGE);
+        String eTag = webTestClient.get()
+            .uri("/image-thumbs/{file}", thumbName)
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().exists("ETag")
+            .expectHeader().exists("Last-Modified")
+            .expectHeader().valueMatches("Cache-Control", "max-age=\\d+, public")
+            .returnResult(ByteBuffer.class)
+            .getResponseHeaders()
+            .getETag();
+        webTestClient.get()
+            .uri("/image-thumbs/{file}", thumbName)
+            .header("If-None-Match", eTag)
+            .exchange()
+            .expectStatus().isNotModified()
+            .expectHeader().valueEquals("ETag", eTag);
+    }
+
     @Test
     void test2_downloadImage() throws IOException {
 
@@ -207,6 +231,7 @@ class CameraControllerIT {
         Path uploadedFile = FileService.getFileDirVideos().resolve(FILENAME_VIDEO);
         assertThat(uploadedFile).exists().hasSize(EXPECTED_VIDEO_FILE_SIZE);
         Path thumbFile = FileService.getThumbDirVideos().resolve(buildThumbnailFileName(FILENAME_VIDEO));
+        waitForFile(thumbFile);
         assertThat(thumbFile).exists();
         assertThat(Files.size(thumbFile)).isGreaterThan(100L);
     }
@@ -229,6 +254,31 @@ class CameraControllerIT {
         assertThat(downloadedFile).exists().hasSize(EXPECTED_VIDEO_FILE_SIZE);
     }
 
+    @Test
+    void test5a_downloadVideoRange() {
+
+        byte[] content = webTestClient.get()
+            .uri("/videos/{file}", FILENAME_VIDEO)
+            .header("Range", "bytes=100-199")
+            .exchange()
+            .expectStatus().isEqualTo(206)
+            .expectHeader().contentType("video/mp4")
+            .expectHeader().contentLength(100L)
+            .expectHeader().valueEquals("Content-Range", "bytes 100-199/" + EXPECTED_VIDEO_FILE_SIZE)
+            .expectHeader().valueEquals("Accept-Ranges", "bytes")
+            .expectBody(byte[].class)
+            .returnResult()
+            .getResponseBody();
+        assertThat(content).hasSize(100);
+        // not satisfiable
+        webTestClient.get()
+            .uri("/videos/{file}", FILENAME_VIDEO)
+            .header("Range", "bytes=" + EXPECTED_VIDEO_FILE_SIZE + "-")
+            .exchange()
+            .expectStatus().isEqualTo(416)
+            .expectHeader().valueEquals("Content-Range", "bytes */" + EXPECTED_VIDEO_FILE_SIZE);
+    }
+
     @Test
     void test6_listVideoFiles() {
 
@@ -288,4 +338,15 @@ class CameraControllerIT {
             .expectBody()
             .jsonPath("$.success").isEqualTo("true");
     }
-}
\ No newline at end of file
+
+    private static void waitForFile(Path file) {
+        for (int i = 0; i < 100 && !Files.exists(file); i++) {
+            try {
+                Thread.sleep(100L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
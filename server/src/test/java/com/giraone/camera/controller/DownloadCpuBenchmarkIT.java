@@ -0,0 +1,132 @@
+package com.giraone.camera.controller;
+
+import com.giraone.camera.config.ApplicationProperties;
+import com.giraone.camera.service.FileService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.server.RequestPredicates;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * CPU time per GB for full video downloads with and without zero-copy. Not part of the normal build - run with
+ * {@code mvn verify -Dit.test=DownloadCpuBenchmarkIT -Dbenchmark=true}. The CPU time is the one of the whole process,
+ * so it includes the HTTP client, which is the same in both modes.
+ * <p>
+ * The file is written into the hidden storyboard directory, so that it is neither indexed nor listed. It is sent by a
+ * route of the test, that builds the body like the video download of {@link CameraController}.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class DownloadCpuBenchmarkIT {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DownloadCpuBenchmarkIT.class);
+
+    private static final String FILENAME_VIDEO = "benchmark-download.mp4";
+    private static final Path FILE = FileService.VIDEOS_STORYBOARDS.resolve(FILENAME_VIDEO);
+    private static final long FILE_SIZE = 256L * 1024 * 1024;
+    private static final int WARM_UP_RUNS = 2;
+    private static final int RUNS = 8;
+    private static final String BENCHMARK_PATH = "/benchmark-download";
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    ApplicationProperties applicationProperties;
+
+    @BeforeAll
+    static void createFile() throws IOException {
+        final ByteBuffer block = ByteBuffer.allocate(1024 * 1024);
+        try (FileChannel channel = FileChannel.open(FILE, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (long written = 0; written < FILE_SIZE; written += block.capacity()) {
+                channel.write(block.clear());
+            }
+        }
+    }
+
+    @AfterAll
+    static void deleteFile() throws IOException {
+        Files.deleteIfExists(FILE);
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void cpuPerGigabyte(boolean zeroCopy) throws Exception {
+
+        final boolean before = applicationProperties.isZeroCopyDownloads();
+        applicationProperties.setZeroCopyDownloads(zeroCopy);
+        // HttpClient is AutoCloseable only since Java 21
+        final HttpClient client = HttpClient.newHttpClient();
+        try {
+            final HttpRequest request = HttpRequest.newBuilder(
+                URI.create("http://localhost:" + port + BENCHMARK_PATH)).build();
+            for (int i = 0; i < WARM_UP_RUNS; i++) {
+                assertThat(client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode()).isEqualTo(200);
+            }
+            final long cpuStart = processCpuTime();
+            final long start = System.nanoTime();
+            for (int i = 0; i < RUNS; i++) {
+                client.send(request, HttpResponse.BodyHandlers.discarding());
+            }
+            final double cpuSeconds = (processCpuTime() - cpuStart) / 1e9;
+            final double seconds = (System.nanoTime() - start) / 1e9;
+            final double gigabytes = RUNS * FILE_SIZE / 1024.0 / 1024.0 / 1024.0;
+            LOGGER.info("zeroCopy={} ==> {} CPU-seconds/GB, {} MB/s", zeroCopy,
+                String.format("%.3f", cpuSeconds / gigabytes), String.format("%.0f", gigabytes * 1024 / seconds));
+        } finally {
+            applicationProperties.setZeroCopyDownloads(before);
+        }
+    }
+
+    @TestConfiguration
+    static class BenchmarkRoute {
+
+        @Bean
+        RouterFunction<ServerResponse> benchmarkDownload(FileService fileService,
+                                                         ApplicationProperties applicationProperties) {
+            return RouterFunctions.route(RequestPredicates.GET(BENCHMARK_PATH), request -> {
+                final Supplier<Flux<DataBuffer>> content = () -> fileService.readStoryboard(FILENAME_VIDEO, FILE_SIZE);
+                return ServerResponse.ok()
+                    .header(HttpHeaders.CONTENT_TYPE, "video/mp4")
+                    .header(HttpHeaders.CONTENT_LENGTH, Long.toString(FILE_SIZE))
+                    .bodyValue(applicationProperties.isZeroCopyDownloads()
+                        ? DownloadBody.zeroCopy(() -> FILE, FILE_SIZE, content)
+                        : DownloadBody.streamed(content.get()));
+            });
+        }
+    }
+
+    private static long processCpuTime() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+}
@@ -0,0 +1,52 @@
+package com.giraone.camera.controller;
+
+import com.giraone.camera.service.model.FileInfo;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HttpCacheSupportTest {
+
+    private static final FileInfo FILE_INFO = new FileInfo(Path.of("x.jpg"), "x.jpg", 4711L, "image/jpeg",
+        LocalDateTime.of(2024, 1, 1, 12, 0));
+
+    @Test
+    void isNotModified_ifNoneMatch() {
+
+        // arrange
+        String eTag = HttpCacheSupport.eTagOf(FILE_INFO);
+        HttpHeaders matching = new HttpHeaders();
+        matching.setIfNoneMatch("\"other\", " + eTag);
+        HttpHeaders weakMatching = new HttpHeaders();
+        weakMatching.setIfNoneMatch("W/" + eTag);
+        HttpHeaders other = new HttpHeaders();
+        other.setIfNoneMatch("\"other\"");
+        // act/assert
+        assertThat(HttpCacheSupport.isNotModified(matching, FILE_INFO)).isTrue();
+        assertThat(HttpCacheSupport.isNotModified(weakMatching, FILE_INFO)).isTrue();
+        assertThat(HttpCacheSupport.isNotModified(other, FILE_INFO)).isFalse();
+        assertThat(HttpCacheSupport.isNotModified(new HttpHeaders(), FILE_INFO)).isFalse();
+    }
+
+    @Test
+    void isNotModified_ifModifiedSince() {
+
+        // arrange
+        long lastModifiedMillis = HttpCacheSupport.lastModifiedEpochSecondOf(FILE_INFO) * 1000L;
+        HttpHeaders same = new HttpHeaders();
+        same.setIfModifiedSince(lastModifiedMillis);
+        HttpHeaders before = new HttpHeaders();
+        before.setIfModifiedSince(lastModifiedMillis - 1000L);
+        HttpHeaders eTagWins = new HttpHeaders();
+        eTagWins.setIfModifiedSince(lastModifiedMillis);
+        eTagWins.setIfNoneMatch("\"other\"");
+        // act/assert
+        assertThat(HttpCacheSupport.isNotModified(same, FILE_INFO)).isTrue();
+        assertThat(HttpCacheSupport.isNotModified(before, FILE_INFO)).isFalse();
+        assertThat(HttpCacheSupport.isNotModified(eTagWins, FILE_INFO)).isFalse();
+    }
+}
@@ -0,0 +1,149 @@
+package com.giraone.camera.controller;
+
+import com.giraone.camera.service.model.FileInfo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import reactor.core.publisher.Flux;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HttpRangeSupportTest {
+
+    private static final FileInfo FILE_INFO = new FileInfo(Path.of("x.mp4"), "x.mp4", 1000L, "video/mp4",
+        LocalDateTime.of(2024, 1, 1, 12, 0));
+
+    @ParameterizedTest
+    // @formatter:off
+    @CsvSource({
+        "bytes=0-99,       0, 100",
+        "bytes=900-,     900, 100",
+        "bytes=-10,      990,  10",
+        "bytes=950-2000, 950,  50"
+    })
+    // @formatter:on
+    void resolveRanges_single(String header, long expectedOffset, long expectedLength) {
+
+        // arrange
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, header);
+        // act
+        List<HttpRangeSupport.ByteRange> ranges = HttpRangeSupport.resolveRanges(headers, 1000L);
+        // assert
+        assertThat(ranges).containsExactly(new HttpRangeSupport.ByteRange(expectedOffset, expectedLength));
+    }
+
+    @Test
+    void resolveRanges_notSatisfiable() {
+
+        // arrange
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, "bytes=1000-");
+        // act/assert
+        assertThatThrownBy(() -> HttpRangeSupport.resolveRanges(headers, 1000L))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void resolveRanges_mergesOverlappingAndAdjacentRanges() {
+
+        // arrange
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, "bytes=500-599,0-99,50-149,150-199,-10");
+        // act
+        List<HttpRangeSupport.ByteRange> ranges = HttpRangeSupport.resolveRanges(headers, 1000L);
+        // assert
+        assertThat(ranges).containsExactly(new HttpRangeSupport.ByteRange(0, 200),
+            new HttpRangeSupport.ByteRange(500, 100), new HttpRangeSupport.ByteRange(990, 10));
+    }
+
+    @ParameterizedTest
+    // @formatter:off
+    @CsvSource({
+        "'bytes=0-,0-'",
+        "'bytes=0-599,400-999'",
+        "'bytes=0-0,2-2,4-4,6-6,8-8,10-10,12-12,14-14,16-16,18-18,20-20,22-22,24-24,26-26,28-28,30-30,32-32'"
+    })
+    // @formatter:on
+    void resolveRanges_tooLargeOrTooManyRangesAreIgnored(String header) {
+
+        // arrange
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, header);
+        // act/assert
+        assertThat(HttpRangeSupport.resolveRanges(headers, 1000L)).isEmpty();
+    }
+
+    @ParameterizedTest
+    @CsvSource({"bytes=500-100", "bytes=abc", "items=0-99"})
+    void resolveRanges_invalidHeaderIsIgnored(String header) {
+
+        // arrange
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, header);
+        // act
+        List<HttpRangeSupport.ByteRange> ranges = HttpRangeSupport.resolveRanges(headers, 1000L);
+        // assert
+        assertThat(ranges).isEmpty();
+    }
+
+    @Test
+    void isIfRangeSatisfied() {
+
+        // arrange
+        HttpHeaders matching = new HttpHeaders();
+        matching.set(HttpHeaders.IF_RANGE, HttpCacheSupport.eTagOf(FILE_INFO));
+        HttpHeaders changed = new HttpHeaders();
+        changed.set(HttpHeaders.IF_RANGE, "\"other\"");
+        HttpHeaders weak = new HttpHeaders();
+        weak.set(HttpHeaders.IF_RANGE, "W/" + HttpCacheSupport.eTagOf(FILE_INFO));
+        // act/assert
+        assertThat(HttpRangeSupport.isIfRangeSatisfied(new HttpHeaders(), FILE_INFO)).isTrue();
+        assertThat(HttpRangeSupport.isIfRangeSatisfied(matching, FILE_INFO)).isTrue();
+        assertThat(HttpRangeSupport.isIfRangeSatisfied(changed, FILE_INFO)).isFalse();
+        assertThat(HttpRangeSupport.isIfRangeSatisfied(weak, FILE_INFO)).isFalse();
+    }
+
+    @Test
+    void multipartBody() {
+
+        // arrange
+        byte[] data = "0123456789".getBytes(StandardCharsets.US_ASCII);
+        List<HttpRangeSupport.ByteRange> ranges = List.of(
+            new HttpRangeSupport.ByteRange(0, 2), new HttpRangeSupport.ByteRange(8, 2));
+        // act
+        Flux<DataBuffer> body = HttpRangeSupport.multipartBody(ranges, data.length, "text/plain", "XYZ",
+            (offset, length) -> Flux.just(DefaultDataBufferFactory.sharedInstance
+                .wrap(ByteBuffer.wrap(data, offset.intValue(), length.intValue()))));
+        long expectedLength = HttpRangeSupport.multipartLength(ranges, data.length, "text/plain", "XYZ");
+        // assert
+        String result = body.map(buffer -> buffer.toString(StandardCharsets.US_ASCII))
+            .reduce(new StringBuilder(), StringBuilder::append)
+            .block().toString();
+        assertThat(result).isEqualTo("""
+            \r
+            --XYZ\r
+            Content-Type: text/plain\r
+            Content-Range: bytes 0-1/10\r
+            \r
+            01\r
+            --XYZ\r
+            Content-Type: text/plain\r
+            Content-Range: bytes 8-9/10\r
+            \r
+            89\r
+            --XYZ--\r
+            """);
+        assertThat(result).hasSize((int) expectedLength);
+    }
+}
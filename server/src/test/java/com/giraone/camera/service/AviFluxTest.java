@@ -0,0 +1,86 @@
+package com.giraone.camera.service;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AviFluxTest {
+
+    @Test
+    void mjpeg_lengthAndIndexMatchContent() {
+
+        // arrange - the second frame has an odd size and is padded
+        List<AviFlux.Frame> frames = List.of(frame(100), frame(51), frame(20));
+        // act
+        AviFlux.Video video = AviFlux.mjpeg(frames, 10, 640, 480, 2);
+        ByteBuffer avi = collect(video.content());
+        // assert
+        assertThat(avi.limit()).isEqualTo(video.length());
+        assertThat(fourCC(avi, 0)).isEqualTo("RIFF");
+        assertThat(avi.getInt(4)).isEqualTo(avi.limit() - 8);
+        assertThat(fourCC(avi, 8)).isEqualTo("AVI ");
+        // avih: total frames, width, height
+        assertThat(avi.getInt(48)).isEqualTo(3);
+        assertThat(avi.getInt(64)).isEqualTo(640);
+        assertThat(avi.getInt(68)).isEqualTo(480);
+        int movi = 220;
+        assertThat(fourCC(avi, movi)).isEqualTo("movi");
+        int index = avi.limit() - 8 - 3 * 16;
+        assertThat(fourCC(avi, index)).isEqualTo("idx1");
+        for (int i = 0; i < 3; i++) {
+            int entry = index + 8 + i * 16;
+            int chunk = movi + avi.getInt(entry + 8);
+            assertThat(fourCC(avi, chunk)).isEqualTo("00dc");
+            assertThat(avi.getInt(chunk + 4)).isEqualTo(avi.getInt(entry + 12)).isEqualTo(frames.get(i).size());
+        }
+    }
+
+    @Test
+    void mjpeg_sizeMismatchFails() {
+
+        // arrange
+        AviFlux.Frame frame = new AviFlux.Frame(100, () -> Flux.just(ByteBuffer.wrap(new byte[10])));
+        // act/assert
+        assertThatThrownBy(() -> AviFlux.mjpeg(List.of(frame), 10, 640, 480, 1).content().blockLast())
+            .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void jpegSize() throws IOException {
+
+        // act
+        int[] size = AviFlux.jpegSize(Path.of("src/test/resources/testdata/small.jpg"));
+        // assert
+        assertThat(size).containsExactly(480, 384);
+    }
+
+    private static AviFlux.Frame frame(int size) {
+        return new AviFlux.Frame(size, () -> Flux.just(ByteBuffer.wrap(new byte[size])));
+    }
+
+    private static ByteBuffer collect(Flux<ByteBuffer> content) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        content.doOnNext(buffer -> {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            out.writeBytes(bytes);
+        }).blockLast();
+        return ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static String fourCC(ByteBuffer buffer, int offset) {
+        byte[] bytes = new byte[4];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
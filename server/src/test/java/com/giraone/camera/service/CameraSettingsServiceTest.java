@@ -0,0 +1,121 @@
+package com.giraone.camera.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.giraone.camera.service.api.Settings;
+import com.giraone.camera.util.ObjectMapperBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CameraSettingsServiceTest {
+
+    private static final ObjectMapper MAPPER = ObjectMapperBuilder.build();
+
+    @TempDir
+    Path dir;
+
+    private CameraSettingsService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new CameraSettingsService(dir.resolve("settings.json"), dir.resolve("profiles.json"));
+    }
+
+    @Test
+    void reply_eachCameraReinitializesOnceAfterChange() throws IOException {
+
+        // arrange - both cameras are known with the current version
+        reply("c001", 5, null);
+        reply("c002", 5, null);
+        Settings settings = new Settings();
+        settings.getCamera().setJpegQuality(20);
+        // act
+        service.storeSettings(settings);
+        // assert
+        assertThat(reply("c001", 6, null).getCamera().getJpegQuality()).isEqualTo(20);
+        assertThat(reply("c001", 7, null).getCamera()).isNull();
+        assertThat(reply("c002", 6, null).getCamera()).isNotNull();
+        assertThat(reply("c002", 7, null).getCamera()).isNull();
+    }
+
+    @Test
+    void reply_workflowChangeDoesNotReinitialize() throws IOException {
+
+        // arrange
+        reply("c001", 5, null);
+        Settings settings = new Settings();
+        settings.getWorkflow().setDelayMs(5000);
+        // act
+        service.storeSettings(settings);
+        Settings reply = reply("c001", 6, null);
+        // assert
+        assertThat(reply.getWorkflow().getDelayMs()).isEqualTo(5000);
+        assertThat(reply.getCamera()).isNull();
+    }
+
+    @Test
+    void storeSettings_profileIsUsedOnlyByItsCamera() throws IOException {
+
+        // arrange
+        reply("c001", 5, null);
+        reply("c002", 5, null);
+        Settings settings = new Settings();
+        settings.getCamera().setJpegQuality(30);
+        // act
+        service.storeSettings("c001", settings);
+        // assert
+        assertThat(reply("c001", 6, null).getCamera().getJpegQuality()).isEqualTo(30);
+        assertThat(reply("c002", 6, null).getCamera()).isNull();
+        CameraSettingsService reloaded = new CameraSettingsService(dir.resolve("settings.json"), dir.resolve("profiles.json"));
+        assertThat(reloaded.getProfiles()).containsOnlyKeys("c001");
+        assertThat(reloaded.getSettings("c001")).hasValueSatisfying(s ->
+            assertThat(s.getCamera().getJpegQuality()).isEqualTo(30));
+    }
+
+    @Test
+    void reply_currentVersionWithoutWorkflow() throws IOException {
+
+        // arrange
+        Settings first = reply("c001", 5, null);
+        // act
+        Settings unchanged = reply("c001", 6, first.getVersion());
+        service.storeSettings(new Settings());
+        Settings changed = reply("c001", 7, first.getVersion());
+        // assert
+        assertThat(first.getVersion()).isNotNull();
+        assertThat(first.getWorkflow()).isNotNull();
+        assertThat(unchanged.getVersion()).isEqualTo(first.getVersion());
+        assertThat(unchanged.getWorkflow()).isNull();
+        assertThat(unchanged.getCamera()).isNull();
+        assertThat(changed.getVersion()).isGreaterThan(first.getVersion());
+        assertThat(changed.getWorkflow()).isNotNull();
+    }
+
+    @Test
+    void reply_withDelay() throws IOException {
+
+        // act
+        Settings reply = MAPPER.readValue(service.reply("c001", 1, null, 12345), Settings.class);
+        // assert
+        assertThat(reply.getDelayMs()).isEqualTo(12345);
+        assertThat(reply.getWorkflow().getDelayMs()).isEqualTo(20000);
+        assertThat(reply.getVersion()).isNotNull();
+    }
+
+    @Test
+    void cameraNameOfImage() {
+
+        // act/assert
+        assertThat(CameraSettingsService.cameraNameOfImage("c087-261018-080001.jpg")).isEqualTo("c087");
+        assertThat(CameraSettingsService.cameraNameOfImage("image.jpg")).isNull();
+    }
+
+    private Settings reply(String cameraName, int imageCounter, Long settingsVersion) throws IOException {
+        return MAPPER.readValue(service.reply(cameraName, imageCounter, settingsVersion), Settings.class);
+    }
+}
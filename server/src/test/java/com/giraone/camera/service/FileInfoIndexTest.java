@@ -0,0 +1,98 @@
+package com.giraone.camera.service;
+
+import com.giraone.camera.service.model.FileInfo;
+import com.giraone.camera.service.model.FileInfoOrder;
+import com.giraone.camera.service.model.FileInfoQuery;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileInfoIndexTest {
+
+    @TempDir
+    Path dir;
+
+    FileInfoIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new FileInfoIndex(new StorageLayout(dir));
+        index.put(fileInfo("cam1-0001.jpg", 300, 3));
+        index.put(fileInfo("cam1-0002.jpg", 100, 1));
+        index.put(fileInfo("cam2-0001.jpg", 200, 2));
+        index.put(fileInfo("cam2-0002.jpg", 400, 4));
+    }
+
+    @ParameterizedTest
+    // @formatter:off
+    @CsvSource({
+        "cam1, 0,10, fileName,false,     2,cam1-0001.jpg",
+        "cam,  0,10, fileName,true,      4,cam2-0002.jpg",
+        "cam2, 1,10, fileName,false,     1,cam2-0002.jpg",
+        "cam,  0,10, sizeInBytes,false,  4,cam1-0002.jpg",
+        "cam2, 0,10, sizeInBytes,true,   2,cam2-0002.jpg",
+        "cam,  1, 2, lastModified,false, 2,cam2-0001.jpg"
+    })
+    // @formatter:on
+    void list(String prefix, int offset, int limit, String orderAttribute, boolean desc, int expectedSize, String expectedName) {
+
+        // arrange
+        FileInfoQuery query = new FileInfoQuery(prefix, offset, limit, new FileInfoOrder(orderAttribute, desc));
+        // act
+        List<FileInfo> result = index.list(query);
+        // assert
+        assertThat(result).hasSize(expectedSize);
+        assertThat(result.get(0).getFileName()).isEqualTo(expectedName);
+    }
+
+    @Test
+    void count() {
+
+        // act/assert
+        assertThat(index.count(null)).isEqualTo(4);
+        assertThat(index.count("cam1")).isEqualTo(2);
+        assertThat(index.count("cam1-0002")).isEqualTo(1);
+        assertThat(index.count("cam3")).isZero();
+    }
+
+    @Test
+    void putAndRemove_updateAllOrders() {
+
+        // act
+        index.put(fileInfo("cam1-0002.jpg", 500, 5));
+        index.remove("cam2-0002.jpg");
+        // assert
+        FileInfoQuery query = new FileInfoQuery(null, 0, 10, new FileInfoOrder("sizeInBytes", true));
+        assertThat(index.list(query)).extracting(FileInfo::getFileName)
+            .containsExactly("cam1-0002.jpg", "cam1-0001.jpg", "cam2-0001.jpg");
+        assertThat(index.count(null)).isEqualTo(3);
+    }
+
+    @Test
+    void list_smallPrefixRangeIsSortedByAttribute() {
+
+        // arrange - "cam1" is a small share of the index, so its range is sorted instead of walking the whole order
+        for (int i = 10; i < 50; i++) {
+            index.put(fileInfo("other-00" + i + ".jpg", i, i));
+        }
+        // act
+        List<FileInfo> bySize = index.list(new FileInfoQuery("cam1", 0, 10, new FileInfoOrder("sizeInBytes", false)));
+        List<FileInfo> byLastModified = index.list(new FileInfoQuery("cam1", 1, 10, new FileInfoOrder("lastModified", true)));
+        // assert
+        assertThat(bySize).extracting(FileInfo::getFileName).containsExactly("cam1-0002.jpg", "cam1-0001.jpg");
+        assertThat(byLastModified).extracting(FileInfo::getFileName).containsExactly("cam1-0002.jpg");
+    }
+
+    private FileInfo fileInfo(String fileName, long size, int minute) {
+        return new FileInfo(dir.resolve(fileName), fileName, size, "image/jpeg",
+            LocalDateTime.of(2024, 1, 1, 12, minute));
+    }
+}
@@ -0,0 +1,120 @@
+package com.giraone.camera.service;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Throughput of {@link FileReadFlux} for different read-ahead depths. Not part of the normal build - run with
+ * {@code mvn test -Dtest=FileReadFluxBenchmarkTest -Dbenchmark=true}. Set {@code -Dbenchmark.file=...} to a large
+ * video on the real storage; otherwise a temporary file is used, which is probably in the page cache.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class FileReadFluxBenchmarkTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileReadFluxBenchmarkTest.class);
+
+    private static final long TEMP_FILE_SIZE = 256L * 1024 * 1024;
+    private static final int WARM_UP_RUNS = 2;
+    private static final int RUNS = 5;
+    // The chunks are consumed on another thread with a small prefetch, like the response writer does.
+    private static final Scheduler CONSUMER = Schedulers.single();
+    private static final int CONSUMER_PREFETCH = 2;
+
+    static Path file;
+    static boolean tempFile;
+
+    @BeforeAll
+    static void createFile() throws IOException {
+        final String benchmarkFile = System.getProperty("benchmark.file");
+        if (benchmarkFile != null) {
+            file = Path.of(benchmarkFile);
+            return;
+        }
+        file = Files.createTempFile("benchmark-", ".bin");
+        tempFile = true;
+        final ByteBuffer block = ByteBuffer.allocate(FluxUtil.MAX_CHUNK_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            for (long written = 0; written < TEMP_FILE_SIZE; written += block.capacity()) {
+                channel.write(block.clear());
+            }
+        }
+    }
+
+    @AfterAll
+    static void deleteFile() throws IOException {
+        if (tempFile) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @ParameterizedTest
+    // @formatter:off
+    @CsvSource({
+        "65536,   1, false",
+        "65536,   2, false",
+        "65536,   4, false",
+        "65536,   8, false",
+        "65536,   1, true",
+        "65536,   2, true",
+        "65536,   4, true",
+        "65536,   8, true",
+        "1048576, 1, true",
+        "1048576, 2, true",
+        "1048576, 4, true",
+        "1048576, 8, true"
+    })
+    // @formatter:on
+    void readThroughput(int chunkSize, int readAhead, boolean pooled) throws IOException {
+
+        try (AsynchronousFileChannel channel = AsynchronousFileChannel.open(file)) {
+            final long size = channel.size();
+            for (int i = 0; i < WARM_UP_RUNS; i++) {
+                assertThat(read(channel, chunkSize, readAhead, pooled, size)).isEqualTo(size);
+            }
+            final long start = System.nanoTime();
+            for (int i = 0; i < RUNS; i++) {
+                read(channel, chunkSize, readAhead, pooled, size);
+            }
+            final double seconds = (System.nanoTime() - start) / 1e9;
+            LOGGER.info("chunkSize={} readAhead={} pooled={} ==> {} MB/s", chunkSize, readAhead, pooled,
+                String.format("%.0f", RUNS * size / 1024.0 / 1024.0 / seconds));
+        }
+    }
+
+    private static long read(AsynchronousFileChannel channel, int chunkSize, int readAhead, boolean pooled, long size) {
+        if (pooled) {
+            return FluxUtil.readFilePooled(channel, chunkSize, readAhead, 0, size)
+                .publishOn(CONSUMER, CONSUMER_PREFETCH)
+                .map(buffer -> {
+                    final int bytes = buffer.readableByteCount();
+                    DataBufferUtils.release(buffer);
+                    return (long) bytes;
+                })
+                .reduce(0L, Long::sum)
+                .block();
+        }
+        return FluxUtil.readFile(channel, chunkSize, readAhead, 0, size)
+            .publishOn(CONSUMER, CONSUMER_PREFETCH)
+            .map(buffer -> (long) buffer.remaining())
+            .reduce(0L, Long::sum)
+            .block();
+    }
+}
@@ -25,7 +25,7 @@ class FileServiceIT {
         FileInfoQuery query = new FileInfoQuery("000", 0, 10, new FileInfoOrder("fileName", false));
         for (FileInfo fileInfo : fileService.listFileInfos(FileService.Media.IMAGES, query)) {
             boolean ret = fileService.createThumbnail(FileService.Media.IMAGES,
-                FileService.getFile(FileService.Media.IMAGES, fileInfo.getFileName()));
+                fileService.getFile(FileService.Media.IMAGES, fileInfo.getFileName()));
             assertThat(ret).isTrue();
         }
     }
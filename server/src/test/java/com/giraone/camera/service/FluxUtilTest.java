@@ -1,17 +1,31 @@
 package com.giraone.camera.service;
 
+import io.netty.buffer.UnpooledByteBufAllocator;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import reactor.core.publisher.Flux;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
 class FluxUtilTest {
 
+    @TempDir
+    Path dir;
+
     @Test
     void byteBufferToArray() {
 
@@ -45,4 +59,67 @@ class FluxUtilTest {
         // assert
         assertThat(byteArrayOutputStream.toString(StandardCharsets.UTF_8)).isEqualTo("0123456789");
     }
-}
\ No newline at end of file
+
+    @ParameterizedTest
+    // @formatter:off
+    @CsvSource({
+        "0,          1",
+        "20000,      20000",
+        "262144,     262144",
+        "262145,     65536",
+        "5000000,    262144",
+        "300000000,  1048576"
+    })
+    // @formatter:on
+    void adaptiveChunkSize(long length, int expectedChunkSize) {
+
+        // act/assert
+        assertThat(FluxUtil.adaptiveChunkSize(length)).isEqualTo(expectedChunkSize);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 8})
+    void readFilePooled(int readAhead) throws IOException {
+
+        // arrange
+        Path file = dir.resolve("test.txt");
+        Files.writeString(file, "0123456789".repeat(1000));
+        UnpooledByteBufAllocator allocator = new UnpooledByteBufAllocator(true);
+        try (AsynchronousFileChannel channel = AsynchronousFileChannel.open(file)) {
+            // act
+            List<DataBuffer> chunks = new FileReadFlux<>(channel, new FileReadFlux.PooledChunkAllocator(allocator),
+                4096, readAhead, 5, 9990).collectList().block();
+            // assert
+            assertThat(chunks).hasSize(3);
+            StringBuilder content = new StringBuilder();
+            chunks.forEach(chunk -> {
+                content.append(chunk.toString(StandardCharsets.US_ASCII));
+                DataBufferUtils.release(chunk);
+            });
+            assertThat(content.toString()).isEqualTo("0123456789".repeat(1000).substring(5, 9995));
+            assertThat(allocator.metric().usedDirectMemory()).isZero();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    void readFilePooled_releasesNotEmittedChunksOnCancel(int readAhead) throws Exception {
+
+        // arrange
+        Path file = dir.resolve("test.txt");
+        Files.writeString(file, "0123456789".repeat(10000));
+        UnpooledByteBufAllocator allocator = new UnpooledByteBufAllocator(true);
+        try (AsynchronousFileChannel channel = AsynchronousFileChannel.open(file)) {
+            // act
+            new FileReadFlux<>(channel, new FileReadFlux.PooledChunkAllocator(allocator), 1024, readAhead, 0, 100000)
+                .take(2)
+                .doOnNext(DataBufferUtils::release)
+                .blockLast();
+            // assert - a read, that was in flight on cancel, completes asynchronously
+            for (int i = 0; i < 50 && allocator.metric().usedDirectMemory() > 0; i++) {
+                Thread.sleep(10);
+            }
+            assertThat(allocator.metric().usedDirectMemory()).isZero();
+        }
+    }
+}
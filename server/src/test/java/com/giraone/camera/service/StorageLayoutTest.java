@@ -0,0 +1,77 @@
+package com.giraone.camera.service;
+
+import com.giraone.camera.config.ApplicationProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StorageLayoutTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void resolve_cameraDay() {
+
+        // arrange
+        StorageLayout layout = new StorageLayout(dir, ApplicationProperties.ImagesLayout.CAMERA_DAY);
+        // act/assert
+        assertThat(layout.resolve("c087-261018-080001.jpg")).isEqualTo(dir.resolve("c087/2026-10-18/c087-261018-080001.jpg"));
+        assertThat(layout.resolve("image.jpg")).isEqualTo(dir.resolve("image.jpg"));
+        assertThat(new StorageLayout(dir).resolve("c087-261018-080001.jpg")).isEqualTo(dir.resolve("c087-261018-080001.jpg"));
+    }
+
+    @Test
+    void list_prunesByPrefix() throws IOException {
+
+        // arrange
+        StorageLayout layout = new StorageLayout(dir, ApplicationProperties.ImagesLayout.CAMERA_DAY);
+        write(layout.resolve("c087-261018-080001.jpg"));
+        write(layout.resolve("c087-261019-080001.jpg"));
+        write(layout.resolve("c088-261018-080001.jpg"));
+        write(dir.resolve("c087-261018-090001.jpg"));
+        write(dir.resolve(".thumbs").resolve("c087-261018-080001.jpg"));
+        // act/assert
+        assertThat(names(layout.list(null))).containsExactlyInAnyOrder("c087-261018-080001.jpg",
+            "c087-261019-080001.jpg", "c088-261018-080001.jpg", "c087-261018-090001.jpg");
+        assertThat(names(layout.list("c087-261018"))).containsExactlyInAnyOrder("c087-261018-080001.jpg",
+            "c087-261018-090001.jpg");
+        assertThat(names(layout.list("c08"))).hasSize(4);
+        assertThat(names(layout.list("c0871"))).isEmpty();
+    }
+
+    @Test
+    void migrate_movesFlatFilesAndBack() throws IOException {
+
+        // arrange
+        StorageLayout flat = new StorageLayout(dir, ApplicationProperties.ImagesLayout.FLAT);
+        write(flat.resolve("c087-261018-080001.jpg"));
+        write(flat.resolve("image.jpg"));
+        StorageLayout cameraDay = new StorageLayout(dir, ApplicationProperties.ImagesLayout.CAMERA_DAY);
+        // act/assert - the files are found before and after the migration
+        assertThat(cameraDay.locate("c087-261018-080001.jpg")).isEqualTo(dir.resolve("c087-261018-080001.jpg"));
+        assertThat(cameraDay.migrate()).isEqualTo(1);
+        assertThat(cameraDay.locate("c087-261018-080001.jpg")).isEqualTo(dir.resolve("c087/2026-10-18/c087-261018-080001.jpg"));
+        assertThat(flat.locate("c087-261018-080001.jpg")).isEqualTo(dir.resolve("c087/2026-10-18/c087-261018-080001.jpg"));
+        assertThat(flat.relocate(dir.resolve("c087-261018-080001.jpg"))).isEqualTo(dir.resolve("c087/2026-10-18/c087-261018-080001.jpg"));
+        assertThat(flat.migrate()).isEqualTo(1);
+        assertThat(Files.isRegularFile(dir.resolve("c087-261018-080001.jpg"))).isTrue();
+        assertThat(Files.exists(dir.resolve("c087"))).isFalse();
+        assertThat(Files.isRegularFile(dir.resolve("image.jpg"))).isTrue();
+    }
+
+    private static void write(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, file.getFileName().toString());
+    }
+
+    private static List<String> names(List<Path> files) {
+        return files.stream().map(file -> file.getFileName().toString()).toList();
+    }
+}
@@ -0,0 +1,77 @@
+package com.giraone.camera.service;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SubsamplingThumbnailerTest {
+
+    @TempDir
+    Path dir;
+
+    @ParameterizedTest
+    // @formatter:off
+    @CsvSource({
+        "1600, 1200, 160, 120, 5",
+        "1280, 1024, 160, 120, 4",
+        " 800,  600, 160, 120, 2",
+        " 320,  240, 160, 120, 1",
+        " 100,   50, 160, 120, 1",
+        "1600,  400, 160, 120, 5"
+    })
+    // @formatter:on
+    void subsampling(int width, int height, int maxWidth, int maxHeight, int expected) {
+
+        // act
+        int result = SubsamplingThumbnailer.subsampling(width, height, maxWidth, maxHeight);
+        // assert
+        assertThat(result).isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    // @formatter:off
+    @CsvSource({
+        "1600, 1200, jpg, 160, 120",
+        "1600,  900, jpg, 160,  90",
+        " 600,  800, png,  90, 120",
+        " 100,   80, jpg, 100,  80"
+    })
+    // @formatter:on
+    void createThumbnail(int width, int height, String format, int expectedWidth, int expectedHeight) throws IOException {
+
+        // arrange
+        Path original = dir.resolve("original." + format);
+        ImageIO.write(image(width, height), format, original.toFile());
+        Path thumbnail = dir.resolve("thumbnail.jpg");
+        SubsamplingThumbnailer thumbnailer = new SubsamplingThumbnailer(160, 120, 0.85f);
+        // act
+        thumbnailer.createThumbnail(original, thumbnail);
+        // assert
+        BufferedImage result = ImageIO.read(thumbnail.toFile());
+        assertThat(result.getWidth()).isEqualTo(expectedWidth);
+        assertThat(result.getHeight()).isEqualTo(expectedHeight);
+        // left half red, right half blue
+        assertThat(new Color(result.getRGB(expectedWidth / 4, expectedHeight / 2)).getRed()).isGreaterThan(200);
+        assertThat(new Color(result.getRGB(expectedWidth * 3 / 4, expectedHeight / 2)).getBlue()).isGreaterThan(200);
+    }
+
+    static BufferedImage image(int width, int height) {
+        BufferedImage ret = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = ret.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, width / 2, height);
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(width / 2, 0, width - width / 2, height);
+        graphics.dispose();
+        return ret;
+    }
+}
@@ -0,0 +1,98 @@
+package com.giraone.camera.service;
+
+import com.giraone.imaging.ConversionCommand;
+import com.giraone.imaging.ImagingProvider;
+import com.giraone.imaging.java2.ProviderJava2D;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Time and allocation per image thumbnail of both thumbnail engines. Not part of the normal build - run with
+ * {@code mvn test -Dtest=ThumbnailBenchmarkTest -Dbenchmark=true}. Set {@code -Dbenchmark.file=...} to a real
+ * camera image; otherwise a generated UXGA JPEG is used.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ThumbnailBenchmarkTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ThumbnailBenchmarkTest.class);
+
+    private static final int WARM_UP_RUNS = 20;
+    private static final int RUNS = 100;
+
+    static Path dir;
+    static Path original;
+
+    @BeforeAll
+    static void createFile() throws IOException {
+        dir = Files.createTempDirectory("benchmark-");
+        final String benchmarkFile = System.getProperty("benchmark.file");
+        if (benchmarkFile != null) {
+            original = Path.of(benchmarkFile);
+            return;
+        }
+        original = dir.resolve("original.jpg");
+        final Random random = new Random(1L);
+        final BufferedImage image = new BufferedImage(1600, 1200, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                final int red = (x * 255 / image.getWidth() + random.nextInt(40)) & 0xFF;
+                image.setRGB(x, y, red << 16 | (y * 255 / image.getHeight()) << 8 | (255 - red));
+            }
+        }
+        ImageIO.write(image, "jpg", original.toFile());
+    }
+
+    @AfterAll
+    static void deleteFiles() throws IOException {
+        Files.deleteIfExists(dir.resolve("original.jpg"));
+        Files.deleteIfExists(dir.resolve("thumbnail.jpg"));
+        Files.deleteIfExists(dir);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"SUBSAMPLING", "IMAGING_KIT"})
+    void createThumbnail(String engine) throws Exception {
+
+        final Path thumbnail = dir.resolve("thumbnail.jpg");
+        final SubsamplingThumbnailer subsamplingThumbnailer = new SubsamplingThumbnailer(160, 120, 0.85f);
+        final ImagingProvider imagingProvider = new ProviderJava2D();
+        final ThumbnailTask task = "SUBSAMPLING".equals(engine)
+            ? () -> subsamplingThumbnailer.createThumbnail(original, thumbnail)
+            : () -> imagingProvider.createThumbNail(original.toFile(), thumbnail.toFile(), MediaType.IMAGE_JPEG_VALUE,
+            160, 120, ConversionCommand.CompressionQuality.LOSSY_BEST, ConversionCommand.SpeedHint.ULTRA_QUALITY);
+
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            task.run();
+        }
+        final com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long allocatedStart = threadMXBean.getCurrentThreadAllocatedBytes();
+        final long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            task.run();
+        }
+        final double millis = (System.nanoTime() - start) / 1e6 / RUNS;
+        final long kilobytes = (threadMXBean.getCurrentThreadAllocatedBytes() - allocatedStart) / RUNS / 1024;
+        LOGGER.info("engine={} ==> {} ms/thumbnail, {} KB allocated/thumbnail", engine,
+            String.format("%.2f", millis), kilobytes);
+    }
+
+    @FunctionalInterface
+    interface ThumbnailTask {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,104 @@
+package com.giraone.camera.service;
+
+import com.giraone.camera.service.model.ThumbnailRebuildProgress;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ThumbnailRebuildTest {
+
+    private static final FileTime ORIGINAL_TIME = FileTime.from(Instant.parse("2024-06-01T12:00:00Z"));
+
+    @TempDir
+    Path dir;
+
+    Path thumbs;
+    Set<String> createdFor = ConcurrentHashMap.newKeySet();
+    ThumbnailRebuild rebuild;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        thumbs = Files.createDirectory(dir.resolve(".thumbs"));
+        for (String name : List.of("a.jpg", "b.jpg", "c.jpg", "d.jpg", "e.jpg")) {
+            Files.setLastModifiedTime(Files.writeString(dir.resolve(name), name), ORIGINAL_TIME);
+        }
+        rebuild = new ThumbnailRebuild("test", new StorageLayout(dir), thumbs, file -> thumbs.resolve(file.getFileName()),
+            (original, thumbnail) -> {
+                createdFor.add(original.getFileName().toString());
+                try {
+                    Files.writeString(thumbnail, "thumb");
+                } catch (IOException e) {
+                    return false;
+                }
+                return !original.getFileName().toString().equals("e.jpg");
+            }, 3, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        rebuild.close();
+    }
+
+    @Test
+    void start_skipsUpToDateThumbnails() throws Exception {
+
+        // arrange
+        Files.setLastModifiedTime(Files.writeString(thumbs.resolve("a.jpg"), "up-to-date"), ORIGINAL_TIME);
+        Files.setLastModifiedTime(Files.writeString(thumbs.resolve("b.jpg"), "outdated"),
+            FileTime.from(ORIGINAL_TIME.toInstant().minusSeconds(60)));
+        // act
+        rebuild.start();
+        assertThat(rebuild.awaitFinished(10, TimeUnit.SECONDS)).isTrue();
+        // assert
+        ThumbnailRebuildProgress progress = rebuild.progress();
+        assertThat(progress.running()).isFalse();
+        assertThat(progress.total()).isEqualTo(5);
+        assertThat(progress.processed()).isEqualTo(5);
+        assertThat(progress.skipped()).isEqualTo(1);
+        assertThat(progress.created()).isEqualTo(3);
+        assertThat(progress.failed()).isEqualTo(1);
+        assertThat(createdFor).containsExactlyInAnyOrder("b.jpg", "c.jpg", "d.jpg", "e.jpg");
+        assertThat(thumbs.resolve(ThumbnailRebuild.CHECKPOINT_FILE_NAME)).doesNotExist();
+    }
+
+    @Test
+    void resumeIfInterrupted_continuesAfterCheckpoint() throws Exception {
+
+        // arrange
+        Files.writeString(thumbs.resolve(ThumbnailRebuild.CHECKPOINT_FILE_NAME), "c.jpg");
+        // act
+        rebuild.resumeIfInterrupted();
+        assertThat(rebuild.awaitFinished(10, TimeUnit.SECONDS)).isTrue();
+        // assert
+        ThumbnailRebuildProgress progress = rebuild.progress();
+        assertThat(progress.resumedAfter()).isEqualTo("c.jpg");
+        assertThat(progress.total()).isEqualTo(2);
+        assertThat(createdFor).containsExactlyInAnyOrder("d.jpg", "e.jpg");
+        assertThat(thumbs.resolve(ThumbnailRebuild.CHECKPOINT_FILE_NAME)).doesNotExist();
+    }
+
+    @Test
+    void resumeIfInterrupted_doesNothingWithoutCheckpoint() {
+
+        // act
+        ThumbnailRebuildProgress progress = rebuild.resumeIfInterrupted();
+        // assert
+        assertThat(progress.running()).isFalse();
+        assertThat(progress.total()).isZero();
+        assertThat(createdFor).isEmpty();
+    }
+}
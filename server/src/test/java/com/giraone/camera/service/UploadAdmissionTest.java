@@ -0,0 +1,53 @@
+package com.giraone.camera.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UploadAdmissionTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final int[] queueDepth = {0};
+    private final long[] usableSpace = {Long.MAX_VALUE};
+
+    @Test
+    void tryAcquire_backsOffAndRejectsByUploadsInFlight() {
+
+        // arrange
+        UploadAdmission admission = new UploadAdmission(4, 0L, () -> queueDepth[0], 100, () -> usableSpace[0],
+            meterRegistry);
+        // act/assert
+        assertThat(admission.tryAcquire()).isTrue();
+        assertThat(admission.tryAcquire()).isTrue();
+        assertThat(admission.backoffDelayMs(20000)).isEqualTo(20000);
+        assertThat(admission.tryAcquire()).isTrue();
+        assertThat(admission.backoffDelayMs(20000)).isEqualTo(50000);
+        assertThat(admission.tryAcquire()).isFalse();
+        assertThat(meterRegistry.get("camera.uploads.rejected").counter().count()).isEqualTo(1.0);
+        // the pressure drops - back to normal
+        admission.release();
+        admission.release();
+        assertThat(admission.backoffDelayMs(20000)).isEqualTo(20000);
+        assertThat(admission.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void tryAcquire_rejectsByThumbnailQueueAndFreeSpace() {
+
+        // arrange
+        UploadAdmission admission = new UploadAdmission(0, 1000L, () -> queueDepth[0], 100, () -> usableSpace[0],
+            meterRegistry);
+        // act/assert
+        queueDepth[0] = 100;
+        assertThat(admission.tryAcquire()).isFalse();
+        queueDepth[0] = 80;
+        assertThat(admission.backoffDelayMs(20000)).isEqualTo(56000);
+        queueDepth[0] = 0;
+        usableSpace[0] = 999L;
+        assertThat(admission.tryAcquire()).isFalse();
+        assertThat(admission.backoffDelayMs(20000)).isEqualTo(20000 * UploadAdmission.MAX_BACKOFF_FACTOR);
+        usableSpace[0] = 1_000_000L;
+        assertThat(admission.tryAcquire()).isTrue();
+    }
+}
@@ -0,0 +1,70 @@
+package com.giraone.camera.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UploadSchedulerTest {
+
+    private static final int DELAY_MS = 20000;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final long[] clock = {0L};
+
+    @Test
+    void nextDelayMs_camerasStartingTogetherAreSpreadEvenly() {
+
+        // arrange - 10 cameras start within 200 ms and need 0.8 - 1.7 seconds to take and upload an image
+        UploadScheduler scheduler = new UploadScheduler(true, meterRegistry, () -> clock[0]);
+        Random random = new Random(1);
+        long[] nextUpload = new long[10];
+        long[] overhead = new long[10];
+        for (int i = 0; i < 10; i++) {
+            nextUpload[i] = random.nextInt(200);
+            overhead[i] = 800 + random.nextInt(900);
+        }
+        // act
+        for (int upload = 0; upload < 10 * 60; upload++) {
+            int camera = 0;
+            for (int i = 1; i < 10; i++) {
+                camera = nextUpload[i] < nextUpload[camera] ? i : camera;
+            }
+            clock[0] = nextUpload[camera];
+            Integer delayMs = scheduler.nextDelayMs("c" + (100 + camera), DELAY_MS);
+            nextUpload[camera] = clock[0] + (delayMs != null ? delayMs : DELAY_MS) + overhead[camera] + random.nextInt(100);
+        }
+        // assert
+        assertThat(meterRegistry.get("camera.uploads.active.cameras").gauge().value()).isEqualTo(10.0);
+        assertThat(meterRegistry.get("camera.uploads.gap.variation").gauge().value()).isLessThan(0.1);
+    }
+
+    @Test
+    void nextDelayMs_singleCameraUsesConfiguredDelay() {
+
+        // arrange
+        UploadScheduler scheduler = new UploadScheduler(true, meterRegistry, () -> clock[0]);
+        // act
+        Integer first = scheduler.nextDelayMs("c100", DELAY_MS);
+        clock[0] = 4L * DELAY_MS;
+        scheduler.nextDelayMs("c101", DELAY_MS);
+        Integer afterInactivity = scheduler.nextDelayMs("c101", DELAY_MS);
+        // assert - c100 did not upload for 3 periods, so c101 is alone
+        assertThat(first).isNull();
+        assertThat(afterInactivity).isNull();
+    }
+
+    @Test
+    void nextDelayMs_disabled() {
+
+        // arrange
+        UploadScheduler scheduler = new UploadScheduler(false, meterRegistry, () -> clock[0]);
+        // act
+        scheduler.nextDelayMs("c100", DELAY_MS);
+        Integer delayMs = scheduler.nextDelayMs("c101", DELAY_MS);
+        // assert
+        assertThat(delayMs).isNull();
+    }
+}
@@ -0,0 +1,95 @@
+package com.giraone.camera.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ZipFluxTest {
+
+    private static final LocalDateTime TIME = LocalDateTime.of(2024, 5, 6, 7, 8, 10);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void zip_storedEntriesWithDataDescriptor() throws IOException {
+
+        // arrange
+        List<ZipFlux.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            entries.add(entry("file-" + i + ".jpg", ("content " + i).repeat(1000 * i + 1)));
+        }
+        Path zipFile = dir.resolve("test.zip");
+        // act
+        write(ZipFlux.zip(Flux.fromIterable(entries), 3), zipFile);
+        // assert
+        try (ZipFile zip = new ZipFile(zipFile.toFile())) {
+            assertThat(zip.size()).isEqualTo(10);
+            ZipEntry zipEntry = zip.getEntry("file-5.jpg");
+            byte[] expected = "content 5".repeat(5001).getBytes(StandardCharsets.UTF_8);
+            CRC32 crc = new CRC32();
+            crc.update(expected);
+            assertThat(zipEntry.getMethod()).isEqualTo(ZipEntry.STORED);
+            assertThat(zipEntry.getSize()).isEqualTo(expected.length);
+            assertThat(zipEntry.getCrc()).isEqualTo(crc.getValue());
+            assertThat(zip.getInputStream(zipEntry).readAllBytes()).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void zip_empty() throws IOException {
+
+        // arrange
+        Path zipFile = dir.resolve("empty.zip");
+        // act
+        write(ZipFlux.zip(Flux.empty(), 3), zipFile);
+        // assert
+        try (ZipFile zip = new ZipFile(zipFile.toFile())) {
+            assertThat(zip.size()).isZero();
+        }
+    }
+
+    @Test
+    void zip_sizeMismatchFails() {
+
+        // arrange
+        ZipFlux.Entry entry = new ZipFlux.Entry("wrong.jpg", 100, TIME,
+            () -> Flux.just(ByteBuffer.wrap(new byte[10])));
+        // act/assert
+        assertThatThrownBy(() -> ZipFlux.zip(Flux.just(entry), 1).blockLast())
+            .isInstanceOf(IllegalStateException.class);
+    }
+
+    private static ZipFlux.Entry entry(String name, String content) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        int half = bytes.length / 2;
+        return new ZipFlux.Entry(name, bytes.length, TIME,
+            () -> Flux.just(ByteBuffer.wrap(bytes, 0, half), ByteBuffer.wrap(bytes, half, bytes.length - half)));
+    }
+
+    private static void write(Flux<ByteBuffer> content, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            for (ByteBuffer buffer : content.toIterable()) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.giraone.camera.service.video;
+
+import com.giraone.camera.config.ApplicationProperties;
+import com.giraone.camera.service.FileService;
+import com.giraone.camera.service.StorageLayout;
+import com.giraone.camera.service.model.FileInfo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DailyTimelapseServiceTest {
+
+    private static final String KEY = "dailytest-" + DailyTimelapseService.DAY_FORMAT.format(LocalDate.now());
+
+    @TempDir
+    Path dailyBase;
+
+    ApplicationProperties applicationProperties = new ApplicationProperties();
+    List<String> images = new ArrayList<>();
+    List<Integer> encodedFrames = new ArrayList<>();
+    List<Integer> concatenatedSegments = new ArrayList<>();
+
+    // ffmpeg is replaced: a segment contains its frame count, the joined video the segment contents
+    VideoService videoService = new VideoService() {
+        @Override
+        void encode(List<Path> frames, int frameRate, Path outputVideoFile, TimelapseListener listener, int parallelism)
+            throws IOException {
+            encodedFrames.add(frames.size());
+            Files.writeString(outputVideoFile, frames.size() + ";");
+        }
+
+        @Override
+        void concat(List<Path> segmentFiles, Path outputVideoFile) throws IOException {
+            concatenatedSegments.add(segmentFiles.size());
+            final StringBuilder content = new StringBuilder();
+            for (Path segmentFile : segmentFiles) {
+                content.append(Files.readString(segmentFile));
+            }
+            Files.writeString(outputVideoFile, content);
+        }
+    };
+
+    FileService fileService;
+    DailyTimelapseService dailyTimelapseService;
+
+    @BeforeEach
+    void setUp() {
+        applicationProperties.setGenerateThumbnails(false);
+        fileService = new FileService(videoService, null,
+            new StorageLayout(FileService.IMAGES_BASE, applicationProperties.getImagesLayout()), applicationProperties,
+            new SimpleMeterRegistry()) {
+            @Override
+            public List<String> listFileNames(Media type, String prefixFilter) {
+                return images.stream().filter(name -> name.startsWith(prefixFilter)).sorted().toList();
+            }
+        };
+        dailyTimelapseService = newService();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (String image : images) {
+            Files.deleteIfExists(fileService.getFile(FileService.Media.IMAGES, image));
+        }
+        Files.deleteIfExists(fileService.getFile(FileService.Media.VIDEOS, KEY + "-daily.mp4"));
+    }
+
+    @Test
+    void appendNewImages_encodesOnlyNewImages() throws IOException {
+
+        // arrange
+        addImages("080000", "080100", "080200");
+        // act
+        FileInfo first = dailyTimelapseService.appendNewImages(KEY, VideoService.TimelapseListener.NONE);
+        addImages("080300", "080400");
+        FileInfo second = dailyTimelapseService.appendNewImages(KEY, VideoService.TimelapseListener.NONE);
+        // assert
+        assertThat(first.getFileName()).isEqualTo(KEY + "-daily.mp4");
+        assertThat(encodedFrames).containsExactly(3, 2);
+        assertThat(concatenatedSegments).containsExactly(1, 2);
+        assertThat(Files.readString(fileService.getFile(FileService.Media.VIDEOS, second.getFileName())))
+            .isEqualTo("3;2;");
+    }
+
+    @Test
+    void appendNewImages_withoutNewImagesKeepsPublishedVideo() throws IOException {
+
+        // arrange
+        addImages("080000", "080100");
+        dailyTimelapseService.appendNewImages(KEY, VideoService.TimelapseListener.NONE);
+        // act
+        dailyTimelapseService.appendNewImages(KEY, VideoService.TimelapseListener.NONE);
+        // assert
+        assertThat(encodedFrames).containsExactly(2);
+        assertThat(concatenatedSegments).containsExactly(1);
+    }
+
+    @Test
+    void appendNewImages_startsFromScratchWhenFrameRateChanges() throws IOException {
+
+        // arrange
+        addImages("080000", "080100");
+        dailyTimelapseService.appendNewImages(KEY, VideoService.TimelapseListener.NONE);
+        addImages("080200");
+        applicationProperties.setDailyTimelapseFrameRate(25);
+        // act
+        newService().appendNewImages(KEY, VideoService.TimelapseListener.NONE);
+        // assert
+        assertThat(encodedFrames).containsExactly(2, 3);
+        assertThat(dailyBase.resolve(KEY).resolve("segment-0001.mp4")).doesNotExist();
+    }
+
+    @Test
+    void refresh_rejectsInvalidCameraAndDay() {
+
+        // act/assert
+        assertThatThrownBy(() -> dailyTimelapseService.refresh("cam-1", null))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> dailyTimelapseService.refresh("cam1", "2024-01-01"))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private DailyTimelapseService newService() {
+        return new DailyTimelapseService(fileService, videoService, null, applicationProperties, dailyBase);
+    }
+
+    private void addImages(String... times) throws IOException {
+        for (String time : times) {
+            final String image = KEY + "-" + time + ".jpg";
+            Files.writeString(fileService.getFile(FileService.Media.IMAGES, image), "jpeg");
+            images.add(image);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.giraone.camera.service.video;
+
+import com.giraone.camera.service.model.VideoMetaInfo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class Mp4MetaParserTest {
+
+    private static final Path VIDEO = Path.of("src/test/resources/testdata/video-640x480-1MB.mp4");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void parse_readsMoovBehindMediaData() throws IOException {
+
+        // act
+        VideoMetaInfo result = Mp4MetaParser.parse(VIDEO);
+        // assert - the same values as ffprobe in VideoServiceIT
+        assertThat(result).isNotNull();
+        assertThat(result.videoCodec()).isEqualTo("h264");
+        assertThat(result.audioCodec()).isEqualTo("aac");
+        assertThat(result.resolution()).isEqualTo("640x480");
+        assertThat(result.durationSeconds()).isEqualTo(5);
+        assertThat(result.framesPerSecond()).isEqualTo(25);
+    }
+
+    @Test
+    void parse_returnsNullForOtherContainers() throws IOException {
+
+        // act
+        VideoMetaInfo result = Mp4MetaParser.parse(Path.of("src/test/resources/testdata/small.jpg"));
+        // assert
+        assertThat(result).isNull();
+    }
+
+    @Test
+    void parse_returnsNullForTruncatedFile() throws IOException {
+
+        // arrange
+        byte[] content = Files.readAllBytes(VIDEO);
+        Path truncated = Files.write(dir.resolve("truncated.mp4"), Arrays.copyOf(content, content.length - 100));
+        // act
+        VideoMetaInfo result = Mp4MetaParser.parse(truncated);
+        // assert
+        assertThat(result).isNull();
+    }
+}
@@ -0,0 +1,95 @@
+package com.giraone.camera.service.video;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@EnabledOnOs({OS.LINUX, OS.MAC})
+class OsUtilTest {
+
+    @Test
+    void run_drainsLargeOutputOfBothStreams() {
+
+        // arrange
+        // 200 KB on each stream - more than any pipe buffer
+        String[] command = {"bash", "-c",
+            "for i in $(seq 1 20000); do echo out$i; echo err$i >&2; done; exit 3"};
+        // act
+        OsUtil.OsCommandResult result = OsUtil.run("test", command, Duration.ofSeconds(30)).block();
+        // assert
+        assertThat(result).isNotNull();
+        assertThat(result.code()).isEqualTo(3);
+        assertThat(result.output()).endsWith("out20000").hasSizeLessThan(OsUtil.MAX_OUTPUT_CHARS + 100);
+        assertThat(result.errorOutput()).endsWith("err20000").hasSizeLessThan(OsUtil.MAX_OUTPUT_CHARS + 100);
+    }
+
+    @Test
+    void run_boundsOutputWithoutLineBreaks() {
+
+        // arrange
+        // 4 MB in a single line
+        List<String> lines = new ArrayList<>();
+        String[] command = {"bash", "-c", "head -c 4000000 /dev/zero | tr '\\0' 'x'; echo; echo end"};
+        // act
+        OsUtil.OsCommandResult result = OsUtil.run("test", command, Duration.ofSeconds(30), process -> {
+        }, lines::add).block();
+        // assert
+        assertThat(result).isNotNull();
+        assertThat(result.code()).isZero();
+        assertThat(result.output()).startsWith("...xxx").endsWith("x\nend").hasSizeLessThan(OsUtil.MAX_OUTPUT_CHARS + 10);
+        assertThat(lines).hasSize(2);
+        assertThat(lines.get(0)).hasSize(OsUtil.MAX_LINE_CHARS);
+        assertThat(lines.get(1)).isEqualTo("end");
+    }
+
+    @Test
+    void run_killsProcessTreeOnTimeout() throws InterruptedException {
+
+        // arrange
+        List<Process> processes = new ArrayList<>();
+        String[] command = {"bash", "-c", "sleep 30 & wait"};
+        // act
+        OsUtil.OsCommandResult result = OsUtil.run("test", command, Duration.ofMillis(500), processes::add, null)
+            .block();
+        // assert
+        assertThat(result).isNotNull();
+        assertThat(result.code()).isEqualTo(OsUtil.CODE_TIMEOUT);
+        assertThat(processes).hasSize(1);
+        assertThat(processes.get(0).waitFor(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void run_passesStandardOutputLinesToConsumer() {
+
+        // arrange
+        List<String> lines = new ArrayList<>();
+        String[] command = {"bash", "-c", "echo frame=1; echo bad >&2; echo frame=2"};
+        // act
+        OsUtil.OsCommandResult result = OsUtil.run("test", command, Duration.ofSeconds(10), process -> {
+        }, lines::add).block();
+        // assert
+        assertThat(result).isNotNull();
+        assertThat(result.code()).isZero();
+        assertThat(lines).containsExactly("frame=1", "frame=2");
+        assertThat(result.errorOutput()).isEqualTo("bad");
+    }
+
+    @Test
+    void run_returnsIoErrorForUnknownCommand() {
+
+        // act
+        OsUtil.OsCommandResult result = OsUtil.run("test", new String[]{"does-not-exist-4711"}, Duration.ofSeconds(10))
+            .block();
+        // assert
+        assertThat(result).isNotNull();
+        assertThat(result.code()).isEqualTo(OsUtil.CODE_IO_ERROR);
+        assertThat(result.exception()).isNotNull();
+    }
+}
@@ -0,0 +1,78 @@
+package com.giraone.camera.service.video;
+
+import com.giraone.camera.service.video.model.TimelapseCommand;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimelapseFrameSelectorTest {
+
+    private static final Instant START = Instant.parse("2024-11-17T08:00:00Z");
+
+    @TempDir
+    Path dir;
+
+    // @formatter:off
+    @ParameterizedTest
+    @CsvSource({
+        "7,1,0-1-2-3-4-5-6",
+        "7,2,0-2-4-6",
+        "7,3,0-3-6",
+        "7,8,0",
+    })
+    // @formatter:on
+    void selectModulo(int size, int select, String expected) {
+
+        // act
+        List<Integer> result = TimelapseFrameSelector.selectModulo(IntStream.range(0, size).boxed().toList(), select);
+        // assert
+        assertThat(result).map(String::valueOf).containsExactly(expected.split("-"));
+    }
+
+    // @formatter:off
+    @ParameterizedTest
+    @CsvSource({
+        "10,1,0",
+        "10,2,0-9",
+        "10,4,0-3-6-9",
+        "5,10,0-1-2-3-4",
+    })
+    // @formatter:on
+    void selectCount(int size, int targetFrames, String expected) {
+
+        // act
+        List<Integer> result = TimelapseFrameSelector.selectCount(IntStream.range(0, size).boxed().toList(), targetFrames);
+        // assert
+        assertThat(result).map(String::valueOf).containsExactly(expected.split("-"));
+    }
+
+    @Test
+    void select_skipsMissingAndEmptyFilesAndUsesCaptureTime() throws IOException {
+
+        // arrange - an image every 4 minutes
+        for (int i = 0; i < 8; i++) {
+            Path file = Files.writeString(dir.resolve("img-" + i + ".jpg"), "jpeg");
+            Files.setLastModifiedTime(file, FileTime.from(START.plusSeconds(i * 240L)));
+        }
+        Files.writeString(dir.resolve("img-1.jpg"), "");
+        List<String> names = List.of("img-0.jpg", "img-1.jpg", "missing.jpg", "img-2.jpg", "img-3.jpg",
+            "img-4.jpg", "img-5.jpg", "img-6.jpg", "img-7.jpg");
+        TimelapseCommand timelapseCommand = new TimelapseCommand("out.mp4", names, 1, 10, 10, 0);
+        // act
+        List<Path> result = TimelapseFrameSelector.select(timelapseCommand, dir::resolve);
+        // assert
+        assertThat(result).map(path -> path.getFileName().toString())
+            .containsExactly("img-0.jpg", "img-3.jpg", "img-6.jpg");
+    }
+}
@@ -0,0 +1,165 @@
+package com.giraone.camera.service.video;
+
+import com.giraone.camera.config.ApplicationProperties;
+import com.giraone.camera.service.FileService;
+import com.giraone.camera.service.StorageLayout;
+import com.giraone.camera.service.model.FileInfo;
+import com.giraone.camera.service.video.model.TimelapseCommand;
+import com.giraone.camera.service.video.model.TimelapseJob;
+import com.giraone.camera.service.video.model.TimelapseJobState;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TimelapseJobServiceTest {
+
+    CountDownLatch release = new CountDownLatch(1);
+    TimelapseJobService timelapseJobService;
+
+    @BeforeEach
+    void setUp() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.setTimelapseMaxConcurrentJobs(1);
+        applicationProperties.setTimelapseMaxQueuedJobs(2);
+        applicationProperties.setTimelapseJobHistory(1);
+        // Encoding reports 2 of 4 frames and then waits for the test
+        FileService fileService = new FileService(null, null,
+            new StorageLayout(FileService.IMAGES_BASE, applicationProperties.getImagesLayout()), applicationProperties,
+            new SimpleMeterRegistry()) {
+            @Override
+            public FileInfo createTimelapseVideo(TimelapseCommand timelapseCommand, VideoService.TimelapseListener listener) {
+                listener.framesEncoded(2);
+                try {
+                    if (!release.await(10, TimeUnit.SECONDS)) {
+                        throw new OsCallException("timeout");
+                    }
+                } catch (InterruptedException e) {
+                    throw new OsCallException("interrupted");
+                }
+                return new FileInfo(Path.of(timelapseCommand.outputFilename()), timelapseCommand.outputFilename(),
+                    1000L, "video/mp4", LocalDateTime.now());
+            }
+        };
+        timelapseJobService = new TimelapseJobService(fileService, applicationProperties, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        timelapseJobService.shutdown();
+    }
+
+    @Test
+    void submit_runsOneJobAtATime() throws Exception {
+
+        // act
+        TimelapseJob first = timelapseJobService.submit(command("first.mp4"));
+        TimelapseJob second = timelapseJobService.submit(command("second.mp4"));
+        // assert
+        assertThat(first.state()).isEqualTo(TimelapseJobState.QUEUED);
+        assertThat(first.frames()).isEqualTo(4);
+        awaitState(first.id(), TimelapseJobState.RUNNING);
+        assertThat(timelapseJobService.get(first.id()).orElseThrow().progressPercent()).isEqualTo(50);
+        assertThat(timelapseJobService.get(second.id()).orElseThrow().state()).isEqualTo(TimelapseJobState.QUEUED);
+        // act
+        release.countDown();
+        // assert
+        TimelapseJob finished = timelapseJobService.completion(second.id()).block(Duration.ofSeconds(10));
+        assertThat(finished.state()).isEqualTo(TimelapseJobState.SUCCEEDED);
+        assertThat(finished.progressPercent()).isEqualTo(100);
+        assertThat(timelapseJobService.get(first.id()).orElseThrow().state()).isEqualTo(TimelapseJobState.SUCCEEDED);
+    }
+
+    @Test
+    void submit_rejectsWhenQueueIsFull() throws Exception {
+
+        // arrange
+        TimelapseJob running = timelapseJobService.submit(command("running.mp4"));
+        awaitState(running.id(), TimelapseJobState.RUNNING);
+        timelapseJobService.submit(command("queued-1.mp4"));
+        timelapseJobService.submit(command("queued-2.mp4"));
+        // act/assert
+        assertThatThrownBy(() -> timelapseJobService.submit(command("rejected.mp4")))
+            .isInstanceOf(RejectedExecutionException.class);
+        assertThat(timelapseJobService.list()).extracting(TimelapseJob::outputFilename)
+            .containsExactly("queued-2.mp4", "queued-1.mp4", "running.mp4");
+    }
+
+    @Test
+    void cancel_removesQueuedJob() throws Exception {
+
+        // arrange
+        TimelapseJob running = timelapseJobService.submit(command("running.mp4"));
+        TimelapseJob queued = timelapseJobService.submit(command("queued.mp4"));
+        awaitState(running.id(), TimelapseJobState.RUNNING);
+        // act
+        TimelapseJob cancelled = timelapseJobService.cancel(queued.id()).orElseThrow();
+        // assert
+        assertThat(cancelled.state()).isEqualTo(TimelapseJobState.CANCELLED);
+        assertThat(timelapseJobService.completion(queued.id()).block(Duration.ofSeconds(1)).state())
+            .isEqualTo(TimelapseJobState.CANCELLED);
+        assertThat(timelapseJobService.cancel("unknown")).isEmpty();
+    }
+
+    @Test
+    void submit_keepsOnlyTheLastFinishedJobs() {
+
+        // arrange
+        release.countDown();
+        List<String> ids = List.of(
+            timelapseJobService.submit(command("a.mp4")).id(),
+            timelapseJobService.submit(command("b.mp4")).id());
+        ids.forEach(id -> timelapseJobService.completion(id).block(Duration.ofSeconds(10)));
+        // act
+        timelapseJobService.submit(command("c.mp4"));
+        // assert
+        assertThat(timelapseJobService.get(ids.get(0))).isEmpty();
+        assertThat(timelapseJobService.get(ids.get(1))).isPresent();
+    }
+
+    @Test
+    void submit_rejectsInvalidCommand() {
+
+        // act/assert
+        assertThatThrownBy(() -> timelapseJobService.submit(new TimelapseCommand("x.mp4", List.of(), 1, 10)))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> timelapseJobService.submit(new TimelapseCommand("x.mp4", List.of("a.jpg"), 0, 10)))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void submit_rejectsTraversalName() {
+
+        // arrange
+        TimelapseCommand timelapseCommand = new TimelapseCommand("x.mp4",
+            List.of("c099-261017-120000.jpg", "../../../../../../tmp/secret.txt"), 1, 10);
+        // act/assert
+        assertThatThrownBy(() -> timelapseJobService.submit(timelapseCommand))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("secret.txt");
+        assertThat(timelapseJobService.list()).isEmpty();
+    }
+
+    private static TimelapseCommand command(String outputFilename) {
+        return new TimelapseCommand(outputFilename, List.of("1.jpg", "2.jpg", "3.jpg", "4.jpg", "5.jpg", "6.jpg", "7.jpg"), 2, 10);
+    }
+
+    private void awaitState(String jobId, TimelapseJobState state) throws InterruptedException {
+        for (int i = 0; i < 100 && timelapseJobService.get(jobId).orElseThrow().state() != state; i++) {
+            Thread.sleep(50);
+        }
+        assertThat(timelapseJobService.get(jobId).orElseThrow().state()).isEqualTo(state);
+    }
+}
@@ -0,0 +1,89 @@
+package com.giraone.camera.service.video;
+
+import com.giraone.camera.config.ApplicationProperties;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Wall-clock time of a timelapse encoding by one ffmpeg process compared to parallel segments. Not part of the normal
+ * build and needs ffmpeg - run with {@code mvn verify -Dit.test=TimelapseSegmentBenchmarkIT -Dbenchmark=true}.
+ * The frames are generated SVGA JPEGs with a moving pattern, so that the encoder has some work to do.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class TimelapseSegmentBenchmarkIT {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimelapseSegmentBenchmarkIT.class);
+
+    private static final int FRAMES = 2000;
+
+    static Path dir;
+    static List<Path> frames;
+
+    @BeforeAll
+    static void createFrames() throws IOException {
+        dir = Files.createTempDirectory("benchmark-");
+        frames = new ArrayList<>(FRAMES);
+        final BufferedImage image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+        for (int i = 0; i < FRAMES; i++) {
+            final Graphics2D graphics = image.createGraphics();
+            try {
+                graphics.setColor(new Color(i * 7 % 256, 128, 255 - i % 256));
+                graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+                graphics.setColor(Color.WHITE);
+                graphics.fillOval(i % image.getWidth(), (i * 3) % image.getHeight(), 120, 120);
+                graphics.drawString("frame " + i, 20, 20);
+            } finally {
+                graphics.dispose();
+            }
+            final Path frame = dir.resolve(String.format("frame-%05d.jpg", i));
+            ImageIO.write(image, "jpg", frame.toFile());
+            frames.add(frame);
+        }
+    }
+
+    @AfterAll
+    static void deleteFrames() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 4, 8})
+    void encode(int parallelism) throws IOException {
+
+        final ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.setTimelapseSegmentMinFrames(100);
+        final VideoService videoService = new VideoService(applicationProperties);
+        final Path video = dir.resolve("video-" + parallelism + ".mp4");
+
+        final long start = System.nanoTime();
+        videoService.encode(frames, 25, video, VideoService.TimelapseListener.NONE, parallelism);
+        final long millis = (System.nanoTime() - start) / 1_000_000L;
+
+        assertThat(Files.size(video)).isGreaterThan(100L);
+        LOGGER.info("parallelism={}, frames={} ==> {} ms, {} frames/s, {} bytes", parallelism, FRAMES, millis,
+            FRAMES * 1000L / Math.max(1L, millis), Files.size(video));
+    }
+}
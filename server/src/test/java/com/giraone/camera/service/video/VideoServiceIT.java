@@ -1,5 +1,6 @@
 package com.giraone.camera.service.video;
 
+import com.giraone.camera.config.ApplicationProperties;
 import com.giraone.camera.service.FileService;
 import com.giraone.camera.service.model.VideoMetaInfo;
 import com.giraone.camera.service.video.model.TimelapseCommand;
@@ -56,6 +57,21 @@ class VideoServiceIT {
         videoService.videoToThumbnail(video, tempFile);
         // assert
         assertThat(Files.size(tempFile)).isGreaterThan(100);
+        assertThat(Files.readAllBytes(tempFile)).startsWith(0xFF, 0xD8);
+    }
+
+    @Test
+    void videoToThumbnailWithFilter() throws Exception {
+        // arrange
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.setVideoThumbnailMode(ApplicationProperties.VideoThumbnailMode.FILTER);
+        VideoService filterVideoService = new VideoService(applicationProperties);
+        Path video = Path.of("src/test/resources/testdata/video-640x480-1MB.mp4");
+        Path tempFile = Files.createTempFile("videoToThumbnail", ".jpg");
+        // act
+        filterVideoService.videoToThumbnail(video, tempFile);
+        // assert
+        assertThat(Files.size(tempFile)).isGreaterThan(100);
     }
 
     @Test
@@ -0,0 +1,40 @@
+package com.giraone.camera.service.video.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StoryboardTest {
+
+    @Test
+    void of_fillsTilesRowByRow() {
+
+        // act
+        Storyboard storyboard = Storyboard.of("video.jpg", 10, 160, 90, 5);
+        // assert
+        assertThat(storyboard.columns()).isEqualTo(4);
+        assertThat(storyboard.rows()).isEqualTo(3);
+        assertThat(storyboard.tiles()).hasSize(10);
+        assertThat(storyboard.tiles().get(5)).isEqualTo(new Storyboard.Tile(2.5, 3.0, 160, 90));
+        assertThat(storyboard.tiles().get(9).end()).isEqualTo(5.0);
+    }
+
+    @Test
+    void toWebVtt() {
+
+        // arrange
+        Storyboard storyboard = Storyboard.of("video.jpg", 2, 160, 90, 3700);
+        // act
+        String vtt = storyboard.toWebVtt();
+        // assert
+        assertThat(vtt).isEqualTo("""
+            WEBVTT
+
+            00:00:00.000 --> 00:30:50.000
+            video.jpg#xywh=0,0,160,90
+
+            00:30:50.000 --> 01:01:40.000
+            video.jpg#xywh=160,0,160,90
+            """);
+    }
+}